@@ -0,0 +1,176 @@
+package me.minimize.economyplus;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import me.minimize.economyplus.utils.BloomFilter;
+
+/**
+ * Knows which player names and faction names exist.
+ *
+ * Each kind of name has an exact index plus a Bloom filter in front of it. A filter
+ * miss is a definite "doesn't exist", so typos and spam against unknown names are
+ * rejected without touching the index or asking Bukkit to resolve an offline player
+ * (which can block on disk or a web lookup).
+ *
+ * Rebuilt on enable from Bukkit's known players and the stored faction totals,
+ * then kept current on join and on faction creation.
+ */
+public class AccountDirectory {
+
+    // Target false-positive rate for the filters
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * What a command target turned out to be.
+     */
+    public enum Kind {
+        PLAYER,
+        FACTION,
+        UNKNOWN
+    }
+
+    private final EconomyPlus plugin;
+
+    // lowercased name -> uuid, and uuid -> current name (to drop the old name on rename)
+    private final Map<String, UUID> playersByName = new ConcurrentHashMap<>();
+    private final Map<UUID, String> namesByPlayer = new ConcurrentHashMap<>();
+
+    // lowercased faction names
+    private final Map<String, Boolean> factions = new ConcurrentHashMap<>();
+
+    private volatile BloomFilter playerFilter = new BloomFilter(16, FALSE_POSITIVE_RATE);
+    private volatile BloomFilter factionFilter = new BloomFilter(16, FALSE_POSITIVE_RATE);
+    private volatile int playerCapacity = 16;
+    private volatile int factionCapacity = 16;
+
+    public AccountDirectory(EconomyPlus plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Rebuilds both indexes from scratch. Called once on enable.
+     */
+    public synchronized void rebuild() {
+        playersByName.clear();
+        namesByPlayer.clear();
+        for (OfflinePlayer player : Bukkit.getOfflinePlayers()) {
+            if (player.getName() != null) {
+                playersByName.put(player.getName().toLowerCase(), player.getUniqueId());
+                namesByPlayer.put(player.getUniqueId(), player.getName());
+            }
+        }
+        for (OfflinePlayer player : Bukkit.getOnlinePlayers()) {
+            playersByName.put(player.getName().toLowerCase(), player.getUniqueId());
+            namesByPlayer.put(player.getUniqueId(), player.getName());
+        }
+        rebuildPlayerFilter();
+
+        factions.clear();
+        for (String faction : plugin.getDataManager().getFactionNames()) {
+            factions.put(faction, Boolean.TRUE);
+        }
+        rebuildFactionFilter();
+    }
+
+    // -----------------
+    // UPDATES
+    // -----------------
+
+    /**
+     * Records a player's current name (on join). Handles renames.
+     */
+    public synchronized void registerPlayer(UUID uuid, String name) {
+        String previous = namesByPlayer.put(uuid, name);
+        if (previous != null && !previous.equalsIgnoreCase(name)) {
+            playersByName.remove(previous.toLowerCase(), uuid);
+        }
+        playersByName.put(name.toLowerCase(), uuid);
+
+        playerFilter.add(name);
+        if (playersByName.size() > playerCapacity) {
+            rebuildPlayerFilter();
+        }
+    }
+
+    /**
+     * Records a faction (when it first gets points).
+     */
+    public synchronized void registerFaction(String name) {
+        if (factions.put(name.toLowerCase(), Boolean.TRUE) != null) {
+            return;
+        }
+        factionFilter.add(name);
+        if (factions.size() > factionCapacity) {
+            rebuildFactionFilter();
+        }
+    }
+
+    // -----------------
+    // LOOKUPS
+    // -----------------
+
+    /**
+     * UUID for a known player name (case-insensitive), or null if no such player.
+     */
+    public UUID findPlayer(String name) {
+        if (!playerFilter.mightContain(name)) {
+            return null;
+        }
+        return playersByName.get(name.toLowerCase());
+    }
+
+    /**
+     * Whether a faction with this name has ever held points.
+     */
+    public boolean isFaction(String name) {
+        return factionFilter.mightContain(name) && factions.containsKey(name.toLowerCase());
+    }
+
+    /**
+     * Decides deterministically whether a command target is a player, a faction, or neither.
+     * A real player name wins over a faction with the same name.
+     */
+    public Kind resolve(String name) {
+        if (findPlayer(name) != null) {
+            return Kind.PLAYER;
+        }
+        if (plugin.getConfigManager().isFactionPointsEnabled() && isFaction(name)) {
+            return Kind.FACTION;
+        }
+        return Kind.UNKNOWN;
+    }
+
+    /**
+     * Current name for a player UUID, or null if we've never seen them.
+     */
+    public String getName(UUID uuid) {
+        return namesByPlayer.get(uuid);
+    }
+
+    // Sized at 2x the current count so regular growth doesn't trigger rebuilds often.
+    // Synchronized with the register methods so no name is added between copy and swap.
+    private synchronized void rebuildPlayerFilter() {
+        int capacity = Math.max(16, playersByName.size() * 2);
+        BloomFilter filter = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+        for (String name : playersByName.keySet()) {
+            filter.add(name);
+        }
+        playerFilter = filter;
+        playerCapacity = capacity;
+    }
+
+    private synchronized void rebuildFactionFilter() {
+        int capacity = Math.max(16, factions.size() * 2);
+        BloomFilter filter = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+        for (String name : factions.keySet()) {
+            filter.add(name);
+        }
+        factionFilter = filter;
+        factionCapacity = capacity;
+    }
+}
@@ -0,0 +1,98 @@
+package me.minimize.economyplus;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks for economy accounts.
+ * Every account key (player UUID or lowercased faction name) maps to one of a
+ * fixed number of locks by hash, so memory doesn't grow with the number of accounts
+ * while unrelated accounts rarely contend.
+ *
+ * Multi-account operations (e.g. a transfer) must go through lockAll(), which always
+ * acquires stripes in ascending index order; that global order rules out deadlocks.
+ */
+public class AccountLockManager {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripeCount rounded up to a power of two
+     */
+    public AccountLockManager(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Locks the stripe for a single account. Pair with unlock(key) in a finally block.
+     */
+    public void lock(Object key) {
+        stripes[stripeFor(key)].lock();
+    }
+
+    public void unlock(Object key) {
+        stripes[stripeFor(key)].unlock();
+    }
+
+    /**
+     * Locks the stripes for several accounts in a deadlock-free order.
+     * Returns the acquired stripe indexes, which must be passed to unlockAll().
+     */
+    public int[] lockAll(Object... keys) {
+        int[] indexes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            indexes[i] = stripeFor(keys[i]);
+        }
+        Arrays.sort(indexes);
+
+        // Drop duplicates: two accounts may share a stripe
+        int unique = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            if (i == 0 || indexes[i] != indexes[i - 1]) {
+                indexes[unique++] = indexes[i];
+            }
+        }
+        int[] acquired = Arrays.copyOf(indexes, unique);
+
+        for (int index : acquired) {
+            stripes[index].lock();
+        }
+        return acquired;
+    }
+
+    public void unlockAll(int[] acquired) {
+        for (int i = acquired.length - 1; i >= 0; i--) {
+            stripes[acquired[i]].unlock();
+        }
+    }
+
+    /**
+     * Briefly locks every stripe (in order), runs 'action', then releases them.
+     * Used to flip snapshot epochs at a point where no mutation is half-done.
+     */
+    public void withAllLocked(Runnable action) {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            action.run();
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    private int stripeFor(Object key) {
+        // Spread the hash so UUIDs/strings with similar low bits still spread out
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+}
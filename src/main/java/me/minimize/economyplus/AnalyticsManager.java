@@ -0,0 +1,283 @@
+package me.minimize.economyplus;
+
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import me.minimize.economyplus.utils.QuantileSketch;
+
+/**
+ * Economy-wide analytics.
+ *
+ * Running aggregates (money supply, account count, hourly transaction volume)
+ * are updated incrementally by DataManager and TransactionManager, so reading
+ * them is O(1). Distribution stats (percentiles, Gini) are recomputed on a
+ * timer from a streaming quantile sketch: one pass over the balances, no sort.
+ */
+public class AnalyticsManager {
+
+    // Hours of per-type volume we keep
+    private static final int HOURS = 24;
+    private static final long HOUR_MILLIS = 3_600_000L;
+
+    // Relative error of reported percentiles
+    private static final double SKETCH_ACCURACY = 0.01;
+
+    private final EconomyPlus plugin;
+
+    // Running aggregates
+    private final DoubleAdder moneySupply = new DoubleAdder();
+    private final AtomicInteger accountCount = new AtomicInteger();
+
+    // currency -> type -> hourly volume
+    private final Map<String, Map<String, HourlyVolume>> volumes = new ConcurrentHashMap<>();
+
+    // Last computed distribution, replaced atomically by the timer
+    private volatile Distribution distribution = new Distribution(0, 0, 0, 0, 0, 0, 0, 0);
+
+    private BukkitTask task;
+
+    public AnalyticsManager(EconomyPlus plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Seeds the running aggregates from already-loaded data and starts the distribution timer.
+     * Called once after DataManager and TransactionManager have loaded.
+     */
+    public void start() {
+        moneySupply.reset();
+        int accounts = 0;
+        for (double balance : plugin.getDataManager().getBalanceValues()) {
+            moneySupply.add(balance);
+            accounts++;
+        }
+        accountCount.set(accounts);
+
+        // Rebuild the last day of volume from the log
+        volumes.clear();
+        long since = System.currentTimeMillis() - HOURS * HOUR_MILLIS;
+        for (TransactionEntry entry : plugin.getTransactionManager().query(new TransactionQuery().since(since))) {
+            onTransaction(entry);
+        }
+
+        long interval = 20L * plugin.getConfigManager().getAnalyticsIntervalSeconds();
+        task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                computeDistribution();
+            }
+        }.runTaskTimerAsynchronously(plugin, 20L, interval);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    // -----------------
+    // INCREMENTAL HOOKS
+    // -----------------
+
+    /**
+     * Called by DataManager whenever a balance changes.
+     * 'previous' is null when the account didn't exist before.
+     */
+    public void onBalanceChange(Double previous, double current) {
+        if (previous == null) {
+            accountCount.incrementAndGet();
+            moneySupply.add(current);
+        } else {
+            moneySupply.add(current - previous);
+        }
+    }
+
+    /**
+     * Called by TransactionManager for every logged transaction.
+     */
+    public void onTransaction(TransactionEntry entry) {
+        String currency = entry.getCurrency() != null ? entry.getCurrency() : "UNKNOWN";
+        volumes.computeIfAbsent(currency, c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(entry.getType(), t -> new HourlyVolume())
+                .record(entry.getTimestamp(), entry.getAmount());
+    }
+
+    // -----------------
+    // DISTRIBUTION
+    // -----------------
+
+    /**
+     * Recomputes percentiles and Gini in a single pass over all balances.
+     * Safe to call from any thread.
+     */
+    public Distribution computeDistribution() {
+        long start = System.nanoTime();
+        QuantileSketch sketch = new QuantileSketch(SKETCH_ACCURACY);
+        for (double balance : plugin.getDataManager().getBalanceValues()) {
+            sketch.add(balance);
+        }
+
+        Distribution result = new Distribution(
+                sketch.getCount(),
+                sketch.quantile(0.25),
+                sketch.quantile(0.50),
+                sketch.quantile(0.75),
+                sketch.quantile(0.90),
+                sketch.quantile(0.99),
+                sketch.gini(),
+                (System.nanoTime() - start) / 1_000_000L);
+        distribution = result;
+        return result;
+    }
+
+    // -----------------
+    // READERS
+    // -----------------
+
+    public double getMoneySupply() {
+        return moneySupply.sum();
+    }
+
+    public int getAccountCount() {
+        return accountCount.get();
+    }
+
+    public Distribution getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * Total volume over the last 'hours' hours per transaction type, for one currency.
+     * Sorted by type name for stable display.
+     */
+    public Map<String, double[]> getVolume(String currency, int hours) {
+        Map<String, double[]> result = new TreeMap<>();
+        Map<String, HourlyVolume> byType = volumes.get(currency);
+        if (byType == null) {
+            return result;
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, HourlyVolume> entry : byType.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().total(now, hours));
+        }
+        return result;
+    }
+
+    /**
+     * Money velocity over the last 24 hours: transferred money / money supply.
+     */
+    public double getDailyVelocity() {
+        double supply = getMoneySupply();
+        if (supply <= 0) {
+            return 0.0;
+        }
+        double volume = 0.0;
+        for (double[] v : getVolume("MONEY", HOURS).values()) {
+            volume += v[1];
+        }
+        return volume / supply;
+    }
+
+    /**
+     * Count and amount per hour for the last 24 hours, as a ring of primitive slots.
+     */
+    private static final class HourlyVolume {
+        private final long[] hourOf = new long[HOURS];
+        private final long[] counts = new long[HOURS];
+        private final double[] amounts = new double[HOURS];
+
+        synchronized void record(long timestamp, double amount) {
+            long hour = timestamp / HOUR_MILLIS;
+            int slot = (int) (hour % HOURS);
+            if (hour < hourOf[slot]) {
+                // Older than the hour the slot already holds (e.g. imported history), so outside the window
+                return;
+            }
+            if (hourOf[slot] != hour) {
+                // Slot belongs to an older day; recycle it
+                hourOf[slot] = hour;
+                counts[slot] = 0;
+                amounts[slot] = 0.0;
+            }
+            counts[slot]++;
+            amounts[slot] += Math.abs(amount);
+        }
+
+        // Returns {count, amount} over the last 'hours' hours
+        synchronized double[] total(long now, int hours) {
+            long currentHour = now / HOUR_MILLIS;
+            double count = 0;
+            double amount = 0.0;
+            for (int i = 0; i < HOURS; i++) {
+                if (currentHour - hourOf[i] < Math.min(hours, HOURS)) {
+                    count += counts[i];
+                    amount += amounts[i];
+                }
+            }
+            return new double[]{count, amount};
+        }
+    }
+
+    /**
+     * Immutable snapshot of the balance distribution.
+     */
+    public static class Distribution {
+        private final long accounts;
+        private final double p25;
+        private final double median;
+        private final double p75;
+        private final double p90;
+        private final double p99;
+        private final double gini;
+        private final long computeMillis;
+        private final long computedAt;
+
+        Distribution(long accounts, double p25, double median, double p75, double p90, double p99,
+                     double gini, long computeMillis) {
+            this.accounts = accounts;
+            this.p25 = p25;
+            this.median = median;
+            this.p75 = p75;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.gini = gini;
+            this.computeMillis = computeMillis;
+            this.computedAt = System.currentTimeMillis();
+        }
+
+        public long getAccounts() {
+            return accounts;
+        }
+        public double getP25() {
+            return p25;
+        }
+        public double getMedian() {
+            return median;
+        }
+        public double getP75() {
+            return p75;
+        }
+        public double getP90() {
+            return p90;
+        }
+        public double getP99() {
+            return p99;
+        }
+        public double getGini() {
+            return gini;
+        }
+        public long getComputeMillis() {
+            return computeMillis;
+        }
+        public long getComputedAt() {
+            return computedAt;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package me.minimize.economyplus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import me.minimize.economyplus.api.EconomyService;
+import me.minimize.economyplus.api.LeaderboardListener;
+import me.minimize.economyplus.api.LeaderboardSubscription;
+
+/**
+ * EconomyService implementation backed by DataManager and TransactionManager, registered
+ * with Bukkit's ServicesManager in EconomyPlus.
+ *
+ * Calls are queued and drained in batches by a dedicated thread, so a burst of calls
+ * costs one hand-off instead of one per call. Everything runs in submission order: balance
+ * changes one by one through DataManager's locked (and optionally idempotent) methods, and
+ * reads and history queries between the changes they were submitted between. Consecutive
+ * reads are answered in one pass, and consecutive history queries share a single walk over
+ * the transaction log.
+ *
+ * There is only one drain thread on purpose: a second one would run changes out of order.
+ */
+public class AsyncEconomyService implements EconomyService {
+
+    private final EconomyPlus plugin;
+    private final ExecutorService executor;
+    private final int maxBatch;
+
+    private final Queue<Operation> queue = new ConcurrentLinkedQueue<>();
+    // True while a drain task is queued or running, so we never schedule two
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    public AsyncEconomyService(EconomyPlus plugin, int maxBatch) {
+        this.plugin = plugin;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "EconomyPlus-API");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Stops accepting work and waits briefly for queued operations to finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -----------------
+    // SYNC FAST PATHS
+    // -----------------
+
+    @Override
+    public double getCachedBalance(UUID account) {
+        return plugin.getDataManager().getBalance(account);
+    }
+
+    @Override
+    public boolean hasCached(UUID account, double amount) {
+        return plugin.getDataManager().getBalance(account) >= amount;
+    }
+
+    // -----------------
+    // ASYNC
+    // -----------------
+
+    @Override
+    public CompletableFuture<Double> getBalance(UUID account) {
+        Read op = new Read(account);
+        submit(op);
+        return op.future;
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, Double>> getBalances(Collection<UUID> accounts) {
+        List<CompletableFuture<Double>> parts = new ArrayList<>(accounts.size());
+        final List<UUID> ids = new ArrayList<>(accounts);
+        for (UUID id : ids) {
+            Read op = new Read(id);
+            queue.add(op);
+            parts.add(op.future);
+        }
+        schedule();
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<UUID, Double> result = new HashMap<>(ids.size() * 2);
+            for (int i = 0; i < ids.size(); i++) {
+                result.put(ids.get(i), parts.get(i).join());
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Map.Entry<UUID, Double>>> getTopBalances(int limit) {
+        return CompletableFuture.supplyAsync(() -> plugin.getDataManager().getTopBalances(limit), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deposit(UUID account, double amount, String requestId) {
+        CompletableFuture<Boolean> invalid = checkArguments(account, account, amount, false);
+        if (invalid != null) {
+            return invalid;
+        }
+        return mutate(() -> plugin.getDataManager().addBalance(account, amount, requestId));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> withdraw(UUID account, double amount, String requestId) {
+        CompletableFuture<Boolean> invalid = checkArguments(account, account, amount, false);
+        if (invalid != null) {
+            return invalid;
+        }
+        return mutate(() -> plugin.getDataManager().takeBalance(account, amount, requestId));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> transfer(UUID from, UUID to, double amount, String requestId) {
+        CompletableFuture<Boolean> invalid = checkArguments(from, to, amount, true);
+        if (invalid != null) {
+            return invalid;
+        }
+        return mutate(() -> plugin.getDataManager().transfer(from, to, amount, requestId));
+    }
+
+    @Override
+    public CompletableFuture<List<TransactionEntry>> getHistory(TransactionQuery query) {
+        History op = new History(query);
+        submit(op);
+        return op.future;
+    }
+
+    @Override
+    public LeaderboardSubscription subscribeTopBalances(int size, LeaderboardListener listener) {
+        return plugin.getLeaderboardFeed().subscribe(size, listener);
+    }
+
+    @Override
+    public Executor mainThread() {
+        return plugin.getTickScheduler()::submit;
+    }
+
+    // Rejects bad arguments before they're queued: a future that already failed with
+    // IllegalArgumentException, or null if the call may go ahead
+    private static CompletableFuture<Boolean> checkArguments(UUID from, UUID to, double amount, boolean transfer) {
+        CompletableFuture<Boolean> failed = new CompletableFuture<>();
+        try {
+            if (from == null || to == null) {
+                throw new IllegalArgumentException("Account must not be null");
+            }
+            DataManager.checkAmount(amount);
+            if (transfer && from.equals(to)) {
+                throw new IllegalArgumentException("Can't transfer from an account to itself: " + from);
+            }
+            return null;
+        } catch (IllegalArgumentException e) {
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    // -----------------
+    // BATCHING
+    // -----------------
+
+    private CompletableFuture<Boolean> mutate(BooleanSupplier action) {
+        Mutation op = new Mutation(action);
+        submit(op);
+        return op.future;
+    }
+
+    private void submit(Operation op) {
+        queue.add(op);
+        schedule();
+    }
+
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RuntimeException e) {
+                // Executor shut down (plugin disabling); fail whatever is queued
+                draining.set(false);
+                Operation op;
+                while ((op = queue.poll()) != null) {
+                    op.fail(e);
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        List<Read> reads = new ArrayList<>();
+        List<History> histories = new ArrayList<>();
+        try {
+            int taken = 0;
+            Operation op;
+            while (taken < maxBatch && (op = queue.poll()) != null) {
+                taken++;
+                if (op instanceof Read) {
+                    reads.add((Read) op);
+                } else if (op instanceof History) {
+                    histories.add((History) op);
+                } else {
+                    // Whatever was submitted before this change must not see it
+                    answer(reads, histories);
+                    ((Mutation) op).run();
+                }
+            }
+            answer(reads, histories);
+        } catch (RuntimeException e) {
+            for (Read read : reads) {
+                read.fail(e);
+            }
+            for (History history : histories) {
+                history.fail(e);
+            }
+        } finally {
+            draining.set(false);
+            // More work may have arrived after our last poll
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    // Answers the reads and history queries collected since the last change, then clears both lists
+    private void answer(List<Read> reads, List<History> histories) {
+        if (!reads.isEmpty()) {
+            DataManager data = plugin.getDataManager();
+            for (Read read : reads) {
+                read.future.complete(data.getBalance(read.account));
+            }
+            reads.clear();
+        }
+
+        if (!histories.isEmpty()) {
+            List<TransactionQuery> queries = new ArrayList<>(histories.size());
+            for (History history : histories) {
+                queries.add(history.query);
+            }
+            List<List<TransactionEntry>> results = plugin.getTransactionManager().getLog().queryAll(queries);
+            for (int i = 0; i < histories.size(); i++) {
+                histories.get(i).future.complete(results.get(i));
+            }
+            histories.clear();
+        }
+    }
+
+    private abstract static class Operation {
+        abstract void fail(Throwable t);
+    }
+
+    private static final class Read extends Operation {
+        private final UUID account;
+        private final CompletableFuture<Double> future = new CompletableFuture<>();
+
+        Read(UUID account) {
+            this.account = account;
+        }
+
+        @Override
+        void fail(Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    private static final class History extends Operation {
+        private final TransactionQuery query;
+        private final CompletableFuture<List<TransactionEntry>> future = new CompletableFuture<>();
+
+        History(TransactionQuery query) {
+            this.query = query;
+        }
+
+        @Override
+        void fail(Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    private static final class Mutation extends Operation {
+        private final BooleanSupplier action;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        Mutation(BooleanSupplier action) {
+            this.action = action;
+        }
+
+        void run() {
+            try {
+                future.complete(action.getAsBoolean());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        void fail(Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+}
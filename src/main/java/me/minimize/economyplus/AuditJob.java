@@ -0,0 +1,246 @@
+package me.minimize.economyplus;
+
+import org.bukkit.command.CommandSender;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Proves (or disproves) that money was conserved: rebuilds every balance at a past time
+ * from the balance journal, replays the transaction log from there with BalanceAuditor,
+ * and compares the result with the current balances. Meant to run on a background
+ * thread; the result is reported to the sender through the tick scheduler.
+ *
+ * The log is streamed in small chunks and mismatches are written straight to
+ * audits/audit-<time>.csv, so the audit works on logs of any size. Any interest/tax run,
+ * dump import or rollback of everyone inside the window moves the start of the window up to it,
+ * since those aren't itemized in the log.
+ */
+public class AuditJob implements Runnable {
+
+    // How many entries we copy out of the log per lock acquisition
+    private static final int CHUNK_SIZE = 512;
+
+    // Mismatches shown in chat; the CSV file has all of them
+    private static final int MAX_LISTED = 10;
+
+    private final EconomyPlus plugin;
+    private final CommandSender sender;
+    private final long since; // -1 = as far back as the journal goes
+
+    public AuditJob(EconomyPlus plugin, CommandSender sender, long since) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.since = since;
+    }
+
+    /**
+     * What an audit found.
+     */
+    public static class Result {
+        private final BalanceAuditor.Report report;
+        private final long fromTime;
+        private final long toTime;
+        private final List<String> listed;
+        private final File mismatchFile;
+
+        Result(BalanceAuditor.Report report, long fromTime, long toTime, List<String> listed, File mismatchFile) {
+            this.report = report;
+            this.fromTime = fromTime;
+            this.toTime = toTime;
+            this.listed = listed;
+            this.mismatchFile = mismatchFile;
+        }
+
+        public BalanceAuditor.Report getReport() {
+            return report;
+        }
+        public long getFromTime() {
+            return fromTime;
+        }
+        public long getToTime() {
+            return toTime;
+        }
+        // First few mismatches, formatted for chat
+        public List<String> getListed() {
+            return listed;
+        }
+        // CSV of every mismatch, or null if there were none
+        public File getMismatchFile() {
+            return mismatchFile;
+        }
+    }
+
+    @Override
+    public void run() {
+        TickScheduler scheduler = plugin.getTickScheduler();
+        long start = System.currentTimeMillis();
+        try {
+            Result result = audit();
+            BalanceAuditor.Report report = result.getReport();
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+            scheduler.sendMessage(sender, "&e--- Money Audit ---");
+            scheduler.sendMessage(sender, "&6Window: &f" + format.format(new Date(result.getFromTime()))
+                    + " &6to &f" + format.format(new Date(result.getToTime())));
+            scheduler.sendMessage(sender, "&6Entries replayed: &f" + report.getReplayed() + " &6Accounts checked: &f"
+                    + report.getChecked() + " &7(" + report.getInFlight() + " busy during the audit, skipped)");
+            scheduler.sendMessage(sender, "&6Expected total: &a$" + String.format("%.2f", report.getExpectedTotal())
+                    + " &6Stored total: &a$" + String.format("%.2f", report.getStoredTotal())
+                    + " &6Logged net inflow: &f$" + String.format("%+.2f", report.getExternalNet()));
+
+            if (report.getMismatches() == 0) {
+                scheduler.sendMessage(sender, "&aEvery checked balance matches the transaction log.");
+            } else {
+                scheduler.sendMessage(sender, "&c" + report.getMismatches() + " balances don't match the log:");
+                for (String line : result.getListed()) {
+                    scheduler.sendMessage(sender, line);
+                }
+                if (result.getMismatchFile() != null) {
+                    scheduler.sendMessage(sender, "&7Full list: " + result.getMismatchFile().getPath());
+                }
+            }
+            if (report.getUnresolved() > 0) {
+                scheduler.sendMessage(sender, "&e" + report.getUnresolved() + " entries name accounts we don't know.");
+            }
+            if (report.getUnknownTypes() > 0) {
+                scheduler.sendMessage(sender, "&e" + report.getUnknownTypes() + " entries have a type the audit can't replay.");
+            }
+            if (report.isGlobalInWindow()) {
+                scheduler.sendMessage(sender, "&eAn interest/tax run, import or full rollback happened during the audit; run it again.");
+            }
+            if (plugin.getReplicationManager() != null) {
+                scheduler.sendMessage(sender, "&7Note: changes replicated from other servers aren't in this server's log.");
+            }
+            scheduler.sendMessage(sender, "&7Done in " + (System.currentTimeMillis() - start) + "ms.");
+
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            scheduler.sendMessage(sender, "&cCan't audit: " + e.getMessage());
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+            scheduler.sendMessage(sender, "&cAudit failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the audit on the calling thread.
+     * Throws IllegalArgumentException if the journal doesn't reach back far enough, and
+     * IllegalStateException if an interest/tax run is in progress.
+     */
+    public Result audit() throws IOException {
+        DataManager data = plugin.getDataManager();
+        BalanceJournal journal = data.getJournal();
+        TransactionLog log = plugin.getTransactionManager().getLog();
+        EconomyPolicyEngine policy = plugin.getPolicyEngine();
+
+        // A policy run changes accounts without itemizing them, so it can't overlap the snapshot
+        if (policy.isRunning()) {
+            throw new IllegalStateException("an interest/tax run is in progress");
+        }
+        DataManager.Snapshot snapshot = data.takeSnapshot();
+        long storedTime = snapshot.getTakenAt();
+        if (policy.isRunning()) {
+            throw new IllegalStateException("an interest/tax run is in progress");
+        }
+
+        long fromTime = since >= 0 ? since : journal.getOldestRecoverableTime();
+        if (fromTime == Long.MAX_VALUE) {
+            throw new IllegalArgumentException("there are no balance checkpoints yet");
+        }
+
+        // First pass: start after the last unitemized change before the snapshot
+        List<TransactionEntry> chunk = new ArrayList<>(CHUNK_SIZE);
+        int index = log.indexOfFirstAtOrAfter(fromTime + 1);
+        int end = log.size();
+        while (index < end) {
+            checkStopping();
+            chunk.clear();
+            int read = log.read(index, Math.min(CHUNK_SIZE, end - index), chunk);
+            if (read == 0) {
+                break;
+            }
+            index += read;
+            for (TransactionEntry entry : chunk) {
+                if (entry.getTimestamp() <= storedTime && BalanceAuditor.isGlobal(entry)) {
+                    fromTime = Math.max(fromTime, entry.getTimestamp());
+                }
+            }
+        }
+
+        Map<UUID, Double> baseline = journal.reconstructAll(fromTime);
+        AccountDirectory directory = plugin.getAccountDirectory();
+        BalanceAuditor auditor = new BalanceAuditor(baseline, fromTime, directory::findPlayer);
+        auditor.setStoredTime(storedTime);
+
+        // Second pass: replay everything after the baseline, including entries logged after
+        // the snapshot (the auditor only uses those to spot accounts that were busy)
+        index = log.indexOfFirstAtOrAfter(fromTime + 1);
+        end = log.size();
+        while (index < end) {
+            checkStopping();
+            chunk.clear();
+            int read = log.read(index, Math.min(CHUNK_SIZE, end - index), chunk);
+            if (read == 0) {
+                break;
+            }
+            index += read;
+            for (TransactionEntry entry : chunk) {
+                auditor.accept(entry);
+            }
+        }
+
+        // Mismatches go to chat (the first few) and to a CSV file (all of them)
+        final List<String> listed = new ArrayList<>();
+        final File file = new File(new File(plugin.getDataFolder(), "audits"),
+                "audit-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(storedTime)) + ".csv");
+        final Writer[] out = new Writer[1];
+        BalanceAuditor.Report report;
+        try {
+            report = auditor.compare(snapshot.getBalances(), (account, expected, stored) -> {
+                String name = directory.getName(account);
+                if (name == null) {
+                    name = account.toString();
+                }
+                if (listed.size() < MAX_LISTED) {
+                    listed.add("&7  " + name + ": expected $" + String.format("%.2f", expected)
+                            + ", stored $" + String.format("%.2f", stored));
+                }
+                try {
+                    if (out[0] == null) {
+                        file.getParentFile().mkdirs();
+                        out[0] = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+                        out[0].write("uuid,name,expected,stored,difference\n");
+                    }
+                    out[0].write(account + "," + name + "," + String.format("%.2f", expected) + ","
+                            + String.format("%.2f", stored) + "," + String.format("%.2f", stored - expected) + "\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } finally {
+            if (out[0] != null) {
+                out[0].close();
+            }
+        }
+        return new Result(report, fromTime, storedTime, listed, out[0] != null ? file : null);
+    }
+
+    // Shutdown doesn't wait for audits, so give up as soon as it starts
+    private void checkStopping() throws IOException {
+        if (plugin.isStopping()) {
+            throw new IOException("stopped, the server is shutting down");
+        }
+    }
+}
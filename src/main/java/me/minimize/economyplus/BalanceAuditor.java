@@ -0,0 +1,313 @@
+package me.minimize.economyplus;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Checks that the transaction log explains every stored money balance.
+ *
+ * Starting from known balances at a baseline time (rebuilt from the balance journal),
+ * entries are fed in log order and applied to an expected balance per account. At the
+ * end the expected values are compared with the stored balances as of a snapshot time.
+ * Memory use is one number per account, no matter how long the log is, so the log can
+ * be streamed in small chunks.
+ *
+ * A balance change and its log entry aren't written at the same instant (the entry comes
+ * a moment later), so accounts with entries just after the baseline, or after the
+ * snapshot, can't be judged exactly. They're counted as "in flight" and skipped instead
+ * of being reported as mismatches.
+ *
+ * Only money is audited. Interest/tax runs, dump imports and rollbacks of every account
+ * are logged as one summary entry, so the audit window must start after the last of those
+ * (see isGlobal); AuditJob takes care of that.
+ */
+public class BalanceAuditor {
+
+    // Balances are doubles of whole cents; anything closer than this is equal
+    public static final double TOLERANCE = 0.005;
+
+    // How much later than the balance change its log entry may be stamped
+    public static final long IN_FLIGHT_MILLIS = 2000L;
+
+    /**
+     * Receives each mismatching account, so large audits never hold them all in memory.
+     */
+    public interface MismatchSink {
+        void mismatch(UUID account, double expected, double stored);
+    }
+
+    private final Map<UUID, Double> expected;
+    private final long baselineTime;
+    private final Function<String, UUID> resolver;
+
+    private final Set<UUID> inFlight = new HashSet<>();
+    private final Map<String, UUID> resolved = new HashMap<>();
+
+    private long storedTime = Long.MAX_VALUE;
+    private long replayed;
+    private long otherCurrency;
+    private long unresolved;
+    private long unknownTypes;
+    private boolean globalInWindow;
+    private double externalNet; // money created (positive) or destroyed by logged entries
+
+    /**
+     * @param baseline  every money balance as of 'baselineTime'
+     * @param resolver  account for a name in the log, or null if it isn't an account
+     */
+    public BalanceAuditor(Map<UUID, Double> baseline, long baselineTime, Function<String, UUID> resolver) {
+        this.expected = new HashMap<>(baseline);
+        this.baselineTime = baselineTime;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Whether an entry changed many accounts without itemizing them (policy runs, dump
+     * imports and rollbacks of everyone). An audit can't replay across one of these.
+     */
+    public static boolean isGlobal(TransactionEntry entry) {
+        return entry.getType().equals("POLICY_RUN") || entry.getType().equals("IMPORT")
+                || (entry.getType().equals("ROLLBACK") && "*".equals(entry.getTo()));
+    }
+
+    /**
+     * Sets the time the stored balances will be taken at. Entries after it are not
+     * applied; their accounts are treated as in flight. Call before feeding entries.
+     */
+    public void setStoredTime(long storedTime) {
+        this.storedTime = storedTime;
+    }
+
+    // -----------------
+    // REPLAY
+    // -----------------
+
+    /**
+     * Applies one log entry. Entries must arrive in log order.
+     */
+    public void accept(TransactionEntry entry) {
+        long time = entry.getTimestamp();
+        if (time <= baselineTime) {
+            return; // already part of the baseline
+        }
+        if (isGlobal(entry)) {
+            if (time <= storedTime) {
+                globalInWindow = true;
+            }
+            return;
+        }
+        if (entry.getCurrencyType() != Currency.MONEY) {
+            otherCurrency++;
+            return;
+        }
+
+        UUID from = null;
+        UUID to = null;
+        double amount = entry.getAmount();
+        String type = entry.getType();
+        switch (type) {
+            case "PAY":
+            case "TRANSFER":
+                from = account(entry.getFrom());
+                to = account(entry.getTo());
+                break;
+            case "WITHDRAW":
+                from = account(entry.getFrom());
+                break;
+            case "DEPOSIT":
+            case "ADMIN_GIVE":
+            case "ADMIN_SET":
+            case "ADMIN_TAKE":
+            case "ROLLBACK":
+                // Admin/rollback entries name the sender in 'from'; only the target is an account
+                to = account(entry.getTo());
+                break;
+            default:
+                unknownTypes++;
+                markInFlight(account(entry.getFrom()));
+                markInFlight(account(entry.getTo()));
+                return;
+        }
+
+        // Changes near the baseline may already be in it, changes past the snapshot aren't in it yet
+        if (time <= baselineTime + IN_FLIGHT_MILLIS || time > storedTime) {
+            markInFlight(from);
+            markInFlight(to);
+            return;
+        }
+
+        replayed++;
+        switch (type) {
+            case "PAY":
+            case "TRANSFER":
+                add(from, -amount);
+                add(to, amount);
+                return;
+            case "WITHDRAW":
+                if (add(from, -amount)) {
+                    externalNet -= amount;
+                }
+                return;
+            case "ADMIN_TAKE":
+                if (add(to, -amount)) {
+                    externalNet -= amount;
+                }
+                return;
+            case "ADMIN_SET":
+                if (to == null) {
+                    unresolved++;
+                } else {
+                    Double before = expected.put(to, amount);
+                    externalNet += amount - (before != null ? before : 0.0);
+                }
+                return;
+            default:
+                // DEPOSIT, ADMIN_GIVE and single-account ROLLBACK (whose amount is the change)
+                if (add(to, amount)) {
+                    externalNet += amount;
+                }
+        }
+    }
+
+    // Adds to an expected balance; false (and counted) if the name isn't a known account
+    private boolean add(UUID account, double delta) {
+        if (account == null) {
+            unresolved++;
+            return false;
+        }
+        expected.merge(account, delta, Double::sum);
+        return true;
+    }
+
+    private void markInFlight(UUID account) {
+        if (account != null) {
+            inFlight.add(account);
+        }
+    }
+
+    // Names repeat a lot in a log, so each is only resolved once
+    private UUID account(String name) {
+        if (resolved.containsKey(name)) {
+            return resolved.get(name);
+        }
+        UUID uuid = resolver.apply(name);
+        if (uuid == null) {
+            // The journal falls back to the UUID for players without a known name
+            try {
+                uuid = UUID.fromString(name);
+            } catch (IllegalArgumentException ignored) {}
+        }
+        resolved.put(name, uuid);
+        return uuid;
+    }
+
+    // -----------------
+    // RESULT
+    // -----------------
+
+    /**
+     * Compares the replayed balances with the stored ones and reports each difference.
+     */
+    public Report compare(Map<UUID, Double> stored, MismatchSink sink) {
+        Set<UUID> accounts = new HashSet<>(expected.keySet());
+        accounts.addAll(stored.keySet());
+
+        long checked = 0;
+        long mismatches = 0;
+        double expectedTotal = 0.0;
+        double storedTotal = 0.0;
+        for (UUID account : accounts) {
+            if (inFlight.contains(account)) {
+                continue;
+            }
+            double want = expected.getOrDefault(account, 0.0);
+            double have = stored.getOrDefault(account, 0.0);
+            checked++;
+            expectedTotal += want;
+            storedTotal += have;
+            if (Math.abs(want - have) > TOLERANCE) {
+                mismatches++;
+                sink.mismatch(account, want, have);
+            }
+        }
+        return new Report(replayed, checked, mismatches, inFlight.size(), unresolved, otherCurrency,
+                unknownTypes, globalInWindow, expectedTotal, storedTotal, externalNet);
+    }
+
+    /**
+     * Outcome of an audit.
+     */
+    public static class Report {
+        private final long replayed;
+        private final long checked;
+        private final long mismatches;
+        private final long inFlight;
+        private final long unresolved;
+        private final long otherCurrency;
+        private final long unknownTypes;
+        private final boolean globalInWindow;
+        private final double expectedTotal;
+        private final double storedTotal;
+        private final double externalNet;
+
+        Report(long replayed, long checked, long mismatches, long inFlight, long unresolved, long otherCurrency,
+               long unknownTypes, boolean globalInWindow, double expectedTotal, double storedTotal, double externalNet) {
+            this.replayed = replayed;
+            this.checked = checked;
+            this.mismatches = mismatches;
+            this.inFlight = inFlight;
+            this.unresolved = unresolved;
+            this.otherCurrency = otherCurrency;
+            this.unknownTypes = unknownTypes;
+            this.globalInWindow = globalInWindow;
+            this.expectedTotal = expectedTotal;
+            this.storedTotal = storedTotal;
+            this.externalNet = externalNet;
+        }
+
+        /**
+         * True when every checked account matched and nothing made the replay unreliable.
+         */
+        public boolean isClean() {
+            return mismatches == 0 && unresolved == 0 && unknownTypes == 0 && !globalInWindow;
+        }
+
+        public long getReplayed() {
+            return replayed;
+        }
+        public long getChecked() {
+            return checked;
+        }
+        public long getMismatches() {
+            return mismatches;
+        }
+        public long getInFlight() {
+            return inFlight;
+        }
+        public long getUnresolved() {
+            return unresolved;
+        }
+        public long getOtherCurrency() {
+            return otherCurrency;
+        }
+        public long getUnknownTypes() {
+            return unknownTypes;
+        }
+        public boolean isGlobalInWindow() {
+            return globalInWindow;
+        }
+        public double getExpectedTotal() {
+            return expectedTotal;
+        }
+        public double getStoredTotal() {
+            return storedTotal;
+        }
+        public double getExternalNet() {
+            return externalNet;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package me.minimize.economyplus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records the resulting balance of every money change, plus periodic checkpoints of all
+ * balances, so any account's balance at a past time can be rebuilt (for rollbacks).
+ *
+ * Files live in the 'rollback' folder:
+ *   checkpoint-<t>.dat  every balance as of time t:  [magic:int][time:long][count:int] then count x [msb][lsb][balance]
+ *   journal-<t>.dat     changes made after the checkpoint at t:  records of [time][msb][lsb][balance]
+ *
+ * A new journal segment is started at the exact moment a checkpoint is taken (while
+ * DataManager holds every account lock), so a checkpoint plus the segments after it
+ * describe every change with nothing missing or counted twice. Records are queued
+ * under the account's lock, so per account the file order is the order of changes.
+ *
+ * Recording a change only adds it to a lock-free queue, so money writes on different
+ * account stripes never wait for each other or for the disk. flush() drains the queue
+ * into the current segment and writes it out; EconomyPlus calls it every second, so the
+ * journal on disk is at most about a second behind (and saves, rotations and
+ * reconstructions flush first).
+ *
+ * Reconstruction streams the files and never loads more than one value per account.
+ */
+public class BalanceJournal {
+
+    private static final int CHECKPOINT_MAGIC = 0x45504348; // "EPCH"
+
+    private final File folder;
+    private final long retentionMillis;
+
+    // Changes not written yet, in the order they were made
+    private final Queue<Change> queue = new ConcurrentLinkedQueue<>();
+
+    // Below guarded by 'this' (the draining side only)
+    private DataOutputStream out;
+    private long lastTimestamp;
+    private boolean failed; // only report a broken journal once
+
+    public BalanceJournal(File folder, long retentionMillis) {
+        this.folder = folder;
+        this.retentionMillis = retentionMillis;
+    }
+
+    // -----------------
+    // WRITING
+    // -----------------
+
+    /**
+     * Queues one change. Caller holds the account's lock stripe.
+     */
+    public void record(UUID uuid, double balance) {
+        queue.add(new Change(System.currentTimeMillis(), uuid, balance));
+    }
+
+    /**
+     * Closes the current segment and starts a new one for changes after 'checkpointTime'.
+     * Called while DataManager holds every account lock, so everything queued so far
+     * belongs to the old segment.
+     */
+    public synchronized void rotate(long checkpointTime) {
+        drain();
+        closeSegment();
+        lastTimestamp = Math.max(lastTimestamp, checkpointTime);
+        if (!folder.exists() && !folder.mkdirs()) {
+            reportFailure(new IOException("Could not create " + folder));
+            return;
+        }
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(new File(folder, "journal-" + checkpointTime + ".dat"), true)));
+            failed = false;
+        } catch (IOException e) {
+            reportFailure(e);
+        }
+    }
+
+    /**
+     * Writes a checkpoint of every balance, then drops checkpoints and segments that are
+     * no longer needed for the retention window.
+     */
+    public void writeCheckpoint(long time, Map<UUID, Double> balances) throws IOException {
+        File temp = new File(folder, "checkpoint-" + time + ".tmp");
+        try (DataOutputStream cp = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            cp.writeInt(CHECKPOINT_MAGIC);
+            cp.writeLong(time);
+            cp.writeInt(balances.size());
+            for (Map.Entry<UUID, Double> entry : balances.entrySet()) {
+                cp.writeLong(entry.getKey().getMostSignificantBits());
+                cp.writeLong(entry.getKey().getLeastSignificantBits());
+                cp.writeDouble(entry.getValue());
+            }
+        }
+        Files.move(temp.toPath(), new File(folder, "checkpoint-" + time + ".dat").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        prune(System.currentTimeMillis() - retentionMillis);
+    }
+
+    /**
+     * Writes every queued change to the current segment and flushes it to the OS.
+     */
+    public synchronized void flush() {
+        drain();
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            reportFailure(e);
+        }
+    }
+
+    public synchronized void close() {
+        drain();
+        closeSegment();
+    }
+
+    // Moves queued changes into the segment's buffer (dropped if no segment is open)
+    private void drain() {
+        Change change;
+        while ((change = queue.poll()) != null) {
+            if (out == null) {
+                continue;
+            }
+            // Keep timestamps non-decreasing, so readers can stop at the first record past their target time
+            long time = Math.max(change.time, lastTimestamp);
+            lastTimestamp = time;
+            try {
+                out.writeLong(time);
+                out.writeLong(change.uuid.getMostSignificantBits());
+                out.writeLong(change.uuid.getLeastSignificantBits());
+                out.writeDouble(change.balance);
+            } catch (IOException e) {
+                reportFailure(e);
+            }
+        }
+    }
+
+    // -----------------
+    // RECONSTRUCTION
+    // -----------------
+
+    /**
+     * Oldest time we can rebuild balances for, or Long.MAX_VALUE if there are no checkpoints yet.
+     */
+    public long getOldestRecoverableTime() {
+        List<Long> checkpoints = listTimes("checkpoint-");
+        return checkpoints.isEmpty() ? Long.MAX_VALUE : checkpoints.get(0);
+    }
+
+    /**
+     * One account's balance at 'time', or NaN if the account didn't exist yet.
+     * Throws IllegalArgumentException if 'time' is older than the oldest checkpoint.
+     */
+    public double reconstruct(UUID uuid, long time) throws IOException {
+        Map<UUID, Double> result = reconstruct(uuid, time, false);
+        Double value = result.get(uuid);
+        return value != null ? value : Double.NaN;
+    }
+
+    /**
+     * Every account's balance at 'time'. Accounts that didn't exist yet are absent.
+     * Throws IllegalArgumentException if 'time' is older than the oldest checkpoint.
+     */
+    public Map<UUID, Double> reconstructAll(long time) throws IOException {
+        return reconstruct(null, time, true);
+    }
+
+    // Seeks to the newest checkpoint at or before 'time', then replays every later segment up to 'time'
+    private Map<UUID, Double> reconstruct(UUID only, long time, boolean all) throws IOException {
+        // Make sure everything written so far is visible to the reader
+        flush();
+
+        long base = Long.MIN_VALUE;
+        for (long checkpoint : listTimes("checkpoint-")) {
+            if (checkpoint <= time) {
+                base = checkpoint;
+            }
+        }
+        if (base == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("No checkpoint that old; the oldest recoverable time is "
+                    + getOldestRecoverableTime());
+        }
+
+        Map<UUID, Double> values = new HashMap<>();
+        long onlyMsb = only != null ? only.getMostSignificantBits() : 0L;
+        long onlyLsb = only != null ? only.getLeastSignificantBits() : 0L;
+
+        try (DataInputStream in = open(new File(folder, "checkpoint-" + base + ".dat"))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Corrupt checkpoint " + base);
+            }
+            in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long msb = in.readLong();
+                long lsb = in.readLong();
+                double balance = in.readDouble();
+                if (all || (msb == onlyMsb && lsb == onlyLsb)) {
+                    values.put(new UUID(msb, lsb), balance);
+                }
+            }
+        }
+
+        for (long segment : listTimes("journal-")) {
+            if (segment < base || segment > time) {
+                continue;
+            }
+            try (DataInputStream in = open(new File(folder, "journal-" + segment + ".dat"))) {
+                while (true) {
+                    long ts = in.readLong();
+                    if (ts > time) {
+                        break;
+                    }
+                    long msb = in.readLong();
+                    long lsb = in.readLong();
+                    double balance = in.readDouble();
+                    if (all || (msb == onlyMsb && lsb == onlyLsb)) {
+                        values.put(new UUID(msb, lsb), balance);
+                    }
+                }
+            } catch (EOFException endOfSegment) {
+                // Normal end (or a torn final record after a crash, which we ignore)
+            }
+        }
+        return values;
+    }
+
+    // -----------------
+    // FILES
+    // -----------------
+
+    // Deletes checkpoints (and their segments) whose successor is already older than the cutoff
+    private void prune(long cutoff) {
+        List<Long> checkpoints = listTimes("checkpoint-");
+        for (int i = 0; i + 1 < checkpoints.size(); i++) {
+            if (checkpoints.get(i + 1) > cutoff) {
+                break;
+            }
+            long next = checkpoints.get(i + 1);
+            new File(folder, "checkpoint-" + checkpoints.get(i) + ".dat").delete();
+            for (long segment : listTimes("journal-")) {
+                if (segment < next) {
+                    new File(folder, "journal-" + segment + ".dat").delete();
+                }
+            }
+        }
+    }
+
+    // Sorted times of all files named <prefix><time>.dat
+    private List<Long> listTimes(String prefix) {
+        List<Long> times = new ArrayList<>();
+        String[] names = folder.list();
+        if (names == null) {
+            return times;
+        }
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.endsWith(".dat")) {
+                try {
+                    times.add(Long.parseLong(name.substring(prefix.length(), name.length() - 4)));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        Collections.sort(times);
+        return times;
+    }
+
+    private static DataInputStream open(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private void closeSegment() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            reportFailure(e);
+        }
+        out = null;
+    }
+
+    private void reportFailure(IOException e) {
+        if (!failed) {
+            failed = true;
+            EconomyPlus.getInstance().getLogger().severe("Balance journal write failed, rollbacks may be incomplete: " + e);
+        }
+    }
+
+    // One queued change
+    private static final class Change {
+        private final long time;
+        private final UUID uuid;
+        private final double balance;
+
+        Change(long time, UUID uuid, double balance) {
+            this.time = time;
+            this.uuid = uuid;
+            this.balance = balance;
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package me.minimize.economyplus;
 
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Handles loading and reading from config.yml.
  * Provides easy access to plugin settings and messages.
@@ -52,11 +56,199 @@ public class ConfigManager {
         return config.getInt("default-history-page-size", 200);
     }
 
+    // Player /history: entries per page, entries kept in memory per player, and how long
+    // an unused player's entries stay in memory
+    public int getPlayerHistoryPageSize() {
+        return Math.max(1, config.getInt("history.page-size", 10));
+    }
+    public int getRecentHistorySize() {
+        return Math.max(1, config.getInt("history.recent-size", 20));
+    }
+    public long getRecentHistoryIdleMinutes() {
+        return Math.max(1L, config.getLong("history.recent-idle-minutes", 30L));
+    }
+
     // Whether to hook into Vault
     public boolean isVaultHookEnabled() {
         return config.getBoolean("enable-vault-hook", false);
     }
 
+    // How often (in seconds) balance distribution stats are recomputed
+    public int getAnalyticsIntervalSeconds() {
+        return Math.max(10, config.getInt("analytics-interval-seconds", 300));
+    }
+
+    // /pay burst size per player before rate limiting kicks in
+    public int getPayRateLimitCapacity() {
+        return config.getInt("pay-protection.rate-limit-capacity", 5);
+    }
+
+    // Tokens regained per second for /pay
+    public double getPayRateLimitRefillPerSecond() {
+        return config.getDouble("pay-protection.rate-limit-refill-per-second", 0.5);
+    }
+
+    // Sliding window used to spot abnormal /pay patterns
+    public int getPayAnomalyWindowSeconds() {
+        return config.getInt("pay-protection.anomaly-window-seconds", 60);
+    }
+
+    // Transfers per window before an account is flagged
+    public int getPayAnomalyMaxTransfers() {
+        return config.getInt("pay-protection.anomaly-max-transfers", 20);
+    }
+
+    // Whether balance changes are replicated to other servers
+    public boolean isReplicationEnabled() {
+        return config.getBoolean("replication.enabled", false);
+    }
+
+    // Unique name of this server in the replication group
+    public String getReplicationServerId() {
+        return config.getString("replication.server-id", "server-1");
+    }
+
+    // "local" (same JVM) or "socket" (TCP)
+    public String getReplicationTransport() {
+        return config.getString("replication.transport", "socket");
+    }
+
+    // How often pending deltas are batched and sent
+    public long getReplicationFlushIntervalTicks() {
+        return Math.max(1L, config.getLong("replication.flush-interval-ticks", 10L));
+    }
+
+    public String getReplicationBindHost() {
+        return config.getString("replication.socket.bind-host", "127.0.0.1");
+    }
+
+    public int getReplicationListenPort() {
+        return config.getInt("replication.socket.listen-port", 25590);
+    }
+
+    public List<String> getReplicationPeers() {
+        return config.getStringList("replication.socket.peers");
+    }
+
+    // Shared secret for signing replication frames, or null if none is set
+    public String getReplicationSecret() {
+        String secret = config.getString("replication.socket.secret", "");
+        return secret == null || secret.isEmpty() ? null : secret;
+    }
+
+    // Whether scheduled interest/taxes/upkeep run at all
+    public boolean isPolicyEnabled() {
+        return config.getBoolean("economy-policies.enabled", false);
+    }
+
+    // Minutes between policy runs
+    public long getPolicyIntervalMinutes() {
+        return Math.max(1L, config.getLong("economy-policies.interval-minutes", 60L));
+    }
+
+    // Interest per run on positive balances (0.001 = 0.1%)
+    public double getPolicyInterestRate() {
+        return config.getDouble("economy-policies.interest-rate", 0.0);
+    }
+
+    // Balances above this are taxed
+    public double getPolicyWealthTaxThreshold() {
+        return config.getDouble("economy-policies.wealth-tax-threshold", 1000000.0);
+    }
+
+    // Tax per run on the part of a balance above the threshold
+    public double getPolicyWealthTaxRate() {
+        return config.getDouble("economy-policies.wealth-tax-rate", 0.0);
+    }
+
+    // Points removed from every faction per run
+    public int getPolicyFactionUpkeep() {
+        return config.getInt("economy-policies.faction-upkeep", 0);
+    }
+
+    // Accounts per work chunk
+    public int getPolicyChunkSize() {
+        return Math.max(1, config.getInt("economy-policies.chunk-size", 500));
+    }
+
+    // Max time a chunk runs before yielding its worker
+    public long getPolicySliceMillis() {
+        return Math.max(1L, config.getLong("economy-policies.slice-millis", 5L));
+    }
+
+    // Background threads used for policy runs
+    public int getPolicyThreads() {
+        return Math.max(1, config.getInt("economy-policies.threads", 2));
+    }
+
+    // Main-thread time (microseconds) per tick for queued messages/leaderboard rendering
+    public long getMainThreadBudgetMicros() {
+        return config.getLong("main-thread-budget-micros", 1000L);
+    }
+
+    // How many request IDs (idempotency keys) are remembered, and for how long
+    public int getIdempotencyMaxKeys() {
+        return config.getInt("idempotency.max-keys", 100000);
+    }
+    public long getIdempotencyTtlSeconds() {
+        return config.getLong("idempotency.ttl-seconds", 600L);
+    }
+
+    // Rollback checkpoints: how often one is written (on the next save) and how far back we can go
+    public long getRollbackCheckpointIntervalMinutes() {
+        return Math.max(1L, config.getLong("rollback.checkpoint-interval-minutes", 60L));
+    }
+    public long getRollbackRetentionHours() {
+        return Math.max(1L, config.getLong("rollback.retention-hours", 72L));
+    }
+
+    // Async API executor: max operations handled per batch
+    public int getApiMaxBatch() {
+        return Math.max(1, config.getInt("api.max-batch", 256));
+    }
+
+    // How often (in ticks) leaderboard subscribers are sent what changed
+    public long getLeaderboardFeedIntervalTicks() {
+        return Math.max(1L, config.getLong("api.leaderboard-feed-interval-ticks", 20L));
+    }
+
+    // Dumps (/econplus dump): threads compressing/decoding blocks, and the deflate level (1-9)
+    public int getDumpThreads() {
+        return Math.max(1, config.getInt("dump.threads", 2));
+    }
+    public int getDumpCompressionLevel() {
+        return Math.max(1, Math.min(9, config.getInt("dump.compression-level", 6)));
+    }
+
+    // Seconds after which onDisable reports slow background saves or a slow final save
+    public int getShutdownTimeoutSeconds() {
+        return Math.max(1, config.getInt("shutdown.timeout-seconds", 10));
+    }
+
+    // "yaml" (balances.yml) or "mapped" (accounts.dat record file) for player balances
+    public String getStorageType() {
+        return config.getString("storage-type", "yaml").toLowerCase();
+    }
+
+    // Extra currencies from the 'currencies' section (MONEY and FACTION_POINTS are built in)
+    public List<CurrencyStore> getCustomCurrencies() {
+        List<CurrencyStore> stores = new ArrayList<>();
+        ConfigurationSection section = config.getConfigurationSection("currencies");
+        if (section == null) {
+            return stores;
+        }
+        for (String name : section.getKeys(false)) {
+            if (name.equalsIgnoreCase("MONEY") || name.equalsIgnoreCase("FACTION_POINTS")) {
+                continue;
+            }
+            stores.add(new CurrencyStore(Currency.of(name),
+                    section.getString(name + ".symbol", ""),
+                    section.getInt(name + ".decimal-places", 0),
+                    section.getDouble(name + ".max-balance", 0.0)));
+        }
+        return stores;
+    }
+
     // Retrieves a message from config.yml with the plugin's prefix appended
     public String getMessage(String path) {
         String prefix = config.getString("messages.prefix", "&6[EconomyPlus]&r ");
@@ -0,0 +1,70 @@
+package me.minimize.economyplus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned currency identity.
+ * There is exactly one Currency instance per (uppercased) name, so transaction records
+ * share it instead of each carrying its own string, and comparisons are by identity/id.
+ *
+ * Only the identity lives here; settings such as decimal places or caps belong to the
+ * currency's CurrencyStore.
+ */
+public final class Currency {
+
+    private static final Map<String, Currency> BY_NAME = new ConcurrentHashMap<>();
+    private static final List<Currency> BY_ID = new ArrayList<>();
+
+    // Built-in currencies, always ids 0 and 1
+    public static final Currency MONEY = of("MONEY");
+    public static final Currency FACTION_POINTS = of("FACTION_POINTS");
+
+    private final int id;
+    private final String name;
+
+    private Currency(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * Returns the canonical instance for a name, creating it on first use.
+     */
+    public static Currency of(String name) {
+        String key = name.toUpperCase();
+        Currency existing = BY_NAME.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (BY_ID) {
+            return BY_NAME.computeIfAbsent(key, k -> {
+                Currency created = new Currency(BY_ID.size(), k);
+                BY_ID.add(created);
+                return created;
+            });
+        }
+    }
+
+    /**
+     * Looks up a currency by name without creating it; null if never seen.
+     */
+    public static Currency find(String name) {
+        return BY_NAME.get(name.toUpperCase());
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
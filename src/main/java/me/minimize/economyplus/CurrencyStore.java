@@ -0,0 +1,127 @@
+package me.minimize.economyplus;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.minimize.economyplus.utils.Leaderboard;
+
+/**
+ * Accounts for one config-defined currency (gems, tokens, ...).
+ * Balances are kept as whole minor units (e.g. cents) in mutable primitive cells, so
+ * updates neither box nor allocate, and a cap/decimal scale is enforced per currency.
+ * Each store has its own leaderboard, so one currency's traffic never touches another's.
+ *
+ * Mutating methods must be called while holding the account's lock (DataManager does this).
+ */
+public class CurrencyStore {
+
+    private final Currency currency;
+    private final String symbol;
+    private final int decimalPlaces;
+    private final long scale;   // 10^decimalPlaces
+    private final long capMinor; // Long.MAX_VALUE when uncapped
+
+    private final Map<UUID, AtomicLong> balances = new ConcurrentHashMap<>();
+    private final Leaderboard<UUID> leaderboard = new Leaderboard<>();
+
+    public CurrencyStore(Currency currency, String symbol, int decimalPlaces, double cap) {
+        this.currency = currency;
+        this.symbol = symbol;
+        this.decimalPlaces = Math.max(0, Math.min(8, decimalPlaces));
+        long s = 1;
+        for (int i = 0; i < this.decimalPlaces; i++) {
+            s *= 10;
+        }
+        this.scale = s;
+        this.capMinor = cap > 0 ? toMinor(cap) : Long.MAX_VALUE;
+    }
+
+    // -----------------
+    // CONVERSION
+    // -----------------
+
+    public long toMinor(double amount) {
+        return Math.round(amount * scale);
+    }
+
+    public double toMajor(long minor) {
+        return (double) minor / scale;
+    }
+
+    // Whether 'amount' is a whole number of minor units (0.4 isn't, with no decimal places)
+    public boolean isExact(double amount) {
+        double scaled = amount * scale;
+        return Math.abs(scaled - Math.rint(scaled)) <= Math.max(1e-6, 4 * Math.ulp(scaled));
+    }
+
+    public String format(long minor) {
+        return symbol + String.format("%." + decimalPlaces + "f", toMajor(minor));
+    }
+
+    // -----------------
+    // ACCOUNTS
+    // -----------------
+
+    public long get(UUID uuid) {
+        AtomicLong cell = balances.get(uuid);
+        return cell != null ? cell.get() : 0L;
+    }
+
+    /**
+     * Sets an account (clamped to [0, cap]) and returns the previous value,
+     * or Long.MIN_VALUE if the account didn't exist. Caller holds the account lock.
+     */
+    long set(UUID uuid, long minor) {
+        long clamped = Math.max(0L, Math.min(capMinor, minor));
+        AtomicLong cell = balances.get(uuid);
+        long previous;
+        if (cell == null) {
+            balances.put(uuid, new AtomicLong(clamped));
+            previous = Long.MIN_VALUE;
+        } else {
+            previous = cell.getAndSet(clamped);
+        }
+        leaderboard.update(uuid, clamped);
+        return previous;
+    }
+
+    /**
+     * Loads a value from disk without any cap/leaderboard side effects beyond indexing.
+     */
+    void load(UUID uuid, long minor) {
+        balances.put(uuid, new AtomicLong(minor));
+        leaderboard.update(uuid, minor);
+    }
+
+    public List<Map.Entry<UUID, Double>> top(int limit) {
+        List<Map.Entry<UUID, Double>> top = leaderboard.top(limit);
+        List<Map.Entry<UUID, Double>> result = new ArrayList<>(top.size());
+        for (Map.Entry<UUID, Double> entry : top) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), toMajor(entry.getValue().longValue())));
+        }
+        return result;
+    }
+
+    // Live view for saving/snapshots
+    Map<UUID, AtomicLong> getBalances() {
+        return balances;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+    public String getSymbol() {
+        return symbol;
+    }
+    public int getDecimalPlaces() {
+        return decimalPlaces;
+    }
+    public long getCapMinor() {
+        return capMinor;
+    }
+}
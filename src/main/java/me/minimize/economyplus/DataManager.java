@@ -5,12 +5,30 @@ import org.bukkit.OfflinePlayer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntUnaryOperator;
+
+import me.minimize.economyplus.replication.ReplicationManager;
+import me.minimize.economyplus.utils.ChatUtil;
+import me.minimize.economyplus.utils.Leaderboard;
 
 /**
- * Manages player balances and faction points, backed by a YAML file (balances.yml).
+ * Manages player balances, faction points and any extra currencies from config.yml,
+ * backed by a YAML file (balances.yml).
+ * With 'storage-type: mapped', player balances instead live in a memory-mapped record file
+ * (accounts.dat, see MappedAccountFile) that is written through on every change;
+ * balances.yml then only holds factions and extra currencies, and is the import source
+ * for existing balances the first time the record file is created. If a write to the
+ * record file fails, balances go back to balances.yml until the next start re-fills it.
+ * Starting with YAML storage marks an existing record file stale for the same reason.
  * Uses an in-memory cache for fast lookups, flushes to disk periodically or on shutdown.
+ * All read-modify-write operations hold the account's striped lock (see AccountLockManager),
+ * so they are safe to call from async threads.
  */
 public class DataManager {
 
@@ -20,14 +38,52 @@ public class DataManager {
     private final File dataFile;
     private final YamlConfiguration dataConfig;
 
+    // Record file for player balances, or null when balances are kept in YAML
+    private final MappedAccountFile accountFile;
+    // Set when a write to accountFile failed; balances are saved to YAML from then on
+    private volatile boolean accountFileFailed;
+
     // We use thread-safe maps to reduce concurrency issues
     private final Map<UUID, Double> balanceCache = new ConcurrentHashMap<>();
-    private final Map<String, Integer> factionPointsCache = new ConcurrentHashMap<>();
+    // Faction points as striped counters keyed by interned faction ID
+    private final FactionCounters factionCounters;
+
+    // Rankings kept up to date incrementally, so /baltop and /ftop never sort
+    // (the faction one is refreshed from the counters when read)
+    private final Leaderboard<UUID> moneyLeaderboard = new Leaderboard<>();
+    private final Leaderboard<String> factionLeaderboard = new Leaderboard<>();
 
-    // A lock object for critical sections (optional, since we use concurrent maps)
+    // Extra currencies (gems, tokens, ...), indexed by Currency id; null for built-ins
+    private final CurrencyStore[] currencyStores;
+
+    // Serializes load/save so only one save writes the file at a time
     private final Object dataLock = new Object();
 
-    public DataManager(EconomyPlus plugin) {
+    // Per-account striped locks; every read-modify-write goes through these
+    private final AccountLockManager accountLocks = new AccountLockManager(64);
+
+    // Resulting balance of every money change plus periodic checkpoints, for rollbacks
+    private final BalanceJournal journal;
+    private volatile long lastCheckpoint;
+
+    // Results of operations called with a request ID, so retries aren't applied twice
+    private final IdempotencyTable idempotency;
+
+    // Non-null while a snapshot is being taken; collects pre-images of changed accounts
+    private volatile SnapshotEpoch activeEpoch;
+
+    // Money/currency changes so far, and how many of them (plus which faction totals) the
+    // YAML file holds, so a save with nothing new skips rewriting it (guarded by dataLock)
+    private final LongAdder changes = new LongAdder();
+    private long savedChanges;
+    private Map<String, Integer> savedFactions;
+    private boolean savedYamlBalances;
+
+    /**
+     * @param recover whether the last shutdown wasn't clean, so balances should be
+     *                recovered from the balance journal (see recoverFromJournal)
+     */
+    public DataManager(EconomyPlus plugin, boolean recover) {
         this.plugin = plugin;
         
         // Attempt to create balances.yml if it doesn't exist
@@ -42,8 +98,164 @@ public class DataManager {
 
         dataConfig = YamlConfiguration.loadConfiguration(dataFile);
 
+        factionCounters = new FactionCounters(counter -> plugin.getAccountDirectory().registerFaction(counter.getKey()));
+
+        idempotency = new IdempotencyTable(plugin.getConfigManager().getIdempotencyMaxKeys(),
+                plugin.getConfigManager().getIdempotencyTtlSeconds() * 1000L);
+
+        // Set up stores for config-defined currencies
+        List<CurrencyStore> stores = plugin.getConfigManager().getCustomCurrencies();
+        int maxId = Currency.FACTION_POINTS.getId();
+        for (CurrencyStore store : stores) {
+            maxId = Math.max(maxId, store.getCurrency().getId());
+        }
+        currencyStores = new CurrencyStore[maxId + 1];
+        for (CurrencyStore store : stores) {
+            currencyStores[store.getCurrency().getId()] = store;
+        }
+
+        if (plugin.getConfigManager().getStorageType().equals("mapped")) {
+            accountFile = openAccountFile();
+        } else {
+            accountFile = null;
+            markAccountFileStale();
+        }
+
         // Load all data from file into in-memory caches
         loadAllData();
+
+        savedFactions = factionTotals();
+        savedYamlBalances = accountFile == null;
+
+        // Start a journal segment from a checkpoint of what we just loaded (recovered first,
+        // otherwise the checkpoint would record the stale file as the newest state)
+        journal = new BalanceJournal(new File(plugin.getDataFolder(), "rollback"),
+                plugin.getConfigManager().getRollbackRetentionHours() * 3_600_000L);
+        if (recover) {
+            recoverFromJournal();
+        }
+        lastCheckpoint = System.currentTimeMillis();
+        journal.rotate(lastCheckpoint);
+        try {
+            journal.writeCheckpoint(lastCheckpoint, new HashMap<>(balanceCache));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Opens accounts.dat, importing balances from balances.yml unless the file is complete
+     * (new, an import interrupted by a crash, or marked stale after a failed write).
+     * Falls back to YAML storage if the file can't be opened or filled.
+     */
+    private MappedAccountFile openAccountFile() {
+        File file = new File(plugin.getDataFolder(), "accounts.dat");
+        int expected = dataConfig.isConfigurationSection("players")
+                ? dataConfig.getConfigurationSection("players").getKeys(false).size() : 0;
+        MappedAccountFile mapped = null;
+        try {
+            mapped = new MappedAccountFile(file, Math.max(1024, expected));
+            if (!mapped.isReady()) {
+                boolean stale = mapped.isStale();
+                // Overwriting is idempotent, so a crash here just means importing again next time
+                if (expected > 0) {
+                    for (String uuidStr : dataConfig.getConfigurationSection("players").getKeys(false)) {
+                        mapped.putBalance(UUID.fromString(uuidStr), dataConfig.getDouble("players." + uuidStr + ".balance", 0.0));
+                    }
+                }
+                mapped.markReady();
+                ChatUtil.log("&7[Storage] &f" + (stale ? "accounts.dat was out of date; re-imported " : "Imported ")
+                        + expected + " balances from balances.yml into accounts.dat");
+            }
+            return mapped;
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().severe("Could not open accounts.dat, keeping balances in balances.yml: " + e);
+            if (mapped != null) {
+                try {
+                    mapped.close();
+                } catch (IOException ignored) {
+                    // Already failing; the file stays un-ready, so it's imported again next time
+                }
+            }
+            return null;
+        }
+    }
+
+    // With YAML storage, balances.yml gets every change from now on. An accounts.dat left
+    // from earlier mapped storage would still say READY and win when switching back, so
+    // mark it stale here; switching back then re-imports it from balances.yml.
+    private void markAccountFileStale() {
+        File file = new File(plugin.getDataFolder(), "accounts.dat");
+        if (!file.exists()) {
+            return;
+        }
+        try (MappedAccountFile mapped = new MappedAccountFile(file, 1024)) {
+            if (mapped.isReady()) {
+                mapped.markStale();
+            }
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().severe("Could not mark accounts.dat as out of date (" + e
+                    + "); delete it before switching back to storage-type: mapped.");
+        }
+    }
+
+    // Writes a balance through to accounts.dat. On failure the file is marked stale (the next
+    // start re-imports it from balances.yml) and balances are saved to balances.yml instead.
+    // Caller holds the account's lock stripe.
+    private void writeThrough(UUID uuid, double balance) {
+        if (accountFile == null || accountFileFailed) {
+            return;
+        }
+        try {
+            accountFile.putBalance(uuid, balance);
+        } catch (UncheckedIOException e) {
+            accountFileFailed = true;
+            accountFile.markStale();
+            plugin.getLogger().severe("Could not write balance of " + uuid + " to accounts.dat (" + e.getMessage()
+                    + "); saving balances to balances.yml until the next restart re-imports them.");
+        }
+    }
+
+    /**
+     * After an unclean shutdown balances.yml can be up to one save interval behind, while
+     * the balance journal is flushed every second, so it's missing at most the last second
+     * or so of money changes (less whatever the OS hadn't written yet). Replays the newest
+     * checkpoint and journal over what was loaded (and into accounts.dat, which normally
+     * already matches unless it was re-imported). Faction points and extra currencies
+     * aren't journaled and keep their saved values.
+     */
+    private void recoverFromJournal() {
+        if (journal.getOldestRecoverableTime() == Long.MAX_VALUE) {
+            return; // first start, nothing journaled yet
+        }
+
+        long start = System.currentTimeMillis();
+        Map<UUID, Double> latest;
+        try {
+            latest = journal.reconstructAll(Long.MAX_VALUE);
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().severe("Last shutdown wasn't clean and the balance journal can't be read, "
+                    + "keeping the saved balances: " + e);
+            return;
+        }
+
+        int recovered = 0;
+        synchronized (dataLock) {
+            for (Map.Entry<UUID, Double> entry : latest.entrySet()) {
+                Double loaded = balanceCache.get(entry.getKey());
+                if (loaded == null || loaded.doubleValue() != entry.getValue()) {
+                    balanceCache.put(entry.getKey(), entry.getValue());
+                    moneyLeaderboard.update(entry.getKey(), entry.getValue());
+                    writeThrough(entry.getKey(), entry.getValue());
+                    recovered++;
+                }
+            }
+            if (recovered > 0) {
+                savedChanges = -1; // balances.yml is behind, write it on the next save
+            }
+        }
+        ChatUtil.log("&e[Storage] &fLast shutdown wasn't clean; recovered " + recovered + " of " + latest.size()
+                + " balances from the rollback journal in " + (System.currentTimeMillis() - start) + "ms");
     }
 
     /**
@@ -51,12 +263,29 @@ public class DataManager {
      */
     private void loadAllData() {
         synchronized (dataLock) {
-            // Load player balances
-            if (dataConfig.isConfigurationSection("players")) {
+            // Load player balances (one sequential pass over the record file, no parsing)
+            if (accountFile != null) {
+                accountFile.scan((uuid, balance, version, lastSeen) -> {
+                    balanceCache.put(uuid, balance);
+                    moneyLeaderboard.update(uuid, balance);
+                });
+            } else if (dataConfig.isConfigurationSection("players")) {
                 for (String uuidStr : dataConfig.getConfigurationSection("players").getKeys(false)) {
                     UUID uuid = UUID.fromString(uuidStr);
                     double bal = dataConfig.getDouble("players." + uuidStr + ".balance", 0.0);
                     balanceCache.put(uuid, bal);
+                    moneyLeaderboard.update(uuid, bal);
+                }
+            }
+
+            // Load extra currencies (stored as whole minor units)
+            for (CurrencyStore store : currencyStores) {
+                String path = "currencies." + (store != null ? store.getCurrency().getName() : "");
+                if (store == null || !dataConfig.isConfigurationSection(path)) {
+                    continue;
+                }
+                for (String uuidStr : dataConfig.getConfigurationSection(path).getKeys(false)) {
+                    store.load(UUID.fromString(uuidStr), dataConfig.getLong(path + "." + uuidStr, 0L));
                 }
             }
 
@@ -65,7 +294,7 @@ public class DataManager {
                 if (dataConfig.isConfigurationSection("factions")) {
                     for (String factionKey : dataConfig.getConfigurationSection("factions").getKeys(false)) {
                         int points = dataConfig.getInt("factions." + factionKey + ".points", 0);
-                        factionPointsCache.put(factionKey.toLowerCase(), points);
+                        factionCounters.addRemote(factionCounters.getOrCreate(factionKey), points);
                     }
                 }
             }
@@ -75,29 +304,159 @@ public class DataManager {
     /**
      * Saves all in-memory balances/faction points back to the YAML file on disk.
      * Called periodically and on plugin disable.
+     *
+     * Writers are never blocked while this runs: we only pause them long enough to
+     * start a new snapshot epoch, then build the snapshot while they keep going.
+     * If nothing changed since the last save, the YAML file isn't rewritten.
+     * Returns false if the file couldn't be written.
      */
-    public void saveAllData() {
+    public boolean saveAllData() {
         synchronized (dataLock) {
+            // Read before the snapshot: anything counted is in it (later changes get written next time)
+            long seen = changes.sum();
+
+            // Every so often the snapshot doubles as a rollback checkpoint
+            long interval = plugin.getConfigManager().getRollbackCheckpointIntervalMinutes() * 60_000L;
+            boolean checkpoint = System.currentTimeMillis() - lastCheckpoint >= interval;
+            Snapshot snapshot = takeSnapshot(checkpoint);
+            journal.flush();
+            if (checkpoint) {
+                lastCheckpoint = snapshot.takenAt;
+                try {
+                    journal.writeCheckpoint(snapshot.takenAt, snapshot.balances);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            // The record file is already up to date, it just needs flushing
+            boolean yamlBalances = accountFile == null || accountFileFailed;
+            if (accountFile != null) {
+                accountFile.force();
+            }
+            boolean factionsEnabled = plugin.getConfigManager().isFactionPointsEnabled();
+            if (seen == savedChanges && yamlBalances == savedYamlBalances
+                    && (!factionsEnabled || snapshot.factionPoints.equals(savedFactions))) {
+                return true;
+            }
+
             // Save player balances
-            for (Map.Entry<UUID, Double> entry : balanceCache.entrySet()) {
-                dataConfig.set("players." + entry.getKey().toString() + ".balance", entry.getValue());
+            if (yamlBalances) {
+                for (Map.Entry<UUID, Double> entry : snapshot.balances.entrySet()) {
+                    dataConfig.set("players." + entry.getKey().toString() + ".balance", entry.getValue());
+                }
             }
 
             // Save faction points if enabled
-            if (plugin.getConfigManager().isFactionPointsEnabled()) {
-                for (Map.Entry<String, Integer> entry : factionPointsCache.entrySet()) {
+            if (factionsEnabled) {
+                for (Map.Entry<String, Integer> entry : snapshot.factionPoints.entrySet()) {
                     dataConfig.set("factions." + entry.getKey() + ".points", entry.getValue());
                 }
             }
 
+            // Save extra currencies
+            for (Map.Entry<Currency, Map<UUID, Long>> currency : snapshot.currencies.entrySet()) {
+                String path = "currencies." + currency.getKey().getName() + ".";
+                for (Map.Entry<UUID, Long> entry : currency.getValue().entrySet()) {
+                    dataConfig.set(path + entry.getKey().toString(), entry.getValue());
+                }
+            }
+
             try {
                 dataConfig.save(dataFile);
+                savedChanges = seen;
+                savedFactions = snapshot.factionPoints;
+                savedYamlBalances = yamlBalances;
+                return true;
             } catch (IOException e) {
                 e.printStackTrace();
+                return false;
             }
         }
     }
 
+    /**
+     * Takes a point-in-time copy of every balance and faction total (copy-on-write epoch).
+     *
+     * Starting an epoch holds every lock stripe for an instant, so no multi-account
+     * operation is half-applied at that point. From then on, the first write to an
+     * account inside the epoch stores its previous value as a "pre-image". The copy
+     * reads the live value and then prefers a pre-image if one exists, which yields
+     * exactly the values as of the epoch start, without stopping writers.
+     */
+    public Snapshot takeSnapshot() {
+        // Only one epoch can be active at a time, so don't overlap with a save's snapshot
+        synchronized (dataLock) {
+            return takeSnapshot(false);
+        }
+    }
+
+    // With 'rotateJournal', a new journal segment starts at the exact epoch start,
+    // so the snapshot can serve as the checkpoint for that segment.
+    private Snapshot takeSnapshot(boolean rotateJournal) {
+        final SnapshotEpoch epoch = new SnapshotEpoch();
+        final long[] takenAt = new long[1];
+        accountLocks.withAllLocked(() -> {
+            activeEpoch = epoch;
+            takenAt[0] = System.currentTimeMillis();
+            if (rotateJournal) {
+                journal.rotate(takenAt[0]);
+            }
+        });
+
+        try {
+            Map<UUID, Double> balances = new HashMap<>(balanceCache.size());
+            for (Map.Entry<UUID, Double> entry : balanceCache.entrySet()) {
+                // Read the live value first, then check for a pre-image (order matters)
+                Double value = entry.getValue();
+                Double before = epoch.balances.get(entry.getKey());
+                if (before != null) {
+                    value = before;
+                }
+                if (!value.isNaN()) {
+                    balances.put(entry.getKey(), value);
+                }
+            }
+
+            // Faction totals are single counters that never move points between accounts,
+            // so an exact sum read now is consistent on its own (no pre-images needed)
+            Map<String, Integer> factions = factionTotals();
+
+            Map<Currency, Map<UUID, Long>> currencies = new HashMap<>();
+            for (CurrencyStore store : currencyStores) {
+                if (store == null) {
+                    continue;
+                }
+                Map<UUID, Long> values = new HashMap<>(store.getBalances().size());
+                for (Map.Entry<UUID, AtomicLong> entry : store.getBalances().entrySet()) {
+                    long value = entry.getValue().get();
+                    // The per-currency pre-image map is created lazily, so look it up after the read
+                    Map<UUID, Long> before = epoch.currencies.get(store.getCurrency());
+                    Long pre = before != null ? before.get(entry.getKey()) : null;
+                    if (pre != null) {
+                        value = pre;
+                    }
+                    if (value != Long.MIN_VALUE) {
+                        values.put(entry.getKey(), value);
+                    }
+                }
+                currencies.put(store.getCurrency(), values);
+            }
+            return new Snapshot(takenAt[0], balances, factions, currencies);
+        } finally {
+            activeEpoch = null;
+        }
+    }
+
+    // Current total of every faction
+    private Map<String, Integer> factionTotals() {
+        Map<String, Integer> factions = new HashMap<>(factionCounters.size());
+        for (FactionCounters.Counter counter : factionCounters.all()) {
+            factions.put(counter.getKey(), (int) counter.sum());
+        }
+        return factions;
+    }
+
     // -----------------
     // MONEY OPERATIONS
     // -----------------
@@ -107,20 +466,21 @@ public class DataManager {
     }
 
     public void setBalance(UUID uuid, double amount) {
-        // Optionally enforce a max balance if configured
-        double finalAmount = amount;
-        if (plugin.getConfigManager().isMaxBalanceEnabled()) {
-            double max = plugin.getConfigManager().getMaxBalance();
-            if (finalAmount > max) {
-                finalAmount = max;
-            }
+        accountLocks.lock(uuid);
+        try {
+            setBalanceLocked(uuid, amount, true);
+        } finally {
+            accountLocks.unlock(uuid);
         }
-        balanceCache.put(uuid, finalAmount);
     }
 
     public void addBalance(UUID uuid, double amount) {
-        double current = getBalance(uuid);
-        setBalance(uuid, current + amount);
+        accountLocks.lock(uuid);
+        try {
+            setBalanceLocked(uuid, getBalance(uuid) + amount, true);
+        } finally {
+            accountLocks.unlock(uuid);
+        }
     }
 
     /**
@@ -128,29 +488,200 @@ public class DataManager {
      * Returns true on success, false if insufficient funds.
      */
     public boolean takeBalance(UUID uuid, double amount) {
-        double current = getBalance(uuid);
-        if (current < amount) {
-            return false;
+        accountLocks.lock(uuid);
+        try {
+            double current = getBalance(uuid);
+            if (current < amount) {
+                return false;
+            }
+            setBalanceLocked(uuid, current - amount, true);
+            return true;
+        } finally {
+            accountLocks.unlock(uuid);
         }
-        setBalance(uuid, current - amount);
-        return true;
+    }
+
+    /**
+     * Atomically moves 'amount' from one player to another.
+     * Both accounts are locked together, so nobody can observe (or save) the money
+     * as withdrawn but not yet deposited.
+     * Returns false if the sender doesn't have enough.
+     */
+    public boolean transfer(UUID from, UUID to, double amount) {
+        int[] locks = accountLocks.lockAll(from, to);
+        try {
+            double current = getBalance(from);
+            if (current < amount) {
+                return false;
+            }
+            setBalanceLocked(from, current - amount, true);
+            setBalanceLocked(to, getBalance(to) + amount, true);
+            return true;
+        } finally {
+            accountLocks.unlockAll(locks);
+        }
+    }
+
+    /**
+     * Atomically replaces a balance with 'fn(current)' and returns how much it changed.
+     * Used by bulk jobs (interest, taxes) that compute the new value from the old one.
+     */
+    public double updateBalance(UUID uuid, DoubleUnaryOperator fn) {
+        accountLocks.lock(uuid);
+        try {
+            double current = getBalance(uuid);
+            double updated = fn.applyAsDouble(current);
+            if (updated == current) {
+                return 0.0;
+            }
+            return setBalanceLocked(uuid, updated, true);
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+    }
+
+    // -----------------
+    // IDEMPOTENT OPERATIONS
+    // -----------------
+    // For other plugins that may retry a call (e.g. after a timeout). Each takes an optional
+    // request ID: the first call with an ID runs and is journaled with that ID, and repeats
+    // within the dedup window return the first call's result without touching any balance.
+    // Amounts must be positive and finite (IllegalArgumentException otherwise): a negative
+    // withdrawal would be a free deposit, and NaN would poison the balance.
+
+    /**
+     * Deposits money and journals it as DEPOSIT. Always succeeds (returns true).
+     */
+    public boolean addBalance(UUID uuid, double amount, String requestId) {
+        checkAmount(amount);
+        return idempotency.execute(requestId, "DEPOSIT:" + uuid + ":" + amount, () -> {
+            addBalance(uuid, amount);
+            plugin.getTransactionManager().logTransaction("DEPOSIT", "EconomyPlus", accountName(uuid),
+                    amount, "MONEY", requestId);
+            return true;
+        });
+    }
+
+    /**
+     * Withdraws money and journals it as WITHDRAW. Returns false (and journals nothing) if
+     * the player doesn't have enough; a retry with the same ID then also returns false.
+     */
+    public boolean takeBalance(UUID uuid, double amount, String requestId) {
+        checkAmount(amount);
+        return idempotency.execute(requestId, "WITHDRAW:" + uuid + ":" + amount, () -> {
+            if (!takeBalance(uuid, amount)) {
+                return false;
+            }
+            plugin.getTransactionManager().logTransaction("WITHDRAW", accountName(uuid), "EconomyPlus",
+                    amount, "MONEY", requestId);
+            return true;
+        });
+    }
+
+    /**
+     * Moves money between players and journals it as TRANSFER. The accounts must differ.
+     */
+    public boolean transfer(UUID from, UUID to, double amount, String requestId) {
+        checkAmount(amount);
+        if (from.equals(to)) {
+            throw new IllegalArgumentException("Can't transfer from an account to itself: " + from);
+        }
+        return idempotency.execute(requestId, "TRANSFER:" + from + ":" + to + ":" + amount, () -> {
+            if (!transfer(from, to, amount)) {
+                return false;
+            }
+            plugin.getTransactionManager().logTransaction("TRANSFER", accountName(from), accountName(to),
+                    amount, "MONEY", requestId);
+            return true;
+        });
+    }
+
+    /**
+     * Throws IllegalArgumentException unless 'amount' is a positive, finite number.
+     */
+    public static void checkAmount(double amount) {
+        if (!(amount > 0) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Amount must be a positive number, got " + amount);
+        }
+    }
+
+    public IdempotencyTable getIdempotencyTable() {
+        return idempotency;
+    }
+
+    // Name shown in the journal for an account
+    private String accountName(UUID uuid) {
+        String name = plugin.getAccountDirectory().getName(uuid);
+        return name != null ? name : uuid.toString();
+    }
+
+    /**
+     * Applies a balance change that originated on another server.
+     * Not re-published, otherwise deltas would bounce between servers forever.
+     */
+    public void applyReplicatedBalanceDelta(UUID uuid, double delta) {
+        accountLocks.lock(uuid);
+        try {
+            setBalanceLocked(uuid, getBalance(uuid) + delta, false);
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+    }
+
+    // Caller must hold the account's lock stripe; 'replicate' publishes the change to other servers.
+    // Returns the actual change after the max-balance cap.
+    private double setBalanceLocked(UUID uuid, double amount, boolean replicate) {
+        // Optionally enforce a max balance if configured
+        double finalAmount = amount;
+        if (plugin.getConfigManager().isMaxBalanceEnabled()) {
+            double max = plugin.getConfigManager().getMaxBalance();
+            if (finalAmount > max) {
+                finalAmount = max;
+            }
+        }
+
+        Double previous = balanceCache.get(uuid);
+        SnapshotEpoch epoch = activeEpoch;
+        if (epoch != null) {
+            // Remember the value as of the epoch start (NaN = account didn't exist yet)
+            epoch.balances.putIfAbsent(uuid, previous != null ? previous : Double.NaN);
+        }
+        balanceCache.put(uuid, finalAmount);
+        changes.increment();
+        journal.record(uuid, finalAmount);
+        writeThrough(uuid, finalAmount);
+        moneyLeaderboard.update(uuid, finalAmount);
+        plugin.getAnalyticsManager().onBalanceChange(previous, finalAmount);
+
+        double delta = finalAmount - (previous != null ? previous : 0.0);
+        ReplicationManager replication = plugin.getReplicationManager();
+        if (replicate && replication != null) {
+            replication.recordBalanceDelta(uuid, delta);
+        }
+        return delta;
     }
 
     // -------------
     // FACTION POINTS
     // -------------
+    // Plain additions are lock-free (striped counters). Operations that depend on the
+    // current total (set, take, update) hold the faction's lock stripe, so they don't race
+    // each other; a concurrent addition is never lost, it just lands on top.
 
     public int getFactionPoints(String factionName) {
-        return factionPointsCache.getOrDefault(factionName.toLowerCase(), 0);
+        FactionCounters.Counter counter = factionCounters.find(factionName);
+        return counter != null ? (int) counter.sum() : 0;
     }
 
     public void setFactionPoints(String factionName, int points) {
-        factionPointsCache.put(factionName.toLowerCase(), points);
+        updateFactionPoints(factionName, current -> points);
     }
 
+    /**
+     * Hot path (kills, captures): never blocks and, for a known faction, never allocates.
+     */
     public void addFactionPoints(String factionName, int points) {
-        int current = getFactionPoints(factionName);
-        setFactionPoints(factionName, current + points);
+        factionCounters.addLocal(factionCounters.getOrCreate(factionName), points);
     }
 
     /**
@@ -158,39 +689,344 @@ public class DataManager {
      * Returns false if they don't have enough.
      */
     public boolean takeFactionPoints(String factionName, int points) {
-        int current = getFactionPoints(factionName);
-        if (current < points) {
-            return false;
+        FactionCounters.Counter counter = factionCounters.getOrCreate(factionName);
+        accountLocks.lock(counter.getKey());
+        try {
+            if (counter.sum() < points) {
+                return false;
+            }
+            factionCounters.addLocal(counter, -points);
+            return true;
+        } finally {
+            accountLocks.unlock(counter.getKey());
         }
-        setFactionPoints(factionName, current - points);
-        return true;
     }
 
     /**
-     * Returns a sorted list of player balances in descending order.
+     * Atomically replaces a faction's points with 'fn(current)' and returns how much they changed.
+     */
+    public int updateFactionPoints(String factionName, IntUnaryOperator fn) {
+        FactionCounters.Counter counter = factionCounters.getOrCreate(factionName);
+        accountLocks.lock(counter.getKey());
+        try {
+            int current = (int) counter.sum();
+            int updated = fn.applyAsInt(current);
+            if (updated != current) {
+                factionCounters.addLocal(counter, (long) updated - current);
+            }
+            return updated - current;
+        } finally {
+            accountLocks.unlock(counter.getKey());
+        }
+    }
+
+    /**
+     * Applies a faction point change that originated on another server (not re-published).
+     */
+    public void applyReplicatedFactionDelta(String factionName, int delta) {
+        factionCounters.addRemote(factionCounters.getOrCreate(factionName), delta);
+    }
+
+    public FactionCounters getFactionCounters() {
+        return factionCounters;
+    }
+
+    /**
+     * Records that a player was seen (on join). Only tracked by the record file.
+     */
+    public void markSeen(UUID uuid) {
+        if (accountFile != null) {
+            accountFile.touch(uuid, System.currentTimeMillis());
+        }
+    }
+
+    public BalanceJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Flushes and closes the record file and balance journal. Call after the final saveAllData().
+     */
+    public void close() {
+        journal.close();
+        if (accountFile != null) {
+            try {
+                accountFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public AccountLockManager getAccountLocks() {
+        return accountLocks;
+    }
+
+    /**
+     * Copy of every known player account id, for jobs that walk all accounts.
+     */
+    public List<UUID> getAccountIds() {
+        return new ArrayList<>(balanceCache.keySet());
+    }
+
+    /**
+     * Copy of every known faction key (lowercased).
+     */
+    public List<String> getFactionNames() {
+        return factionCounters.keys();
+    }
+
+    /**
+     * Live, read-only view of every stored balance (no copying, no sorting).
+     * Used by analytics to stream over all accounts.
+     */
+    public Collection<Double> getBalanceValues() {
+        return Collections.unmodifiableCollection(balanceCache.values());
+    }
+
+    /**
+     * Returns player balances in descending order, from the incrementally maintained ranking.
      * 'limit' is how many entries to return (if 0 or negative, returns all).
      */
     public List<Map.Entry<UUID, Double>> getTopBalances(int limit) {
-        List<Map.Entry<UUID, Double>> sorted = new ArrayList<>(balanceCache.entrySet());
-        // Sort descending by balance value
-        sorted.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
-        if (limit > 0 && limit < sorted.size()) {
-            return sorted.subList(0, limit);
-        }
-        return sorted;
+        return moneyLeaderboard.top(limit);
     }
 
     /**
-     * Returns a sorted list of factions by points in descending order.
+     * Goes up whenever the money ranking changes (see Leaderboard.getVersion()).
+     */
+    public long getMoneyRankingVersion() {
+        return moneyLeaderboard.getVersion();
+    }
+
+    /**
+     * True if the money ranking hasn't moved since 'version' (see Leaderboard.isUnchangedSince()).
+     */
+    public boolean isMoneyRankingUnchangedSince(long version) {
+        return moneyLeaderboard.isUnchangedSince(version);
+    }
+
+    /**
+     * Returns factions by points in descending order. Exact counter sums are folded into the
+     * ranking first, so the result reflects every increment made before the call.
      * 'limit' is how many entries to return (if 0 or negative, returns all).
      */
     public List<Map.Entry<String, Integer>> getTopFactions(int limit) {
-        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(factionPointsCache.entrySet());
-        // Sort descending by points
-        sorted.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
-        if (limit > 0 && limit < sorted.size()) {
-            return sorted.subList(0, limit);
+        List<Map.Entry<String, Double>> top;
+        synchronized (factionLeaderboard) {
+            // Fold the current exact sums in; only factions that changed touch the ranking
+            factionCounters.refreshRanking(factionLeaderboard);
+            top = factionLeaderboard.top(limit);
+        }
+        List<Map.Entry<String, Integer>> result = new ArrayList<>(top.size());
+        for (Map.Entry<String, Double> entry : top) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().intValue()));
+        }
+        return result;
+    }
+
+    // -----------------
+    // EXTRA CURRENCIES
+    // -----------------
+
+    /**
+     * Store for a config-defined currency, or null for MONEY/FACTION_POINTS and unknown currencies.
+     * The lookup is a single array index, so built-in currencies pay nothing for extra ones.
+     */
+    public CurrencyStore getCurrencyStore(Currency currency) {
+        int id = currency.getId();
+        return id < currencyStores.length ? currencyStores[id] : null;
+    }
+
+    /**
+     * All config-defined currency stores.
+     */
+    public List<CurrencyStore> getCurrencyStores() {
+        List<CurrencyStore> result = new ArrayList<>();
+        for (CurrencyStore store : currencyStores) {
+            if (store != null) {
+                result.add(store);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Currency a player typed (MONEY or a config-defined one), or null if there's no such currency.
+     */
+    public Currency findCurrency(String name) {
+        Currency currency = Currency.find(name);
+        if (currency == null) {
+            return null;
+        }
+        return currency == Currency.MONEY || getCurrencyStore(currency) != null ? currency : null;
+    }
+
+    /**
+     * 'amount' exactly as the currency will store it, or NaN if it has more decimal places
+     * than the currency (0.4 of a currency without decimals would otherwise move nothing).
+     * Log and show the returned value rather than the typed one. MONEY is returned as is.
+     */
+    public double toStoredAmount(Currency currency, double amount) {
+        if (currency == Currency.MONEY) {
+            return amount;
+        }
+        CurrencyStore store = requireStore(currency);
+        return store.isExact(amount) ? store.toMajor(store.toMinor(amount)) : Double.NaN;
+    }
+
+    /**
+     * Amount formatted the way this currency displays it ("$12.50", "40 gems", ...).
+     */
+    public String format(Currency currency, double amount) {
+        if (currency == Currency.MONEY) {
+            return "$" + String.format("%.2f", amount);
+        }
+        CurrencyStore store = requireStore(currency);
+        return store.format(store.toMinor(amount));
+    }
+
+    public double getBalance(Currency currency, UUID uuid) {
+        if (currency == Currency.MONEY) {
+            return getBalance(uuid);
+        }
+        CurrencyStore store = requireStore(currency);
+        return store.toMajor(store.get(uuid));
+    }
+
+    public void setBalance(Currency currency, UUID uuid, double amount) {
+        if (currency == Currency.MONEY) {
+            setBalance(uuid, amount);
+            return;
+        }
+        CurrencyStore store = requireStore(currency);
+        accountLocks.lock(uuid);
+        try {
+            setCurrencyLocked(store, uuid, store.toMinor(amount));
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+    }
+
+    public void addBalance(Currency currency, UUID uuid, double amount) {
+        if (currency == Currency.MONEY) {
+            addBalance(uuid, amount);
+            return;
+        }
+        CurrencyStore store = requireStore(currency);
+        accountLocks.lock(uuid);
+        try {
+            setCurrencyLocked(store, uuid, store.get(uuid) + store.toMinor(amount));
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+    }
+
+    public boolean takeBalance(Currency currency, UUID uuid, double amount) {
+        if (currency == Currency.MONEY) {
+            return takeBalance(uuid, amount);
+        }
+        CurrencyStore store = requireStore(currency);
+        long minor = store.toMinor(amount);
+        accountLocks.lock(uuid);
+        try {
+            long current = store.get(uuid);
+            if (current < minor) {
+                return false;
+            }
+            setCurrencyLocked(store, uuid, current - minor);
+            return true;
+        } finally {
+            accountLocks.unlock(uuid);
+        }
+    }
+
+    public boolean transfer(Currency currency, UUID from, UUID to, double amount) {
+        if (currency == Currency.MONEY) {
+            return transfer(from, to, amount);
+        }
+        CurrencyStore store = requireStore(currency);
+        long minor = store.toMinor(amount);
+        int[] locks = accountLocks.lockAll(from, to);
+        try {
+            long current = store.get(from);
+            if (current < minor) {
+                return false;
+            }
+            setCurrencyLocked(store, from, current - minor);
+            setCurrencyLocked(store, to, store.get(to) + minor);
+            return true;
+        } finally {
+            accountLocks.unlockAll(locks);
+        }
+    }
+
+    public List<Map.Entry<UUID, Double>> getTopBalances(Currency currency, int limit) {
+        if (currency == Currency.MONEY) {
+            return getTopBalances(limit);
+        }
+        return requireStore(currency).top(limit);
+    }
+
+    private CurrencyStore requireStore(Currency currency) {
+        CurrencyStore store = getCurrencyStore(currency);
+        if (store == null) {
+            throw new IllegalArgumentException("Unknown currency: " + currency);
+        }
+        return store;
+    }
+
+    // Caller must hold the account's lock stripe
+    private void setCurrencyLocked(CurrencyStore store, UUID uuid, long minor) {
+        SnapshotEpoch epoch = activeEpoch;
+        if (epoch != null) {
+            long previous = store.getBalances().containsKey(uuid) ? store.get(uuid) : Long.MIN_VALUE;
+            epoch.currencies.computeIfAbsent(store.getCurrency(), c -> new ConcurrentHashMap<>())
+                    .putIfAbsent(uuid, previous);
+        }
+        store.set(uuid, minor);
+        changes.increment();
+    }
+
+    /**
+     * Previous values of accounts written to during a snapshot epoch.
+     */
+    private static final class SnapshotEpoch {
+        private final Map<UUID, Double> balances = new ConcurrentHashMap<>();
+        // Long.MIN_VALUE = account didn't exist yet
+        private final Map<Currency, Map<UUID, Long>> currencies = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * A consistent, point-in-time copy of all balances and faction points.
+     */
+    public static final class Snapshot {
+        private final long takenAt;
+        private final Map<UUID, Double> balances;
+        private final Map<String, Integer> factionPoints;
+        private final Map<Currency, Map<UUID, Long>> currencies;
+
+        Snapshot(long takenAt, Map<UUID, Double> balances, Map<String, Integer> factionPoints,
+                 Map<Currency, Map<UUID, Long>> currencies) {
+            this.takenAt = takenAt;
+            this.balances = balances;
+            this.factionPoints = factionPoints;
+            this.currencies = currencies;
+        }
+
+        // Epoch millis the values are as of
+        public long getTakenAt() {
+            return takenAt;
+        }
+        public Map<UUID, Double> getBalances() {
+            return balances;
+        }
+        public Map<String, Integer> getFactionPoints() {
+            return factionPoints;
+        }
+        // Extra currencies, in minor units
+        public Map<Currency, Map<UUID, Long>> getCurrencies() {
+            return currencies;
         }
-        return sorted;
     }
 }
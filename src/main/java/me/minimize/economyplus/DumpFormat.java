@@ -0,0 +1,495 @@
+package me.minimize.economyplus;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The .epd dump layout used by EconomyDump.
+ *
+ * File:  magic "EPDM" (int), version (int), created-at (long), then blocks, then a 0 byte.
+ * Block: section (byte), records (varint), raw length (varint), stored length (varint),
+ *        CRC32 of the raw bytes (int), deflated bytes.
+ *
+ * Every block decodes on its own (no state carries over from the previous one), so
+ * blocks can be compressed and decompressed on several threads while the file itself
+ * is written and read front to back. Inside a block, counts and amounts are varints:
+ * money is stored as whole cents when it is a whole number of cents (almost always),
+ * timestamps as the difference to the previous entry, and repeated strings (types,
+ * player names, currencies) as a reference to their first use in the block.
+ */
+final class DumpFormat {
+
+    static final int MAGIC = 0x4550444D; // "EPDM"
+    static final int VERSION = 1;
+
+    // Section ids
+    static final int END = 0;
+    static final int ACCOUNTS = 1;
+    static final int FACTIONS = 2;
+    static final int CURRENCY = 3;
+    static final int TRANSACTIONS = 4;
+
+    // Records per block; large enough to compress well, small enough to keep threads busy
+    static final int BLOCK_RECORDS = 8192;
+
+    // Refuse absurd lengths from a corrupt header before allocating for them
+    private static final int MAX_BLOCK_BYTES = 64 * 1024 * 1024;
+
+    private DumpFormat() {}
+
+    // -----------------
+    // FRAMES
+    // -----------------
+
+    /**
+     * A block as it sits in the file: compressed bytes plus what's needed to check them.
+     */
+    static final class Frame {
+        final int section;
+        final int records;
+        final int rawLength;
+        final int crc;
+        final byte[] stored;
+
+        Frame(int section, int records, int rawLength, int crc, byte[] stored) {
+            this.section = section;
+            this.records = records;
+            this.rawLength = rawLength;
+            this.crc = crc;
+            this.stored = stored;
+        }
+    }
+
+    static void writeHeader(DataOutputStream out, long createdAt) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(createdAt);
+    }
+
+    /**
+     * Reads the header and returns the creation time.
+     */
+    static long readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not an EconomyPlus dump");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported dump version " + version + " (this build reads " + VERSION + ")");
+        }
+        return in.readLong();
+    }
+
+    /**
+     * Compresses an encoded block. Safe to call from any thread.
+     */
+    static Frame compress(int section, int records, Encoder raw, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(raw.buf, 0, raw.len);
+
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw.buf, 0, raw.len);
+            deflater.finish();
+            byte[] out = new byte[Math.max(64, raw.len / 2)];
+            int len = 0;
+            while (!deflater.finished()) {
+                if (len == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                len += deflater.deflate(out, len, out.length - len);
+            }
+            return new Frame(section, records, raw.len, (int) crc.getValue(), Arrays.copyOf(out, len));
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static void writeFrame(DataOutputStream out, Frame frame) throws IOException {
+        out.writeByte(frame.section);
+        writeVarLong(out, frame.records);
+        writeVarLong(out, frame.rawLength);
+        writeVarLong(out, frame.stored.length);
+        out.writeInt(frame.crc);
+        out.write(frame.stored);
+    }
+
+    /**
+     * Reads the next frame, or returns null at the end marker.
+     */
+    static Frame readFrame(DataInputStream in) throws IOException {
+        int section;
+        try {
+            section = in.readUnsignedByte();
+        } catch (EOFException e) {
+            throw new IOException("dump is truncated (no end marker)");
+        }
+        if (section == END) {
+            return null;
+        }
+        int records = checkedLength(readVarLong(in));
+        int rawLength = checkedLength(readVarLong(in));
+        int storedLength = checkedLength(readVarLong(in));
+        int crc = in.readInt();
+        byte[] stored = new byte[storedLength];
+        in.readFully(stored);
+        return new Frame(section, records, rawLength, crc, stored);
+    }
+
+    /**
+     * Decompresses a frame and checks its CRC. Safe to call from any thread.
+     */
+    static Decoder decompress(Frame frame) throws IOException {
+        byte[] raw = new byte[frame.rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(frame.stored);
+            int len = 0;
+            while (len < raw.length && !inflater.finished()) {
+                int n = inflater.inflate(raw, len, raw.length - len);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                len += n;
+            }
+            if (len != raw.length || !inflater.finished()) {
+                throw new IOException("block is corrupt (wrong length)");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("block is corrupt: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(raw, 0, raw.length);
+        if ((int) crc.getValue() != frame.crc) {
+            throw new IOException("block is corrupt (checksum mismatch)");
+        }
+        return new Decoder(raw);
+    }
+
+    private static int checkedLength(long value) throws IOException {
+        if (value < 0 || value > MAX_BLOCK_BYTES) {
+            throw new IOException("block is corrupt (bad length " + value + ")");
+        }
+        return (int) value;
+    }
+
+    // -----------------
+    // SECTIONS
+    // -----------------
+
+    static void encodeAccount(Encoder out, UUID uuid, double balance) {
+        out.writeUuid(uuid);
+        out.writeAmount(balance);
+    }
+
+    static Map<UUID, Double> decodeAccounts(Decoder in, int records) throws IOException {
+        Map<UUID, Double> accounts = new LinkedHashMap<>(records * 2);
+        for (int i = 0; i < records; i++) {
+            UUID uuid = in.readUuid();
+            accounts.put(uuid, in.readAmount());
+        }
+        return accounts;
+    }
+
+    static void encodeFaction(Encoder out, String name, int points) {
+        out.writeString(name);
+        out.writeZigZag(points);
+    }
+
+    static Map<String, Integer> decodeFactions(Decoder in, int records) throws IOException {
+        Map<String, Integer> factions = new LinkedHashMap<>(records * 2);
+        for (int i = 0; i < records; i++) {
+            String name = in.readString();
+            factions.put(name, (int) in.readZigZag());
+        }
+        return factions;
+    }
+
+    /**
+     * A currency block starts with the currency's name and decimal places, so the
+     * minor units in it can be converted if the importing server uses another scale.
+     */
+    static void encodeCurrencyHeader(Encoder out, String currency, int decimalPlaces) {
+        out.writeString(currency);
+        out.writeVarLong(decimalPlaces);
+    }
+
+    static void encodeCurrencyAccount(Encoder out, UUID uuid, long minor) {
+        out.writeUuid(uuid);
+        out.writeZigZag(minor);
+    }
+
+    /**
+     * Balances of one extra currency, in the minor units of the exporting server.
+     */
+    static final class CurrencyBlock {
+        final String currency;
+        final int decimalPlaces;
+        final Map<UUID, Long> balances;
+
+        CurrencyBlock(String currency, int decimalPlaces, Map<UUID, Long> balances) {
+            this.currency = currency;
+            this.decimalPlaces = decimalPlaces;
+            this.balances = balances;
+        }
+    }
+
+    static CurrencyBlock decodeCurrency(Decoder in, int records) throws IOException {
+        String currency = in.readString();
+        int decimalPlaces = (int) in.readVarLong();
+        Map<UUID, Long> balances = new LinkedHashMap<>(records * 2);
+        for (int i = 0; i < records; i++) {
+            UUID uuid = in.readUuid();
+            balances.put(uuid, in.readZigZag());
+        }
+        return new CurrencyBlock(currency, decimalPlaces, balances);
+    }
+
+    /**
+     * Writes transactions, oldest first. Use one writer per block.
+     */
+    static final class TransactionWriter {
+        private final Encoder out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private long lastTime;
+
+        TransactionWriter(Encoder out) {
+            this.out = out;
+        }
+
+        void write(TransactionEntry entry) {
+            out.writeZigZag(entry.getTimestamp() - lastTime);
+            lastTime = entry.getTimestamp();
+            writeRef(entry.getType());
+            writeRef(entry.getFrom());
+            writeRef(entry.getTo());
+            out.writeAmount(entry.getAmount());
+            writeRef(entry.getCurrency());
+            writeRef(entry.getRequestId());
+        }
+
+        // 0 = null, 1..n = string #n seen earlier in this block, n+1 = new string follows
+        private void writeRef(String value) {
+            if (value == null) {
+                out.writeVarLong(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                out.writeVarLong(index + 1);
+                return;
+            }
+            out.writeVarLong(strings.size() + 1);
+            out.writeString(value);
+            strings.put(value, strings.size());
+        }
+    }
+
+    static List<TransactionEntry> decodeTransactions(Decoder in, int records) throws IOException {
+        List<TransactionEntry> entries = new ArrayList<>(records);
+        List<String> strings = new ArrayList<>();
+        long time = 0L;
+        for (int i = 0; i < records; i++) {
+            time += in.readZigZag();
+            String type = readRef(in, strings);
+            String from = readRef(in, strings);
+            String to = readRef(in, strings);
+            double amount = in.readAmount();
+            String currency = readRef(in, strings);
+            String requestId = readRef(in, strings);
+            if (type == null) {
+                throw new IOException("block is corrupt (transaction without a type)");
+            }
+            entries.add(new TransactionEntry(time, type, from, to, amount, currency, requestId));
+        }
+        return entries;
+    }
+
+    private static String readRef(Decoder in, List<String> strings) throws IOException {
+        long ref = in.readVarLong();
+        if (ref == 0) {
+            return null;
+        }
+        if (ref <= strings.size()) {
+            return strings.get((int) ref - 1);
+        }
+        if (ref != strings.size() + 1) {
+            throw new IOException("block is corrupt (bad string reference)");
+        }
+        String value = in.readString();
+        strings.add(value);
+        return value;
+    }
+
+    // -----------------
+    // VARINTS
+    // -----------------
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint too long");
+    }
+
+    /**
+     * Growable byte buffer a block is encoded into.
+     */
+    static final class Encoder {
+        private byte[] buf = new byte[4096];
+        private int len;
+
+        int size() {
+            return len;
+        }
+
+        private void ensure(int extra) {
+            if (len + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[len++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[len++] = (byte) value;
+        }
+
+        // Small negative numbers stay small
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[len++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeUuid(UUID uuid) {
+            writeLong(uuid.getMostSignificantBits());
+            writeLong(uuid.getLeastSignificantBits());
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, len, bytes.length);
+            len += bytes.length;
+        }
+
+        // Whole cents: (zigzag(cents) << 1). Anything else: 1, then the raw double.
+        void writeAmount(double amount) {
+            long cents = Math.round(amount * 100.0);
+            if (cents / 100.0 == amount && Math.abs(cents) < (1L << 61)) {
+                writeVarLong(((cents << 1) ^ (cents >> 63)) << 1);
+            } else {
+                writeVarLong(1);
+                writeLong(Double.doubleToRawLongBits(amount));
+            }
+        }
+    }
+
+    /**
+     * Reads a decompressed block.
+     */
+    static final class Decoder {
+        private final byte[] buf;
+        private int pos;
+
+        Decoder(byte[] buf) {
+            this.buf = buf;
+        }
+
+        private byte next() throws IOException {
+            if (pos >= buf.length) {
+                throw new IOException("block is corrupt (ends early)");
+            }
+            return buf[pos++];
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = next() & 0xFF;
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("block is corrupt (varint too long)");
+        }
+
+        long readZigZag() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (next() & 0xFF);
+            }
+            return value;
+        }
+
+        UUID readUuid() throws IOException {
+            return new UUID(readLong(), readLong());
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong();
+            if (length < 0 || length > buf.length - pos) {
+                throw new IOException("block is corrupt (bad string length)");
+            }
+            String value = new String(buf, pos, (int) length, StandardCharsets.UTF_8);
+            pos += (int) length;
+            return value;
+        }
+
+        double readAmount() throws IOException {
+            long value = readVarLong();
+            if ((value & 1) != 0) {
+                return Double.longBitsToDouble(readLong());
+            }
+            value >>>= 1;
+            long cents = (value >>> 1) ^ -(value & 1);
+            return cents / 100.0;
+        }
+    }
+}
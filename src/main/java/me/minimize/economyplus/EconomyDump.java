@@ -0,0 +1,627 @@
+package me.minimize.economyplus;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Exports and imports whole economies as compact binary dumps (dumps/<name>.epd, see
+ * DumpFormat), for backups and for moving between servers or storage types.
+ *
+ * A dump holds money balances, faction points, extra currencies and the transaction log.
+ * Export works from a consistent snapshot and streams the log in chunks; blocks are
+ * compressed on a small pool while the calling thread writes finished ones in order.
+ * Import reads blocks in order and decompresses/decodes them on the pool. The whole file
+ * is checked (checksums, lengths) before anything is applied, so a damaged dump never
+ * leaves a half-imported economy behind.
+ *
+ * Import can also read the balances.yml/transactions.yml of another data folder, so an
+ * existing deployment can be migrated in one step.
+ *
+ * Both directions block the calling thread; run them off the main thread.
+ */
+public class EconomyDump {
+
+    public static final String EXTENSION = ".epd";
+
+    // Why an export or import gave up early
+    private static final String STOPPING = "stopped, the server is shutting down";
+
+    // How many entries we copy out of the log per lock acquisition
+    private static final int CHUNK_SIZE = 512;
+
+    private static final AtomicInteger threadId = new AtomicInteger();
+
+    /**
+     * What an export or import did.
+     */
+    public static class Result {
+        private final File file;
+        private final long accounts;
+        private final long factions;
+        private final long currencyAccounts;
+        private final long transactions;
+        private final long bytes;
+        private final long elapsedMillis;
+
+        Result(File file, long accounts, long factions, long currencyAccounts, long transactions,
+               long bytes, long elapsedMillis) {
+            this.file = file;
+            this.accounts = accounts;
+            this.factions = factions;
+            this.currencyAccounts = currencyAccounts;
+            this.transactions = transactions;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public File getFile() {
+            return file;
+        }
+        public long getAccounts() {
+            return accounts;
+        }
+        public long getFactions() {
+            return factions;
+        }
+        // Accounts across all extra currencies
+        public long getCurrencyAccounts() {
+            return currencyAccounts;
+        }
+        // For imports: log entries added (entries already in the log are skipped)
+        public long getTransactions() {
+            return transactions;
+        }
+        // Size of the dump (or YAML files) on disk
+        public long getBytes() {
+            return bytes;
+        }
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    private final EconomyPlus plugin;
+    private final File dumpFolder;
+
+    public EconomyDump(EconomyPlus plugin) {
+        this.plugin = plugin;
+        this.dumpFolder = new File(plugin.getDataFolder(), "dumps");
+    }
+
+    /**
+     * dumps/<name>.epd (the extension is added if missing).
+     */
+    public File getDumpFile(String name) {
+        return new File(dumpFolder, name.endsWith(EXTENSION) ? name : name + EXTENSION);
+    }
+
+    // -----------------
+    // EXPORT
+    // -----------------
+
+    /**
+     * Writes everything to dumps/<name>.epd. The file only appears once it's complete.
+     */
+    public Result export(String name) throws IOException {
+        long start = System.currentTimeMillis();
+        DataManager data = plugin.getDataManager();
+        TransactionLog log = plugin.getTransactionManager().getLog();
+        int level = plugin.getConfigManager().getDumpCompressionLevel();
+
+        DataManager.Snapshot snapshot = data.takeSnapshot();
+        File file = getDumpFile(name);
+        File temp = new File(dumpFolder, file.getName() + ".tmp");
+        dumpFolder.mkdirs();
+
+        long accounts = 0;
+        long factions = 0;
+        long currencyAccounts = 0;
+        long transactions = 0;
+        ExecutorService pool = newPool();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            BlockWriter writer = new BlockWriter(out, pool, level, maxInFlight(), plugin::isStopping);
+            DumpFormat.writeHeader(out, snapshot.getTakenAt());
+
+            DumpFormat.Encoder block = new DumpFormat.Encoder();
+            int records = 0;
+            for (Map.Entry<UUID, Double> entry : snapshot.getBalances().entrySet()) {
+                DumpFormat.encodeAccount(block, entry.getKey(), entry.getValue());
+                accounts++;
+                if (++records == DumpFormat.BLOCK_RECORDS) {
+                    writer.submit(DumpFormat.ACCOUNTS, records, block);
+                    block = new DumpFormat.Encoder();
+                    records = 0;
+                }
+            }
+            if (records > 0) {
+                writer.submit(DumpFormat.ACCOUNTS, records, block);
+            }
+
+            block = new DumpFormat.Encoder();
+            records = 0;
+            for (Map.Entry<String, Integer> entry : snapshot.getFactionPoints().entrySet()) {
+                DumpFormat.encodeFaction(block, entry.getKey(), entry.getValue());
+                factions++;
+                if (++records == DumpFormat.BLOCK_RECORDS) {
+                    writer.submit(DumpFormat.FACTIONS, records, block);
+                    block = new DumpFormat.Encoder();
+                    records = 0;
+                }
+            }
+            if (records > 0) {
+                writer.submit(DumpFormat.FACTIONS, records, block);
+            }
+
+            for (Map.Entry<Currency, Map<UUID, Long>> currency : snapshot.getCurrencies().entrySet()) {
+                int decimalPlaces = data.getCurrencyStore(currency.getKey()).getDecimalPlaces();
+                block = null;
+                records = 0;
+                for (Map.Entry<UUID, Long> entry : currency.getValue().entrySet()) {
+                    if (block == null) {
+                        block = new DumpFormat.Encoder();
+                        DumpFormat.encodeCurrencyHeader(block, currency.getKey().getName(), decimalPlaces);
+                    }
+                    DumpFormat.encodeCurrencyAccount(block, entry.getKey(), entry.getValue());
+                    currencyAccounts++;
+                    if (++records == DumpFormat.BLOCK_RECORDS) {
+                        writer.submit(DumpFormat.CURRENCY, records, block);
+                        block = null;
+                        records = 0;
+                    }
+                }
+                if (block != null) {
+                    writer.submit(DumpFormat.CURRENCY, records, block);
+                }
+            }
+
+            // The log up to the snapshot, so the dump's history matches its balances
+            block = new DumpFormat.Encoder();
+            DumpFormat.TransactionWriter entries = new DumpFormat.TransactionWriter(block);
+            records = 0;
+            List<TransactionEntry> chunk = new ArrayList<>(CHUNK_SIZE);
+            int index = 0;
+            int end = log.indexOfFirstAtOrAfter(snapshot.getTakenAt() + 1);
+            while (index < end) {
+                chunk.clear();
+                int read = log.read(index, Math.min(CHUNK_SIZE, end - index), chunk);
+                if (read == 0) {
+                    break;
+                }
+                index += read;
+                for (TransactionEntry entry : chunk) {
+                    entries.write(entry);
+                    transactions++;
+                    if (++records == DumpFormat.BLOCK_RECORDS) {
+                        writer.submit(DumpFormat.TRANSACTIONS, records, block);
+                        block = new DumpFormat.Encoder();
+                        entries = new DumpFormat.TransactionWriter(block);
+                        records = 0;
+                    }
+                }
+            }
+            if (records > 0) {
+                writer.submit(DumpFormat.TRANSACTIONS, records, block);
+            }
+
+            writer.finish();
+            out.writeByte(DumpFormat.END);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return new Result(file, accounts, factions, currencyAccounts, transactions, file.length(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Compresses blocks on the pool and writes them in submission order. At most a few
+     * blocks are in flight, so memory stays bounded however big the economy is.
+     */
+    private static final class BlockWriter {
+        private final DataOutputStream out;
+        private final ExecutorService pool;
+        private final int level;
+        private final int maxInFlight;
+        private final Deque<Future<DumpFormat.Frame>> pending = new ArrayDeque<>();
+        private final BooleanSupplier stopping;
+
+        BlockWriter(DataOutputStream out, ExecutorService pool, int level, int maxInFlight, BooleanSupplier stopping) {
+            this.out = out;
+            this.pool = pool;
+            this.level = level;
+            this.maxInFlight = maxInFlight;
+            this.stopping = stopping;
+        }
+
+        void submit(int section, int records, DumpFormat.Encoder block) throws IOException {
+            if (stopping.getAsBoolean()) {
+                throw new IOException(STOPPING); // the temp file is deleted, the old dump stays
+            }
+            while (pending.size() >= maxInFlight) {
+                writeOldest();
+            }
+            pending.addLast(pool.submit(() -> DumpFormat.compress(section, records, block, level)));
+        }
+
+        void finish() throws IOException {
+            while (!pending.isEmpty()) {
+                writeOldest();
+            }
+        }
+
+        private void writeOldest() throws IOException {
+            DumpFormat.writeFrame(out, await(pending.removeFirst()));
+        }
+    }
+
+    // -----------------
+    // IMPORT
+    // -----------------
+
+    /**
+     * Loads a dump into this server, overwriting the balances and faction points it
+     * contains. Accounts that aren't in the dump are left alone. Log entries are merged
+     * into this server's log by timestamp, skipping ones it already has (see
+     * TransactionManager.importEntries).
+     */
+    public Result importDump(File file) throws IOException {
+        long start = System.currentTimeMillis();
+        // Writes balances and the log, so shutdown waits for it (it stops between blocks)
+        if (!plugin.beginDataWrite()) {
+            throw new IOException(STOPPING);
+        }
+        try {
+            // Pass 1: check every block, so a damaged file is refused before anything changes
+            readBlocks(file, null);
+
+            // Pass 2: apply, block by block, in file order
+            Importer importer = new Importer();
+            readBlocks(file, importer);
+            importer.finish();
+            return new Result(file, importer.accounts, importer.factions, importer.currencyAccounts,
+                    importer.transactions, file.length(), System.currentTimeMillis() - start);
+        } finally {
+            plugin.endDataWrite();
+        }
+    }
+
+    /**
+     * Reads frames on the calling thread and decodes them on the pool; decoded blocks are
+     * handed to 'importer' in file order (or only checked if it is null).
+     */
+    private void readBlocks(File file, Importer importer) throws IOException {
+        ExecutorService pool = newPool();
+        Deque<Future<Decoded>> pending = new ArrayDeque<>();
+        int maxInFlight = maxInFlight();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            DumpFormat.readHeader(in);
+            DumpFormat.Frame frame;
+            while ((frame = DumpFormat.readFrame(in)) != null) {
+                if (plugin.isStopping()) {
+                    // Balances are set, not added, so importing the same dump again finishes the job
+                    throw new IOException(importer == null ? STOPPING
+                            : STOPPING + "; part of the dump was applied, import it again after the restart");
+                }
+                final DumpFormat.Frame current = frame;
+                final boolean decode = importer != null;
+                pending.addLast(pool.submit(() -> Decoded.of(current, decode)));
+                while (pending.size() >= maxInFlight) {
+                    apply(importer, await(pending.removeFirst()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                apply(importer, await(pending.removeFirst()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void apply(Importer importer, Decoded decoded) {
+        if (importer != null) {
+            importer.apply(decoded);
+        }
+    }
+
+    /**
+     * One block, decompressed and checked; decoded into records when importing.
+     */
+    private static final class Decoded {
+        private final int section;
+        private Map<UUID, Double> accounts;
+        private Map<String, Integer> factions;
+        private DumpFormat.CurrencyBlock currency;
+        private List<TransactionEntry> transactions;
+
+        private Decoded(int section) {
+            this.section = section;
+        }
+
+        static Decoded of(DumpFormat.Frame frame, boolean decode) throws IOException {
+            DumpFormat.Decoder in = DumpFormat.decompress(frame);
+            Decoded decoded = new Decoded(frame.section);
+            switch (frame.section) {
+                case DumpFormat.ACCOUNTS:
+                    decoded.accounts = DumpFormat.decodeAccounts(in, frame.records);
+                    break;
+                case DumpFormat.FACTIONS:
+                    decoded.factions = DumpFormat.decodeFactions(in, frame.records);
+                    break;
+                case DumpFormat.CURRENCY:
+                    decoded.currency = DumpFormat.decodeCurrency(in, frame.records);
+                    break;
+                case DumpFormat.TRANSACTIONS:
+                    decoded.transactions = DumpFormat.decodeTransactions(in, frame.records);
+                    break;
+                default:
+                    throw new IOException("unknown block type " + frame.section);
+            }
+            // The check pass only needs to know the block decodes; let the records go
+            return decode ? decoded : new Decoded(frame.section);
+        }
+    }
+
+    /**
+     * Applies decoded records to the live stores, and logs one IMPORT entry at the end.
+     */
+    private final class Importer {
+        private final DataManager data = plugin.getDataManager();
+        private final TransactionManager transactionManager = plugin.getTransactionManager();
+        // Merged into the log in one go by finish(), so transactions.yml is rewritten once
+        private final List<TransactionEntry> entries = new ArrayList<>();
+
+        private long accounts;
+        private long factions;
+        private long currencyAccounts;
+        private long transactions;
+        private double moneyChange;
+        private final List<String> skippedCurrencies = new ArrayList<>();
+
+        void apply(Decoded block) {
+            switch (block.section) {
+                case DumpFormat.ACCOUNTS:
+                    applyBalances(block.accounts);
+                    break;
+                case DumpFormat.FACTIONS:
+                    applyFactions(block.factions);
+                    break;
+                case DumpFormat.CURRENCY:
+                    applyCurrency(block.currency.currency, block.currency.decimalPlaces, block.currency.balances);
+                    break;
+                case DumpFormat.TRANSACTIONS:
+                    applyTransactions(block.transactions);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void applyBalances(Map<UUID, Double> balances) {
+            for (Map.Entry<UUID, Double> entry : balances.entrySet()) {
+                moneyChange += entry.getValue() - data.getBalance(entry.getKey());
+                data.setBalance(entry.getKey(), entry.getValue());
+                accounts++;
+            }
+        }
+
+        void applyFactions(Map<String, Integer> points) {
+            if (!plugin.getConfigManager().isFactionPointsEnabled()) {
+                return;
+            }
+            for (Map.Entry<String, Integer> entry : points.entrySet()) {
+                data.setFactionPoints(entry.getKey(), entry.getValue());
+                factions++;
+            }
+        }
+
+        // Minor units are rescaled if this server uses other decimal places for the currency
+        void applyCurrency(String name, int decimalPlaces, Map<UUID, Long> balances) {
+            Currency currency = data.findCurrency(name);
+            CurrencyStore store = currency != null ? data.getCurrencyStore(currency) : null;
+            if (store == null) {
+                if (!skippedCurrencies.contains(name)) {
+                    skippedCurrencies.add(name);
+                    plugin.getLogger().warning("Dump has balances in currency '" + name
+                            + "', which isn't configured here; skipping them.");
+                }
+                return;
+            }
+            double scale = Math.pow(10, decimalPlaces);
+            for (Map.Entry<UUID, Long> entry : balances.entrySet()) {
+                data.setBalance(currency, entry.getKey(), entry.getValue() / scale);
+                currencyAccounts++;
+            }
+        }
+
+        void applyTransactions(List<TransactionEntry> block) {
+            entries.addAll(block);
+        }
+
+        void finish() {
+            transactions = transactionManager.importEntries(entries);
+            // One summary entry, like a policy run: the audit can't replay across an import
+            transactionManager.logTransaction("IMPORT", "EconomyPlus", "*", moneyChange, "MONEY");
+            data.saveAllData();
+        }
+    }
+
+    /**
+     * Imports balances.yml and transactions.yml from another data folder (e.g. a copy of
+     * an older install). Parsing YAML is single-threaded, so unlike dumps this isn't split
+     * across the pool.
+     */
+    public Result importYaml(File folder) throws IOException {
+        long start = System.currentTimeMillis();
+        File balancesFile = new File(folder, "balances.yml");
+        File transactionsFile = new File(folder, "transactions.yml");
+        if (!balancesFile.isFile() && !transactionsFile.isFile()) {
+            throw new IOException("no balances.yml or transactions.yml in " + folder.getPath());
+        }
+        if (folder.getCanonicalFile().equals(plugin.getDataFolder().getCanonicalFile())) {
+            throw new IOException("that's this server's own data folder");
+        }
+
+        // Parse everything first, so a broken file is refused before anything changes
+        YamlConfiguration balances = null;
+        if (balancesFile.isFile()) {
+            balances = new YamlConfiguration();
+            try {
+                balances.load(balancesFile);
+            } catch (InvalidConfigurationException e) {
+                throw new IOException("can't read balances.yml: " + e.getMessage());
+            }
+        }
+        List<TransactionEntry> entries = new ArrayList<>();
+        if (transactionsFile.isFile()) {
+            YamlConfiguration log = new YamlConfiguration();
+            try {
+                log.load(transactionsFile);
+            } catch (InvalidConfigurationException e) {
+                throw new IOException("can't read transactions.yml: " + e.getMessage());
+            }
+            for (Map<?, ?> raw : log.getMapList("transactions")) {
+                TransactionEntry entry = TransactionEntry.fromMap(raw);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            entries.sort(Comparator.comparingLong(TransactionEntry::getTimestamp));
+        }
+
+        // Applying writes balances and the log, so shutdown waits for it
+        if (!plugin.beginDataWrite()) {
+            throw new IOException(STOPPING);
+        }
+        try {
+            Importer importer = new Importer();
+            if (balances != null) {
+                ConfigurationSection players = balances.getConfigurationSection("players");
+                if (players != null) {
+                    Map<UUID, Double> values = new LinkedHashMap<>();
+                    for (String key : players.getKeys(false)) {
+                        UUID uuid = parseUuid(key);
+                        if (uuid != null) {
+                            values.put(uuid, players.getDouble(key + ".balance", 0.0));
+                        }
+                    }
+                    importer.applyBalances(values);
+                }
+
+                ConfigurationSection factionSection = balances.getConfigurationSection("factions");
+                if (factionSection != null) {
+                    Map<String, Integer> values = new LinkedHashMap<>();
+                    for (String key : factionSection.getKeys(false)) {
+                        values.put(key, factionSection.getInt(key + ".points", 0));
+                    }
+                    importer.applyFactions(values);
+                }
+
+                // balances.yml keeps extra currencies in minor units; the old decimal places aren't
+                // recorded there, so assume they're the same as in this server's config
+                ConfigurationSection currencies = balances.getConfigurationSection("currencies");
+                if (currencies != null) {
+                    for (String name : currencies.getKeys(false)) {
+                        ConfigurationSection section = currencies.getConfigurationSection(name);
+                        if (section == null) {
+                            continue;
+                        }
+                        Currency currency = plugin.getDataManager().findCurrency(name);
+                        CurrencyStore store = currency != null ? plugin.getDataManager().getCurrencyStore(currency) : null;
+                        Map<UUID, Long> values = new LinkedHashMap<>();
+                        for (String key : section.getKeys(false)) {
+                            UUID uuid = parseUuid(key);
+                            if (uuid != null) {
+                                values.put(uuid, section.getLong(key, 0L));
+                            }
+                        }
+                        importer.applyCurrency(name, store != null ? store.getDecimalPlaces() : 0, values);
+                    }
+                }
+            }
+            importer.applyTransactions(entries);
+            importer.finish();
+
+            return new Result(folder, importer.accounts, importer.factions, importer.currencyAccounts,
+                    importer.transactions, balancesFile.length() + transactionsFile.length(),
+                    System.currentTimeMillis() - start);
+        } finally {
+            plugin.endDataWrite();
+        }
+    }
+
+    // -----------------
+    // HELPERS
+    // -----------------
+
+    private ExecutorService newPool() {
+        return Executors.newFixedThreadPool(plugin.getConfigManager().getDumpThreads(), r -> {
+            Thread t = new Thread(r, "EconomyPlus-Dump-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Blocks queued or being worked on at once; enough to keep every thread busy
+    private int maxInFlight() {
+        return plugin.getConfigManager().getDumpThreads() * 2;
+    }
+
+    // Waits for a block task, unwrapping its IOException
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static UUID parseUuid(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -3,10 +3,24 @@ package me.minimize.economyplus;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.command.PluginCommand;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.ServicePriority;
+import org.bukkit.plugin.java.JavaPluginLoader;
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+import me.minimize.economyplus.api.EconomyService;
 import me.minimize.economyplus.commands.*;
+import me.minimize.economyplus.listeners.PlayerListener;
+import me.minimize.economyplus.replication.LocalTransport;
+import me.minimize.economyplus.replication.ReplicationManager;
+import me.minimize.economyplus.replication.ReplicationTransport;
+import me.minimize.economyplus.replication.SocketTransport;
 import me.minimize.economyplus.utils.ChatUtil;
 
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Main class for the EconomyPlus plugin.
  * Responsible for initialization, command registration, and overall management.
@@ -20,6 +34,53 @@ public class EconomyPlus extends JavaPlugin {
     private ConfigManager configManager;
     private DataManager dataManager;
     private TransactionManager transactionManager;
+    private TransactionExporter transactionExporter;
+    private AnalyticsManager analyticsManager;
+
+    // Known player/faction names, for fast and deterministic target lookups
+    private AccountDirectory accountDirectory;
+
+    // Time-budgeted queue for main-thread side effects (messages, leaderboards)
+    private TickScheduler tickScheduler;
+
+    // /pay throttling and abuse detection
+    private PayRateLimiter payRateLimiter;
+    private PayAnomalyDetector payAnomalyDetector;
+
+    // Scheduled interest/tax/upkeep
+    private EconomyPolicyEngine policyEngine;
+
+    // Async API for other plugins (also published through the ServicesManager)
+    private AsyncEconomyService economyService;
+
+    // Pushes top-N leaderboard changes to API subscribers
+    private LeaderboardFeed leaderboardFeed;
+
+    // Null unless replication is enabled in the config
+    private ReplicationManager replicationManager;
+
+    // Autosave, journal flush and once-a-minute cleanup timers, cancelled first on disable
+    private BukkitTask autoSaveTask;
+    private BukkitTask journalFlushTask;
+    private BukkitTask maintenanceTask;
+
+    // Set first thing in onDisable; long background jobs check it and stop early
+    private volatile boolean stopping;
+    // Background work currently writing the data files (see beginDataWrite)
+    private final AtomicInteger dataWriters = new AtomicInteger();
+
+    // Used by the server's plugin loader
+    public EconomyPlus() {
+        super();
+    }
+
+    /**
+     * Loads the plugin outside a real server (the tests' simulated server uses this).
+     * Bukkit refuses this constructor when called from its own plugin class loader.
+     */
+    protected EconomyPlus(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
 
     @Override
     public void onEnable() {
@@ -30,11 +91,48 @@ public class EconomyPlus extends JavaPlugin {
         configManager = new ConfigManager(this);
         configManager.loadConfig();
 
-        // Initialize data manager (handles balances, faction points, etc.)
-        dataManager = new DataManager(this);
+        tickScheduler = new TickScheduler(this, configManager.getMainThreadBudgetMicros());
+        tickScheduler.start();
+
+        // Analytics and the directory receive updates from the data/transaction managers, so they exist first
+        analyticsManager = new AnalyticsManager(this);
+        accountDirectory = new AccountDirectory(this);
+
+        // Initialize data manager (handles balances, faction points, etc.).
+        // Without a clean-shutdown marker the last run may have died before its final save.
+        boolean cleanShutdown = ShutdownMarker.consume(this);
+        dataManager = new DataManager(this, !cleanShutdown);
 
         // Initialize transaction manager (handles transaction logging/history)
         transactionManager = new TransactionManager(this);
+        transactionExporter = new TransactionExporter(this);
+
+        // Seed running economy aggregates and start the distribution timer
+        analyticsManager.start();
+
+        // Index known player and faction names, then keep them current on join
+        accountDirectory.rebuild();
+        getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
+
+        // Scheduled interest/taxes/upkeep (no-op unless enabled)
+        policyEngine = new EconomyPolicyEngine(this);
+        policyEngine.start();
+
+        // Optional: share balance deltas with other servers
+        if (configManager.isReplicationEnabled()) {
+            setupReplication();
+        }
+
+        payRateLimiter = new PayRateLimiter(configManager.getPayRateLimitCapacity(),
+                configManager.getPayRateLimitRefillPerSecond());
+        payAnomalyDetector = new PayAnomalyDetector(configManager.getPayAnomalyWindowSeconds() * 1000L,
+                configManager.getPayAnomalyMaxTransfers());
+
+        // Publish the async API for other plugins
+        leaderboardFeed = new LeaderboardFeed(this);
+        leaderboardFeed.start(configManager.getLeaderboardFeedIntervalTicks());
+        economyService = new AsyncEconomyService(this, configManager.getApiMaxBatch());
+        getServer().getServicesManager().register(EconomyService.class, economyService, this, ServicePriority.Normal);
 
         // Register plugin commands
         registerCommands();
@@ -46,22 +144,175 @@ public class EconomyPlus extends JavaPlugin {
 
         // Schedule periodic asynchronous saving to reduce main-thread blocking
         // This helps performance on larger servers with lots of transactions
-        new BukkitRunnable() {
+        autoSaveTask = new BukkitRunnable() {
             @Override
             public void run() {
-                dataManager.saveAllData();
+                if (!beginDataWrite()) {
+                    return;
+                }
+                try {
+                    dataManager.saveAllData();
+                } finally {
+                    endDataWrite();
+                }
             }
         }.runTaskTimerAsynchronously(this, 20L * 300, 20L * 300); 
         // Above runs every 5 minutes (300s). Adjust to your needs.
 
+        // Write queued balance-journal records every second, so crash recovery loses at most that
+        journalFlushTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                dataManager.getJournal().flush();
+            }
+        }.runTaskTimerAsynchronously(this, 20L, 20L);
+
+        // Drop idle /pay throttling state, expired request IDs and unused /history buffers
+        // once a minute so they never grow unbounded
+        maintenanceTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                payRateLimiter.expireIdle();
+                payAnomalyDetector.expireIdle();
+                dataManager.getIdempotencyTable().expire();
+                transactionManager.getRecentTransactions().expireIdle();
+            }
+        }.runTaskTimerAsynchronously(this, 20L * 60, 20L * 60);
+
         ChatUtil.log("&aEconomyPlus has been enabled.");
     }
 
     @Override
     public void onDisable() {
-        // Save data one last time on disable to ensure nothing is lost
-        dataManager.saveAllData();
-        ChatUtil.log("&cEconomyPlus has been disabled.");
+        // Waiting past this deadline is reported (it usually means a slow disk).
+        // Any of these may be null if onEnable failed partway; whatever did start is still stopped.
+        int timeoutSeconds = configManager != null ? configManager.getShutdownTimeoutSeconds() : 10;
+        long deadline = System.currentTimeMillis() + timeoutSeconds * 1000L;
+
+        // Exports, audits, rollbacks and dump imports see this and wind down
+        stopping = true;
+
+        // No new background saves or cleanups from here on
+        if (autoSaveTask != null) {
+            autoSaveTask.cancel();
+        }
+        if (journalFlushTask != null) {
+            journalFlushTask.cancel();
+        }
+        if (maintenanceTask != null) {
+            maintenanceTask.cancel();
+        }
+
+        getServer().getServicesManager().unregisterAll(this);
+        if (economyService != null) {
+            economyService.shutdown();
+        }
+        if (leaderboardFeed != null) {
+            leaderboardFeed.stop();
+        }
+        if (analyticsManager != null) {
+            analyticsManager.stop();
+        }
+        if (policyEngine != null) {
+            policyEngine.stop();
+        }
+        if (replicationManager != null) {
+            replicationManager.stop();
+        }
+        if (tickScheduler != null) {
+            tickScheduler.stop();
+        }
+
+        if (dataManager == null) {
+            return; // nothing was loaded, so there's nothing to save
+        }
+
+        // An autosave, rollback or dump import already running would write the same files, so
+        // let those finish (the long ones stop early) before the final save. Read-only jobs
+        // like exports and audits are just told to stop; they don't hold the data files.
+        awaitDataWriters(deadline);
+
+        // Save data one last time on disable to ensure nothing is lost. balances.yml is only
+        // rewritten if something changed since the last save (accounts.dat is just flushed).
+        // It runs on its own thread only so we can report a slow disk at the deadline; we still
+        // wait for it, so nothing writes the files once onDisable returns (e.g. on /reload).
+        AtomicBoolean saved = new AtomicBoolean();
+        Thread finalSave = new Thread(() -> {
+            saved.set(dataManager.saveAllData());
+            dataManager.close();
+        }, "EconomyPlus-Shutdown");
+        finalSave.start();
+        if (!join(finalSave, deadline)) {
+            getLogger().severe("Final save didn't finish within " + timeoutSeconds + "s; still waiting for it.");
+            join(finalSave, Long.MAX_VALUE);
+        }
+
+        if (saved.get()) {
+            ShutdownMarker.write(this);
+            ChatUtil.log("&cEconomyPlus has been disabled.");
+        } else {
+            // The missing marker makes the next start check the files against the journal
+            getLogger().severe("Final save failed; the next start will recover balances from the rollback journal.");
+        }
+    }
+
+    /**
+     * True once the plugin is being disabled. Long background jobs (exports, audits,
+     * rollbacks, dump imports) check this and stop early.
+     */
+    public boolean isStopping() {
+        return stopping;
+    }
+
+    /**
+     * Registers background work that writes the data files, so onDisable waits for it
+     * before the final save. Returns false (and registers nothing) if the plugin is
+     * stopping; otherwise call endDataWrite() when done.
+     */
+    public boolean beginDataWrite() {
+        dataWriters.incrementAndGet();
+        if (stopping) {
+            endDataWrite();
+            return false;
+        }
+        return true;
+    }
+
+    public void endDataWrite() {
+        dataWriters.decrementAndGet();
+    }
+
+    // Waits until no data writer is left; past the deadline it warns and keeps waiting
+    private void awaitDataWriters(long deadline) {
+        boolean warned = false;
+        while (dataWriters.get() > 0) {
+            if (!warned && System.currentTimeMillis() >= deadline) {
+                getLogger().warning("Background writes were still running at the shutdown deadline; waiting for them.");
+                warned = true;
+            }
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Joins until the deadline; true if the thread finished
+    private static boolean join(Thread thread, long deadline) {
+        try {
+            while (thread.isAlive()) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return false;
+                }
+                thread.join(left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
     }
 
     /**
@@ -83,6 +334,9 @@ public class EconomyPlus extends JavaPlugin {
         PluginCommand cmdFtop = getCommand("ftop");
         if (cmdFtop != null) cmdFtop.setExecutor(new FtopCommand(this));
 
+        PluginCommand cmdHistory = getCommand("history");
+        if (cmdHistory != null) cmdHistory.setExecutor(new HistoryCommand(this));
+
         PluginCommand cmdEconplus = getCommand("econplus");
         if (cmdEconplus != null) cmdEconplus.setExecutor(new EconAdminCommand(this));
     }
@@ -97,6 +351,30 @@ public class EconomyPlus extends JavaPlugin {
         ChatUtil.log("&eVault integration is enabled (skeleton only).");
     }
 
+    /**
+     * Creates the configured transport and starts replicating balance deltas.
+     * On failure the server keeps running standalone.
+     */
+    private void setupReplication() {
+        ReplicationTransport transport;
+        if (configManager.getReplicationTransport().equalsIgnoreCase("local")) {
+            transport = new LocalTransport("economyplus");
+        } else {
+            transport = new SocketTransport(configManager.getReplicationBindHost(),
+                    configManager.getReplicationListenPort(), configManager.getReplicationPeers(),
+                    configManager.getReplicationSecret());
+        }
+
+        ReplicationManager manager = new ReplicationManager(this, configManager.getReplicationServerId(), transport);
+        try {
+            manager.start(configManager.getReplicationFlushIntervalTicks());
+            replicationManager = manager;
+        } catch (Exception e) {
+            ChatUtil.log("&cCould not start replication: " + e.getMessage());
+            transport.close();
+        }
+    }
+
     // Getters for our managers and instance
     public static EconomyPlus getInstance() {
         return instance;
@@ -110,4 +388,34 @@ public class EconomyPlus extends JavaPlugin {
     public TransactionManager getTransactionManager() {
         return transactionManager;
     }
+    public TransactionExporter getTransactionExporter() {
+        return transactionExporter;
+    }
+    public AnalyticsManager getAnalyticsManager() {
+        return analyticsManager;
+    }
+    public AccountDirectory getAccountDirectory() {
+        return accountDirectory;
+    }
+    public TickScheduler getTickScheduler() {
+        return tickScheduler;
+    }
+    public PayRateLimiter getPayRateLimiter() {
+        return payRateLimiter;
+    }
+    public PayAnomalyDetector getPayAnomalyDetector() {
+        return payAnomalyDetector;
+    }
+    public EconomyPolicyEngine getPolicyEngine() {
+        return policyEngine;
+    }
+    public EconomyService getEconomyService() {
+        return economyService;
+    }
+    public ReplicationManager getReplicationManager() {
+        return replicationManager;
+    }
+    public LeaderboardFeed getLeaderboardFeed() {
+        return leaderboardFeed;
+    }
 }
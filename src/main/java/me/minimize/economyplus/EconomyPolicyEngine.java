@@ -0,0 +1,338 @@
+package me.minimize.economyplus;
+
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import me.minimize.economyplus.utils.ChatUtil;
+
+/**
+ * Scheduled economy sinks and sources: interest on balances, a wealth tax above a
+ * threshold, and upkeep on faction points.
+ *
+ * A run splits all accounts into chunks and processes them on a small background pool.
+ * Each chunk works in time slices: after 'slice-millis' it re-queues the rest of itself,
+ * so one run never hogs a worker (or account locks) for long. The whole run writes a
+ * single POLICY_RUN journal entry instead of one transaction per account.
+ * Every chunk counts as finished however it ends (error, or the pool shutting down), so
+ * a failed run never stays "running".
+ */
+public class EconomyPolicyEngine {
+
+    private final EconomyPlus plugin;
+    private final ExecutorService pool;
+
+    // Only one run at a time
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private BukkitTask timer;
+    private volatile RunReport lastReport;
+
+    public EconomyPolicyEngine(EconomyPlus plugin) {
+        this.plugin = plugin;
+        AtomicInteger threadId = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(plugin.getConfigManager().getPolicyThreads(), r -> {
+            Thread t = new Thread(r, "EconomyPlus-Policy-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts the periodic timer (only if policies are enabled in the config).
+     */
+    public void start() {
+        if (!plugin.getConfigManager().isPolicyEnabled()) {
+            return;
+        }
+        long interval = 20L * 60 * plugin.getConfigManager().getPolicyIntervalMinutes();
+        timer = new BukkitRunnable() {
+            @Override
+            public void run() {
+                runNow();
+            }
+        }.runTaskTimerAsynchronously(plugin, interval, interval);
+    }
+
+    public void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts a run right away. Returns false if a run is already in progress.
+     */
+    public boolean runNow() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        ConfigManager config = plugin.getConfigManager();
+        Run run = new Run(config.getPolicyInterestRate(), config.getPolicyWealthTaxThreshold(),
+                config.getPolicyWealthTaxRate(),
+                config.isFactionPointsEnabled() ? config.getPolicyFactionUpkeep() : 0,
+                config.getPolicySliceMillis() * 1_000_000L);
+
+        List<UUID> accounts = plugin.getDataManager().getAccountIds();
+        List<String> factions = plugin.getDataManager().getFactionNames();
+        int chunkSize = config.getPolicyChunkSize();
+
+        int chunks = (accounts.size() + chunkSize - 1) / chunkSize + (factions.size() + chunkSize - 1) / chunkSize;
+        if (chunks == 0) {
+            run.remaining.set(1);
+            run.finishChunk();
+            return true;
+        }
+        run.remaining.set(chunks);
+
+        for (int start = 0; start < accounts.size(); start += chunkSize) {
+            List<UUID> slice = accounts.subList(start, Math.min(start + chunkSize, accounts.size()));
+            if (!run.submit(new AccountChunk(run, slice, 0))) {
+                run.finishChunk();
+            }
+        }
+        for (int start = 0; start < factions.size(); start += chunkSize) {
+            List<String> slice = factions.subList(start, Math.min(start + chunkSize, factions.size()));
+            if (!run.submit(new FactionChunk(run, slice, 0))) {
+                run.finishChunk();
+            }
+        }
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public RunReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Shared state of one run. The last chunk to finish writes the journal entry.
+     */
+    private final class Run {
+        private final double interestRate;
+        private final double taxThreshold;
+        private final double taxRate;
+        private final int upkeep;
+        private final long sliceNanos;
+        private final long startNanos = System.nanoTime();
+
+        private final AtomicInteger remaining = new AtomicInteger();
+        private final DoubleAdder interestPaid = new DoubleAdder();
+        private final DoubleAdder taxCollected = new DoubleAdder();
+        private final LongAdder upkeepCollected = new LongAdder();
+        private final LongAdder accountsChanged = new LongAdder();
+        // Set when a chunk failed or couldn't be queued; the run still ends, with what it did
+        private volatile boolean incomplete;
+
+        Run(double interestRate, double taxThreshold, double taxRate, int upkeep, long sliceNanos) {
+            this.interestRate = interestRate;
+            this.taxThreshold = taxThreshold;
+            this.taxRate = taxRate;
+            this.upkeep = upkeep;
+            this.sliceNanos = Math.max(1_000_000L, sliceNanos);
+        }
+
+        // Wealth tax owed on a balance
+        double taxOn(double balance) {
+            return balance > taxThreshold ? (balance - taxThreshold) * taxRate : 0.0;
+        }
+
+        // New balance after interest and tax
+        double apply(double balance) {
+            if (balance <= 0) {
+                return balance;
+            }
+            return balance + balance * interestRate - taxOn(balance);
+        }
+
+        // Queues a chunk (or the rest of one); false if the pool is shut down (plugin disabling)
+        boolean submit(Runnable chunk) {
+            try {
+                pool.execute(chunk);
+                return true;
+            } catch (RejectedExecutionException e) {
+                incomplete = true;
+                return false;
+            }
+        }
+
+        void fail(RuntimeException e) {
+            if (!incomplete) {
+                plugin.getLogger().severe("[Policy] Run failed partway, some accounts were skipped: " + e);
+                e.printStackTrace();
+            }
+            incomplete = true;
+        }
+
+        void finishChunk() {
+            if (remaining.decrementAndGet() > 0) {
+                return;
+            }
+            try {
+                report();
+            } finally {
+                running.set(false);
+            }
+        }
+
+        private void report() {
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+            RunReport report = new RunReport(accountsChanged.sum(), interestPaid.sum(), taxCollected.sum(),
+                    upkeepCollected.sum(), elapsedMillis);
+            lastReport = report;
+
+            // One compact entry for the whole run; amount is the net money change
+            plugin.getTransactionManager().logTransaction("POLICY_RUN", "EconomyPlus", "*",
+                    report.getInterestPaid() - report.getTaxCollected(), "MONEY");
+            ChatUtil.log("&7[Policy] &f" + report.getAccountsChanged() + " accounts | interest $"
+                    + String.format("%.2f", report.getInterestPaid()) + " | tax $"
+                    + String.format("%.2f", report.getTaxCollected()) + " | upkeep "
+                    + report.getUpkeepCollected() + " pts | " + elapsedMillis + "ms"
+                    + (incomplete ? " &c(incomplete)" : ""));
+        }
+    }
+
+    /**
+     * Interest and wealth tax over a chunk of player accounts.
+     */
+    private final class AccountChunk implements Runnable {
+        private final Run run;
+        private final List<UUID> accounts;
+        private final int offset;
+
+        AccountChunk(Run run, List<UUID> accounts, int offset) {
+            this.run = run;
+            this.accounts = accounts;
+            this.offset = offset;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long deadline = System.nanoTime() + run.sliceNanos;
+                // Tax seen inside the locked update, so the split below matches what was applied
+                final double[] tax = new double[1];
+                for (int i = offset; i < accounts.size(); i++) {
+                    if (System.nanoTime() > deadline) {
+                        // Out of time for this slice; let other work run, then continue
+                        if (run.submit(new AccountChunk(run, accounts, i))) {
+                            return; // the continuation finishes the chunk
+                        }
+                        break;
+                    }
+
+                    double delta = plugin.getDataManager().updateBalance(accounts.get(i), balance -> {
+                        tax[0] = balance > 0 ? run.taxOn(balance) : 0.0;
+                        return run.apply(balance);
+                    });
+                    if (delta != 0) {
+                        run.accountsChanged.increment();
+                        run.interestPaid.add(delta + tax[0]);
+                        run.taxCollected.add(tax[0]);
+                    }
+                }
+            } catch (RuntimeException e) {
+                run.fail(e);
+            }
+            run.finishChunk();
+        }
+    }
+
+    /**
+     * Upkeep over a chunk of factions.
+     */
+    private final class FactionChunk implements Runnable {
+        private final Run run;
+        private final List<String> factions;
+        private final int offset;
+
+        FactionChunk(Run run, List<String> factions, int offset) {
+            this.run = run;
+            this.factions = factions;
+            this.offset = offset;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long deadline = System.nanoTime() + run.sliceNanos;
+                for (int i = offset; i < factions.size(); i++) {
+                    if (System.nanoTime() > deadline) {
+                        if (run.submit(new FactionChunk(run, factions, i))) {
+                            return; // the continuation finishes the chunk
+                        }
+                        break;
+                    }
+                    if (run.upkeep > 0) {
+                        int delta = plugin.getDataManager().updateFactionPoints(factions.get(i),
+                                points -> Math.max(0, points - run.upkeep));
+                        run.upkeepCollected.add(-delta);
+                    }
+                }
+            } catch (RuntimeException e) {
+                run.fail(e);
+            }
+            run.finishChunk();
+        }
+    }
+
+    /**
+     * Summary of a finished run.
+     */
+    public static class RunReport {
+        private final long accountsChanged;
+        private final double interestPaid;
+        private final double taxCollected;
+        private final long upkeepCollected;
+        private final long elapsedMillis;
+        private final long finishedAt = System.currentTimeMillis();
+
+        RunReport(long accountsChanged, double interestPaid, double taxCollected, long upkeepCollected, long elapsedMillis) {
+            this.accountsChanged = accountsChanged;
+            this.interestPaid = interestPaid;
+            this.taxCollected = taxCollected;
+            this.upkeepCollected = upkeepCollected;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getAccountsChanged() {
+            return accountsChanged;
+        }
+        public double getInterestPaid() {
+            return interestPaid;
+        }
+        public double getTaxCollected() {
+            return taxCollected;
+        }
+        public long getUpkeepCollected() {
+            return upkeepCollected;
+        }
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+        public long getFinishedAt() {
+            return finishedAt;
+        }
+    }
+}
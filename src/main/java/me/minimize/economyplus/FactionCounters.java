@@ -0,0 +1,183 @@
+package me.minimize.economyplus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import me.minimize.economyplus.utils.Leaderboard;
+
+/**
+ * Faction point totals as striped counters.
+ *
+ * Every faction gets an interned Counter with a numeric ID. Increments go into a LongAdder,
+ * which spreads concurrent updates over per-thread cells, so thousands of kill/capture
+ * events per second on the same few factions neither contend on a lock nor allocate.
+ * Reads fold the cells into an exact sum.
+ *
+ * Names are case-insensitive. The first lookup with a given spelling lowercases it once and
+ * remembers the result; after that the exact string resolves with a single map lookup.
+ */
+public class FactionCounters {
+
+    // Cap on remembered spellings, so odd inputs can't grow the alias table forever
+    private static final int MAX_ALIASES = 65536;
+
+    /**
+     * One faction's points.
+     */
+    public static final class Counter {
+        private final int id;
+        private final String key; // lowercased name
+        private final LongAdder points = new LongAdder();
+
+        // Local changes only (not ones received from other servers) and how much of that
+        // has been sent; both only grow/advance, so nothing is lost to a reset race
+        private final LongAdder local = new LongAdder();
+        private long replicated;
+
+        // Last sum pushed into the leaderboard (guarded by the leaderboard refresh)
+        private long ranked = Long.MIN_VALUE;
+
+        Counter(int id, String key) {
+            this.id = id;
+            this.key = key;
+        }
+
+        public int getId() {
+            return id;
+        }
+        public String getKey() {
+            return key;
+        }
+        public long sum() {
+            return points.sum();
+        }
+    }
+
+    private final Map<String, Counter> byKey = new ConcurrentHashMap<>();
+    private final Map<String, Counter> aliases = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Consumer<Counter> onCreate;
+
+    /**
+     * @param onCreate called once for each newly created faction
+     */
+    public FactionCounters(Consumer<Counter> onCreate) {
+        this.onCreate = onCreate;
+    }
+
+    // -----------------
+    // LOOKUP
+    // -----------------
+
+    /**
+     * Counter for an existing faction, or null.
+     */
+    public Counter find(String name) {
+        Counter counter = aliases.get(name);
+        if (counter != null) {
+            return counter;
+        }
+        counter = byKey.get(name.toLowerCase());
+        if (counter != null) {
+            remember(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Counter for a faction, creating it if needed.
+     */
+    public Counter getOrCreate(String name) {
+        Counter counter = aliases.get(name);
+        if (counter != null) {
+            return counter;
+        }
+        String key = name.toLowerCase();
+        counter = byKey.get(key);
+        if (counter == null) {
+            Counter created = new Counter(nextId.getAndIncrement(), key);
+            counter = byKey.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+                onCreate.accept(created);
+            }
+        }
+        remember(name, counter);
+        return counter;
+    }
+
+    public Collection<Counter> all() {
+        return byKey.values();
+    }
+
+    public int size() {
+        return byKey.size();
+    }
+
+    // -----------------
+    // UPDATES
+    // -----------------
+
+    /**
+     * Adds points made on this server (these get replicated).
+     */
+    public void addLocal(Counter counter, long delta) {
+        counter.points.add(delta);
+        counter.local.add(delta);
+    }
+
+    /**
+     * Adds points received from another server (not replicated again).
+     */
+    public void addRemote(Counter counter, long delta) {
+        counter.points.add(delta);
+    }
+
+    /**
+     * Folds every faction's current sum into the leaderboard. Only factions whose total
+     * changed since the last refresh are touched. Callers must not run this concurrently.
+     */
+    public void refreshRanking(Leaderboard<String> leaderboard) {
+        for (Counter counter : byKey.values()) {
+            long sum = counter.points.sum();
+            if (sum != counter.ranked) {
+                leaderboard.update(counter.key, sum);
+                counter.ranked = sum;
+            }
+        }
+    }
+
+    /**
+     * Adds every faction's local change since the last call to 'into' (for replication).
+     * Callers must not run this concurrently.
+     */
+    public void collectUnreplicated(Map<String, Integer> into) {
+        for (Counter counter : byKey.values()) {
+            long total = counter.local.sum();
+            long delta = total - counter.replicated;
+            if (delta != 0) {
+                counter.replicated = total;
+                into.merge(counter.key, (int) delta, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Copy of every faction key (lowercased).
+     */
+    public List<String> keys() {
+        return new ArrayList<>(byKey.keySet());
+    }
+
+    private void remember(String name, Counter counter) {
+        if (aliases.size() < MAX_ALIASES) {
+            aliases.putIfAbsent(name, counter);
+        }
+    }
+}
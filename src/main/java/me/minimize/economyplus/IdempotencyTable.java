@@ -0,0 +1,138 @@
+package me.minimize.economyplus;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of economy operations by caller-supplied request ID, so a retried
+ * call (e.g. another plugin retrying a withdraw after a timeout) gets the original result
+ * instead of charging twice.
+ *
+ * Bounded in both size and time: keys expire after 'ttlMillis', and once 'maxKeys' are
+ * stored the oldest are evicted first. Keys are kept in an insertion-ordered queue, which
+ * is also expiry order, so both checks only ever look at the head. A key whose operation
+ * is still running is never evicted or replaced; eviction waits for it (so the table can
+ * briefly hold more than 'maxKeys').
+ *
+ * A duplicate that arrives while the original is still running waits for it.
+ *
+ * The table is only kept in memory, so a restart forgets every key: a retry that arrives
+ * after a restart runs again. Request IDs are written to the transaction log, but they
+ * aren't read back from it.
+ */
+public class IdempotencyTable {
+
+    private final int maxKeys;
+    private final long ttlMillis;
+
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private final Queue<Record> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public IdempotencyTable(int maxKeys, long ttlMillis) {
+        this.maxKeys = Math.max(16, maxKeys);
+        this.ttlMillis = Math.max(1000L, ttlMillis);
+    }
+
+    /**
+     * Runs 'operation' once per request ID and returns its result; repeats with the same ID
+     * (within the TTL) return the stored result without running anything.
+     *
+     * @param requestId   caller's idempotency key; if null the operation simply runs
+     * @param fingerprint what the operation does (type, accounts, amount). A key reused for a
+     *                    different operation is a caller bug and throws IllegalArgumentException.
+     */
+    public boolean execute(String requestId, String fingerprint, Supplier<Boolean> operation) {
+        if (requestId == null) {
+            return operation.get();
+        }
+
+        while (true) {
+            long now = System.currentTimeMillis();
+            Record record = new Record(requestId, fingerprint, now);
+            Record existing = records.putIfAbsent(requestId, record);
+
+            if (existing != null) {
+                if (existing.result.isDone() && now - existing.createdAt > ttlMillis) {
+                    // Stale; replace it and try again. A running one is waited for below instead
+                    if (records.remove(requestId, existing)) {
+                        size.decrementAndGet();
+                    }
+                    continue;
+                }
+                if (!existing.fingerprint.equals(fingerprint)) {
+                    throw new IllegalArgumentException("Request ID '" + requestId + "' was already used for a different operation");
+                }
+                try {
+                    return existing.result.join();
+                } catch (CompletionException e) {
+                    // The original attempt failed without a result; the entry was dropped, so retry it
+                    continue;
+                }
+            }
+
+            order.add(record);
+            size.incrementAndGet();
+            evict(now);
+
+            try {
+                boolean result = operation.get();
+                record.result.complete(result);
+                return result;
+            } catch (RuntimeException e) {
+                // Nothing was applied (or we can't tell), so don't pin a result to this key
+                if (records.remove(requestId, record)) {
+                    size.decrementAndGet();
+                }
+                record.result.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Drops expired keys. Called periodically from an async task.
+     */
+    public void expire() {
+        evict(System.currentTimeMillis());
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    // Removes expired records and, if over capacity, the oldest ones. Stops at a record whose
+    // operation is still running: dropping it would let a duplicate run the operation again.
+    private void evict(long now) {
+        Record head;
+        while ((head = order.peek()) != null) {
+            boolean expired = now - head.createdAt > ttlMillis;
+            boolean gone = records.get(head.requestId) != head;
+            if (!gone && (!head.result.isDone() || (!expired && size.get() <= maxKeys))) {
+                break;
+            }
+            if (order.remove(head) && !gone && records.remove(head.requestId, head)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private static final class Record {
+        private final String requestId;
+        private final String fingerprint;
+        private final long createdAt;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Record(String requestId, String fingerprint, long createdAt) {
+            this.requestId = requestId;
+            this.fingerprint = fingerprint;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package me.minimize.economyplus;
+
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import me.minimize.economyplus.api.LeaderboardListener;
+import me.minimize.economyplus.api.LeaderboardSubscription;
+import me.minimize.economyplus.api.RankChange;
+
+/**
+ * Pushes top-N money leaderboard changes to subscribers (scoreboards, holograms, ...)
+ * instead of having them poll getTopBalances.
+ *
+ * Every interval an async task checks the ranking's version; if it moved, the top N is
+ * read once from the incrementally maintained ranking (no sorting) for the largest
+ * subscription, and each subscriber gets the difference to what it was last sent.
+ * Diffing against the last push coalesces everything in between, so a subscriber never
+ * sees more than one batch per interval however busy the economy is. Batches are
+ * delivered on the main thread through the tick scheduler.
+ * A top N read while the ranking moved is thrown away (it may miss an account that was
+ * being re-ranked) and read again right away, up to READ_ATTEMPTS times, so a busy economy
+ * doesn't keep subscribers waiting; only if every attempt overlaps a change does the
+ * interval go without a push.
+ */
+public class LeaderboardFeed {
+
+    // Largest top-N a subscriber can ask for
+    public static final int MAX_SIZE = 100;
+
+    // Reads of the top N per interval before giving up until the next one, and the pause
+    // between them (a read is only a few microseconds, a pause gives updates room to finish)
+    private static final int READ_ATTEMPTS = 5;
+    private static final long RETRY_PAUSE_NANOS = 200_000L;
+
+    private final EconomyPlus plugin;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private BukkitTask task;
+
+    // Ranking version at the last poll (guarded by 'this')
+    private long lastVersion = Long.MIN_VALUE;
+
+    public LeaderboardFeed(EconomyPlus plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start(long intervalTicks) {
+        task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }.runTaskTimerAsynchronously(plugin, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Stops pushing and drops every subscription.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * Subscribes to the top 'size' money balances (clamped to 1..MAX_SIZE).
+     * The first push, on the next interval, lists the current top as ENTERED.
+     */
+    public LeaderboardSubscription subscribe(int size, LeaderboardListener listener) {
+        Subscription subscription = new Subscription(Math.max(1, Math.min(MAX_SIZE, size)), listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Computes and queues one batch per subscriber that has something new.
+     */
+    synchronized void poll() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        // Read the version first, so a change during the read of the top is caught below
+        long version = plugin.getDataManager().getMoneyRankingVersion();
+        boolean changed = version != lastVersion;
+        lastVersion = version;
+
+        List<Map.Entry<UUID, Double>> top = null;
+        for (Subscription subscription : subscriptions) {
+            if (!changed && subscription.sent != null) {
+                continue;
+            }
+            if (top == null) {
+                top = readTop();
+                if (top == null) {
+                    // No clean snapshot this interval: push nothing and force a fresh read next time
+                    lastVersion = Long.MIN_VALUE;
+                    return;
+                }
+            }
+            final List<RankChange> changes = subscription.diff(top);
+            if (!changes.isEmpty()) {
+                plugin.getTickScheduler().submit(() -> {
+                    if (!subscription.cancelled) {
+                        subscription.listener.onUpdate(changes);
+                    }
+                });
+            }
+        }
+    }
+
+    // Top N for the largest subscription, read while nothing moved; null if every attempt overlapped a change
+    private List<Map.Entry<UUID, Double>> readTop() {
+        int max = 1;
+        for (Subscription s : subscriptions) {
+            max = Math.max(max, s.size);
+        }
+        DataManager data = plugin.getDataManager();
+        for (int attempt = 1; attempt <= READ_ATTEMPTS; attempt++) {
+            long version = data.getMoneyRankingVersion();
+            List<Map.Entry<UUID, Double>> top = data.getTopBalances(max);
+            if (data.isMoneyRankingUnchangedSince(version)) {
+                return top;
+            }
+            LockSupport.parkNanos(RETRY_PAUSE_NANOS);
+        }
+        return null;
+    }
+
+    /**
+     * A subscriber and the top N it was last sent.
+     */
+    private final class Subscription implements LeaderboardSubscription {
+        private final int size;
+        private final LeaderboardListener listener;
+        private volatile boolean cancelled;
+
+        // Last pushed state: account -> rank (1-based) and balance; null before the first push
+        private Map<UUID, Integer> sentRanks;
+        private Map<UUID, Double> sent;
+
+        Subscription(int size, LeaderboardListener listener) {
+            this.size = size;
+            this.listener = listener;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        // Difference between what we sent last and 'top' (which may be longer than our size)
+        List<RankChange> diff(List<Map.Entry<UUID, Double>> top) {
+            int count = Math.min(size, top.size());
+            Map<UUID, Integer> ranks = new HashMap<>(count * 2);
+            Map<UUID, Double> balances = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                ranks.put(top.get(i).getKey(), i + 1);
+                balances.put(top.get(i).getKey(), top.get(i).getValue());
+            }
+
+            List<RankChange> changes = new ArrayList<>();
+            if (sent != null) {
+                for (Map.Entry<UUID, Integer> old : sentRanks.entrySet()) {
+                    if (!ranks.containsKey(old.getKey())) {
+                        changes.add(new RankChange(RankChange.Type.LEFT, old.getKey(), old.getValue(), 0,
+                                sent.get(old.getKey())));
+                    }
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                UUID account = top.get(i).getKey();
+                double balance = top.get(i).getValue();
+                Integer oldRank = sentRanks != null ? sentRanks.get(account) : null;
+                if (oldRank == null) {
+                    changes.add(new RankChange(RankChange.Type.ENTERED, account, 0, i + 1, balance));
+                } else if (oldRank != i + 1) {
+                    changes.add(new RankChange(RankChange.Type.MOVED, account, oldRank, i + 1, balance));
+                } else if (sent.get(account) != balance) {
+                    changes.add(new RankChange(RankChange.Type.CHANGED, account, oldRank, i + 1, balance));
+                }
+            }
+
+            sentRanks = ranks;
+            sent = balances;
+            return changes;
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package me.minimize.economyplus;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fixed-width account records (UUID, balance, version, last-seen) in a memory-mapped file.
+ *
+ * The record table is itself the index: an open-addressing hash table keyed by UUID,
+ * with linear probing. Updating one account writes one record in place, so a save only
+ * has to force() dirty pages instead of rewriting a file. Loading still reads every
+ * record once (DataManager keeps all balances in memory), but as one sequential scan
+ * without parsing. Accounts are never deleted, so there are no tombstones.
+ *
+ * Layout (all big-endian):
+ *   header  [magic:int][format:int][capacity:int][tableBlock:int][count:int][state:int] padded to 64 bytes
+ *   table   'capacity' records starting at tableBlock * 64
+ *   record  [state:int][pad:int][msb:long][lsb:long][balance:double][version:long][lastSeen:long]
+ *
+ * Growing never moves or rewrites the file: the bigger table is built after the current
+ * one, forced, and then the header is switched to it with a single 8-byte write of
+ * capacity and tableBlock. A crash before the switch leaves the old table in use (the
+ * unfinished tail is cut off on the next open). The space of old tables isn't reused,
+ * so the file is at most about twice the size of its table.
+ *
+ * The header state says whether the file can be trusted: NEW until the creator has
+ * filled it (an interrupted import stays NEW), READY after that, and STALE once a write
+ * failed or the owner started keeping balances elsewhere; a STALE file is re-filled.
+ *
+ * Updates to an existing record only take the read lock (callers serialize updates to the
+ * same account, DataManager does this with its stripe locks). Inserting a new account and
+ * growing the table take the write lock.
+ */
+public class MappedAccountFile implements Closeable {
+
+    private static final int MAGIC = 0x45504143; // "EPAC"
+    private static final int FORMAT = 2;
+    private static final int FORMAT_V1 = 1; // table right after the header, no state (upgraded on open)
+
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 48;
+
+    // Header field offsets; capacity and table block are adjacent so one putLong switches both
+    private static final int HDR_FORMAT = 4;
+    private static final int HDR_TABLE = 8;
+    private static final int HDR_COUNT = 16;
+    private static final int HDR_STATE = 20;
+
+    // File states
+    private static final int FILE_NEW = 0;
+    private static final int FILE_READY = 1;
+    private static final int FILE_STALE = 2;
+
+    // Record field offsets
+    private static final int OFF_STATE = 0;
+    private static final int OFF_MSB = 8;
+    private static final int OFF_LSB = 16;
+    private static final int OFF_BALANCE = 24;
+    private static final int OFF_VERSION = 32;
+    private static final int OFF_LAST_SEEN = 40;
+
+    private static final int STATE_USED = 1;
+
+    // One mapping is limited to 2 GB
+    private static final int MAX_CAPACITY = 1 << 25;
+
+    /**
+     * Receives every stored account during a scan.
+     */
+    public interface Visitor {
+        void visit(UUID uuid, double balance, long version, long lastSeen);
+    }
+
+    private final File file;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private RandomAccessFile raf;
+    private MappedByteBuffer header;
+    private MappedByteBuffer buffer; // the current table only (record offsets are relative to it)
+    private int capacity; // always a power of two
+    private int count;
+
+    /**
+     * Opens the file, creating it with room for 'initialCapacity' accounts if it doesn't exist.
+     * A new file is in the NEW state until markReady().
+     */
+    public MappedAccountFile(File file, int initialCapacity) throws IOException {
+        this.file = file;
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            create(file, tableSize(initialCapacity));
+        }
+
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            // The header is read without mapping it first: a file can't be shrunk while any
+            // part of it is mapped on some systems (Windows), and mappings can't be released
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+            while (head.hasRemaining() && raf.getChannel().read(head, head.position()) >= 0) {
+                // read until full
+            }
+            int format = head.getInt(HDR_FORMAT);
+            if (head.getInt(0) != MAGIC || (format != FORMAT && format != FORMAT_V1)) {
+                throw new IOException("Not an EconomyPlus account file: " + file.getName());
+            }
+            capacity = format == FORMAT_V1 ? head.getInt(8) : head.getInt(HDR_TABLE);
+            long tableStart = format == FORMAT_V1 ? HEADER_SIZE : head.getInt(HDR_TABLE + 4) * (long) HEADER_SIZE;
+            long tableEnd = tableStart + (long) capacity * RECORD_SIZE;
+            if (raf.length() < tableEnd) {
+                throw new IOException("Account file is truncated: " + file.getName());
+            }
+            // Left over from a grow that crashed before switching the header
+            if (raf.length() > tableEnd) {
+                raf.setLength(tableEnd);
+            }
+
+            header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (format == FORMAT_V1) {
+                upgradeV1();
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, tableStart, tableEnd - tableStart);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+
+        // The stored count can lag after a crash; it only steers growth, so recount
+        for (int slot = 0; slot < capacity; slot++) {
+            if (buffer.getInt(offset(slot) + OFF_STATE) == STATE_USED) {
+                count++;
+            }
+        }
+        header.putInt(HDR_COUNT, count);
+    }
+
+    // Format 1 had [capacity][count] at 8 and the table right after the header. Switch the
+    // table fields in one write, then the format, so a crash in between is still readable.
+    private void upgradeV1() {
+        int v1Capacity = header.getInt(8);
+        header.putInt(HDR_STATE, FILE_READY);
+        header.putLong(HDR_TABLE, ((long) v1Capacity << 32) | 1L);
+        header.putInt(HDR_FORMAT, FORMAT);
+        header.force();
+    }
+
+    // -----------------
+    // FILE STATE
+    // -----------------
+
+    /**
+     * Whether the file holds every account: created and filled (markReady), and no write failed since.
+     */
+    public boolean isReady() {
+        return header.getInt(HDR_STATE) == FILE_READY;
+    }
+
+    /**
+     * Whether a write failed (markStale), as opposed to a file that was never filled.
+     */
+    public boolean isStale() {
+        return header.getInt(HDR_STATE) == FILE_STALE;
+    }
+
+    /**
+     * Marks the file as filled, after forcing its records to disk.
+     */
+    public void markReady() {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            header.putInt(HDR_STATE, FILE_READY);
+            header.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks the file as out of date, so the next open re-fills it. Only touches the header,
+     * so it works when the table itself can't take more writes.
+     */
+    public void markStale() {
+        header.putInt(HDR_STATE, FILE_STALE);
+        header.force();
+    }
+
+    // -----------------
+    // READS
+    // -----------------
+
+    /**
+     * Balance of an account, or NaN if the account isn't stored.
+     */
+    public double getBalance(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            int slot = find(uuid);
+            return slot < 0 ? Double.NaN : buffer.getDouble(offset(slot) + OFF_BALANCE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * How many times an account has been written, or -1 if it isn't stored.
+     */
+    public long getVersion(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            int slot = find(uuid);
+            return slot < 0 ? -1L : buffer.getLong(offset(slot) + OFF_VERSION);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Walks every stored account in table order (a sequential read of the file).
+     */
+    public void scan(Visitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < capacity; slot++) {
+                int base = offset(slot);
+                if (buffer.getInt(base + OFF_STATE) != STATE_USED) {
+                    continue;
+                }
+                visitor.visit(new UUID(buffer.getLong(base + OFF_MSB), buffer.getLong(base + OFF_LSB)),
+                        buffer.getDouble(base + OFF_BALANCE),
+                        buffer.getLong(base + OFF_VERSION),
+                        buffer.getLong(base + OFF_LAST_SEEN));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // -----------------
+    // WRITES
+    // -----------------
+
+    /**
+     * Stores a balance, bumping the record's version. Creates the record if needed.
+     */
+    public void putBalance(UUID uuid, double balance) {
+        long now = System.currentTimeMillis();
+        lock.readLock().lock();
+        try {
+            int slot = find(uuid);
+            if (slot >= 0) {
+                int base = offset(slot);
+                buffer.putDouble(base + OFF_BALANCE, balance);
+                buffer.putLong(base + OFF_VERSION, buffer.getLong(base + OFF_VERSION) + 1);
+                buffer.putLong(base + OFF_LAST_SEEN, now);
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        insert(uuid, balance, 1L, now);
+    }
+
+    /**
+     * Updates an account's last-seen time (on join). Does nothing for unknown accounts.
+     */
+    public void touch(UUID uuid, long lastSeen) {
+        lock.readLock().lock();
+        try {
+            int slot = find(uuid);
+            if (slot >= 0) {
+                buffer.putLong(offset(slot) + OFF_LAST_SEEN, lastSeen);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes dirty pages to disk.
+     */
+    public void force() {
+        lock.readLock().lock();
+        try {
+            buffer.force();
+            header.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (raf != null) {
+                buffer.force();
+                header.force();
+                raf.close();
+                raf = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(UUID uuid, double balance, long version, long lastSeen) {
+        lock.writeLock().lock();
+        try {
+            // Someone may have inserted it while we weren't holding a lock
+            int existing = find(uuid);
+            if (existing >= 0) {
+                int base = offset(existing);
+                buffer.putDouble(base + OFF_BALANCE, balance);
+                buffer.putLong(base + OFF_VERSION, buffer.getLong(base + OFF_VERSION) + 1);
+                buffer.putLong(base + OFF_LAST_SEEN, lastSeen);
+                return;
+            }
+            // Keep the load factor at or below 3/4 so probe chains stay short
+            if ((count + 1) * 4L > capacity * 3L) {
+                grow();
+            }
+            writeRecord(buffer, capacity, uuid, balance, version, lastSeen);
+            count++;
+            header.putInt(HDR_COUNT, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rehashes into a table twice the size, built after the current one in the same file.
+     * The file is only ever extended while mapped, never moved, renamed or truncated.
+     */
+    private void grow() throws IOException {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IOException("Account file is full (" + capacity + " slots)");
+        }
+        int newCapacity = capacity * 2;
+        long newStart = raf.length(); // tables are multiples of 64 bytes, so this stays block-aligned
+
+        // Mapping past the end extends the file (with zeroes, i.e. empty slots)
+        MappedByteBuffer target = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                newStart, (long) newCapacity * RECORD_SIZE);
+        for (int slot = 0; slot < capacity; slot++) {
+            int base = offset(slot);
+            if (buffer.getInt(base + OFF_STATE) != STATE_USED) {
+                continue;
+            }
+            writeRecord(target, newCapacity,
+                    new UUID(buffer.getLong(base + OFF_MSB), buffer.getLong(base + OFF_LSB)),
+                    buffer.getDouble(base + OFF_BALANCE),
+                    buffer.getLong(base + OFF_VERSION),
+                    buffer.getLong(base + OFF_LAST_SEEN));
+        }
+        target.force();
+
+        // The switch: new capacity and table position in one write
+        header.putLong(HDR_TABLE, ((long) newCapacity << 32) | (newStart / HEADER_SIZE));
+        header.force();
+        buffer = target;
+        capacity = newCapacity;
+    }
+
+    // -----------------
+    // TABLE INTERNALS
+    // -----------------
+
+    // Slot holding 'uuid', or -1. Caller holds a lock.
+    private int find(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = capacity - 1;
+        for (int slot = hash(msb, lsb) & mask, probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            int base = offset(slot);
+            if (buffer.getInt(base + OFF_STATE) != STATE_USED) {
+                return -1;
+            }
+            if (buffer.getLong(base + OFF_MSB) == msb && buffer.getLong(base + OFF_LSB) == lsb) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // Writes a record into the first free slot of its probe chain (the uuid must not be present)
+    private static void writeRecord(MappedByteBuffer target, int tableCapacity, UUID uuid,
+                                    double balance, long version, long lastSeen) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = tableCapacity - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (target.getInt(offset(slot) + OFF_STATE) == STATE_USED) {
+            slot = (slot + 1) & mask;
+        }
+        int base = offset(slot);
+        target.putLong(base + OFF_MSB, msb);
+        target.putLong(base + OFF_LSB, lsb);
+        target.putDouble(base + OFF_BALANCE, balance);
+        target.putLong(base + OFF_VERSION, version);
+        target.putLong(base + OFF_LAST_SEEN, lastSeen);
+        // State last, so a half-written record never looks used
+        target.putInt(base + OFF_STATE, STATE_USED);
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return (int) h;
+    }
+
+    // Position of a slot within the table mapping
+    private static int offset(int slot) {
+        return slot * RECORD_SIZE;
+    }
+
+    // Smallest power of two that holds 'accounts' at a 3/4 load factor
+    private static int tableSize(int accounts) {
+        int size = 64;
+        while (size < MAX_CAPACITY && size * 3L < accounts * 4L) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    // Writes a NEW file: header and an empty table right after it
+    private static void create(File target, int tableCapacity) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+            out.setLength(0);
+            out.setLength(HEADER_SIZE + (long) tableCapacity * RECORD_SIZE);
+            out.seek(0);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(tableCapacity);
+            out.writeInt(1); // table block: right after the header
+            out.writeInt(0); // count
+            out.writeInt(FILE_NEW);
+        }
+    }
+}
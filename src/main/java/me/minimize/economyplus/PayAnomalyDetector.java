@@ -0,0 +1,177 @@
+package me.minimize.economyplus;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lightweight abuse detection for /pay.
+ *
+ * For every sender we keep a sliding window of transfer counts (a small ring of
+ * per-slot counters) and the last few payees. That's enough to flag:
+ *  - unusually frequent transfers (more than 'maxTransfersPerWindow' per window)
+ *  - circular payments: A -> B -> A, or A -> B -> C -> A, inside the window
+ * Every check touches a fixed number of slots, so the cost per /pay is constant.
+ */
+public class PayAnomalyDetector {
+
+    // Number of slots the window is split into
+    private static final int SLOTS = 6;
+
+    // How many recent payees we remember per sender
+    private static final int RECENT_PAYEES = 8;
+
+    private final long windowMillis;
+    private final long slotMillis;
+    private final int maxTransfersPerWindow;
+
+    private final Map<UUID, Activity> activity = new ConcurrentHashMap<>();
+
+    public PayAnomalyDetector(long windowMillis, int maxTransfersPerWindow) {
+        this.windowMillis = Math.max(SLOTS, windowMillis);
+        this.slotMillis = this.windowMillis / SLOTS;
+        this.maxTransfersPerWindow = maxTransfersPerWindow;
+    }
+
+    /**
+     * Records a transfer and returns a description of anything suspicious about it,
+     * or null if it looks normal.
+     */
+    public String record(UUID from, UUID to) {
+        long now = System.currentTimeMillis();
+        Activity sender = activity.computeIfAbsent(from, u -> new Activity());
+        String reason = detect(sender, from, to, now);
+
+        // Only report a sender once per window so staff aren't spammed
+        if (reason != null) {
+            synchronized (sender) {
+                if (now - sender.lastFlagged < windowMillis) {
+                    return null;
+                }
+                sender.lastFlagged = now;
+            }
+        }
+        return reason;
+    }
+
+    // Updates the sender's counters, then runs the frequency and cycle checks
+    private String detect(Activity sender, UUID from, UUID to, long now) {
+        int count;
+        synchronized (sender) {
+            count = sender.addTransfer(now, slotMillis);
+            sender.addPayee(to, now);
+        }
+
+        if (count > maxTransfersPerWindow) {
+            return count + " transfers in " + (windowMillis / 1000) + "s";
+        }
+
+        // A -> B -> A
+        Activity target = activity.get(to);
+        if (target == null) {
+            return null;
+        }
+        UUID[] hops;
+        synchronized (target) {
+            if (target.paidRecently(from, now - windowMillis)) {
+                return "circular payment with " + to;
+            }
+            hops = target.recentPayees(now - windowMillis);
+        }
+
+        // A -> B -> C -> A
+        for (UUID hop : hops) {
+            if (hop == null || hop.equals(from)) {
+                continue;
+            }
+            Activity third = activity.get(hop);
+            if (third == null) {
+                continue;
+            }
+            synchronized (third) {
+                if (third.paidRecently(from, now - windowMillis)) {
+                    return "circular payment via " + to + " and " + hop;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops players with no activity inside the window.
+     */
+    public void expireIdle() {
+        long cutoff = System.currentTimeMillis() - windowMillis;
+        Iterator<Activity> it = activity.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().lastActivity < cutoff) {
+                it.remove();
+            }
+        }
+    }
+
+    public int getTrackedCount() {
+        return activity.size();
+    }
+
+    /**
+     * Sliding-window counters plus a small ring of recent payees for one sender.
+     */
+    private static final class Activity {
+        private final long[] slotStart = new long[SLOTS];
+        private final int[] slotCount = new int[SLOTS];
+
+        private final UUID[] payees = new UUID[RECENT_PAYEES];
+        private final long[] payeeTimes = new long[RECENT_PAYEES];
+        private int nextPayee = 0;
+
+        private volatile long lastActivity;
+        private long lastFlagged;
+
+        // Adds one transfer and returns the count across the whole window
+        int addTransfer(long now, long slotMillis) {
+            long slotId = now / slotMillis;
+            int slot = (int) (slotId % SLOTS);
+            if (slotStart[slot] != slotId) {
+                slotStart[slot] = slotId;
+                slotCount[slot] = 0;
+            }
+            slotCount[slot]++;
+            lastActivity = now;
+
+            int total = 0;
+            for (int i = 0; i < SLOTS; i++) {
+                if (slotId - slotStart[i] < SLOTS) {
+                    total += slotCount[i];
+                }
+            }
+            return total;
+        }
+
+        void addPayee(UUID payee, long now) {
+            payees[nextPayee] = payee;
+            payeeTimes[nextPayee] = now;
+            nextPayee = (nextPayee + 1) % RECENT_PAYEES;
+        }
+
+        boolean paidRecently(UUID payee, long since) {
+            for (int i = 0; i < RECENT_PAYEES; i++) {
+                if (payeeTimes[i] >= since && payee.equals(payees[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        UUID[] recentPayees(long since) {
+            UUID[] result = new UUID[RECENT_PAYEES];
+            for (int i = 0; i < RECENT_PAYEES; i++) {
+                if (payeeTimes[i] >= since) {
+                    result[i] = payees[i];
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package me.minimize.economyplus;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-player token bucket for /pay.
+ * Each player can burst up to 'capacity' payments, then gets 'refillPerSecond'
+ * new tokens per second. State per player is two primitives, and buckets that have
+ * been idle long enough to refill completely are dropped by expireIdle().
+ */
+public class PayRateLimiter {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private final long fullRefillNanos;
+
+    private final Map<UUID, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public PayRateLimiter(int capacity, double refillPerSecond) {
+        this.capacity = Math.max(1, capacity);
+        this.refillPerNano = Math.max(0.0001, refillPerSecond) / 1_000_000_000.0;
+        this.fullRefillNanos = (long) Math.ceil(this.capacity / refillPerNano);
+    }
+
+    /**
+     * Takes one token for this player. Returns false if they're out of tokens.
+     */
+    public boolean tryAcquire(UUID uuid) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.computeIfAbsent(uuid, u -> new Bucket(capacity, now));
+        synchronized (bucket) {
+            bucket.refill(now, capacity, refillPerNano);
+            if (bucket.tokens < 1.0) {
+                return false;
+            }
+            bucket.tokens -= 1.0;
+            return true;
+        }
+    }
+
+    /**
+     * Seconds until this player gets their next token (0 if they have one now).
+     */
+    public double secondsUntilNextToken(UUID uuid) {
+        Bucket bucket = buckets.get(uuid);
+        if (bucket == null) {
+            return 0.0;
+        }
+        synchronized (bucket) {
+            bucket.refill(System.nanoTime(), capacity, refillPerNano);
+            if (bucket.tokens >= 1.0) {
+                return 0.0;
+            }
+            return (1.0 - bucket.tokens) / refillPerNano / 1_000_000_000.0;
+        }
+    }
+
+    /**
+     * Drops buckets that would be full by now anyway; they behave exactly like a fresh bucket.
+     */
+    public void expireIdle() {
+        long now = System.nanoTime();
+        Iterator<Bucket> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            Bucket bucket = it.next();
+            if (now - bucket.lastRefill >= fullRefillNanos) {
+                it.remove();
+            }
+        }
+    }
+
+    public int getTrackedCount() {
+        return buckets.size();
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private volatile long lastRefill;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        void refill(long now, double capacity, double refillPerNano) {
+            long elapsed = now - lastRefill;
+            if (elapsed > 0) {
+                tokens = Math.min(capacity, tokens + elapsed * refillPerNano);
+                lastRefill = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package me.minimize.economyplus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The last few transactions of each recently active player, so /history can show the
+ * newest pages without scanning the whole log.
+ *
+ * Each account gets a fixed-size ring of entries, filled as transactions are logged.
+ * The rings hold the same TransactionEntry objects as the log (no copies, one reference
+ * per slot). A ring that was started by live traffic only knows what happened since; the
+ * first history lookup that needs more seeds it from the log, after which it always holds
+ * the newest 'capacity' entries of the account. Rings nobody used for a while are dropped.
+ */
+public class RecentTransactions {
+
+    private final EconomyPlus plugin;
+    private final int capacity;
+    private final long idleMillis;
+
+    private final Map<UUID, Ring> rings = new ConcurrentHashMap<>();
+
+    public RecentTransactions(EconomyPlus plugin, int capacity, long idleMillis) {
+        this.plugin = plugin;
+        this.capacity = Math.max(1, capacity);
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Adds a just-logged entry to the ring of each player involved.
+     * Called in log order (TransactionManager holds its file lock).
+     */
+    void record(TransactionEntry entry) {
+        UUID from = entry.getFrom() != null ? plugin.getAccountDirectory().findPlayer(entry.getFrom()) : null;
+        UUID to = entry.getTo() != null ? plugin.getAccountDirectory().findPlayer(entry.getTo()) : null;
+        if (from != null) {
+            ring(from).add(entry);
+        }
+        if (to != null && !to.equals(from)) {
+            ring(to).add(entry);
+        }
+    }
+
+    /**
+     * Up to 'limit' entries of an account, newest first, after skipping the 'skip' newest.
+     * Returns null if the ring doesn't know whether there are entries that old (use the
+     * log instead, then seed()).
+     */
+    public List<TransactionEntry> newest(UUID account, int skip, int limit) {
+        Ring ring = rings.get(account);
+        if (ring == null) {
+            return null;
+        }
+        return ring.newest(skip, limit);
+    }
+
+    /**
+     * Fills an account's ring from its full history ('history', oldest first, as returned
+     * by a log query). Entries logged while the query ran are kept.
+     */
+    public void seed(UUID account, List<TransactionEntry> history) {
+        ring(account).seed(history);
+    }
+
+    /**
+     * Drops rings that weren't written or read for the configured idle time.
+     */
+    public void expireIdle() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        Iterator<Ring> it = rings.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().lastUsed < cutoff) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops every ring (e.g. after older entries were merged into the log).
+     */
+    public void clear() {
+        rings.clear();
+    }
+
+    public int size() {
+        return rings.size();
+    }
+
+    // How many entries a ring holds
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private Ring ring(UUID account) {
+        return rings.computeIfAbsent(account, k -> new Ring(capacity));
+    }
+
+    /**
+     * Fixed-size circular buffer of one account's newest entries.
+     * Package-private so the tests can drive it directly.
+     */
+    static final class Ring {
+        private final TransactionEntry[] entries;
+        private int next;   // slot the next entry goes into
+        private int count;
+        // True once seeded from the log: then it holds the newest min(count, capacity) entries there are
+        private boolean complete;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Ring(int capacity) {
+            this.entries = new TransactionEntry[capacity];
+        }
+
+        synchronized void add(TransactionEntry entry) {
+            entries[next] = entry;
+            next = (next + 1) % entries.length;
+            if (count < entries.length) {
+                count++;
+            }
+            lastUsed = System.currentTimeMillis();
+        }
+
+        synchronized List<TransactionEntry> newest(int skip, int limit) {
+            lastUsed = System.currentTimeMillis();
+            // Every entry since the ring started is in it, but older ones only once seeded
+            boolean known = skip + limit <= count || (complete && count < entries.length);
+            if (!known) {
+                return null;
+            }
+            List<TransactionEntry> result = new ArrayList<>(Math.max(0, Math.min(limit, count - skip)));
+            for (int i = skip; i < count && result.size() < limit; i++) {
+                result.add(entries[Math.floorMod(next - 1 - i, entries.length)]);
+            }
+            return result;
+        }
+
+        synchronized void seed(List<TransactionEntry> history) {
+            if (complete) {
+                return;
+            }
+            // The newest 'capacity' entries of the log...
+            List<TransactionEntry> merged = new ArrayList<>(
+                    history.subList(Math.max(0, history.size() - entries.length), history.size()));
+            Set<TransactionEntry> fromLog = Collections.newSetFromMap(new IdentityHashMap<>());
+            fromLog.addAll(merged);
+            long oldest = merged.isEmpty() ? Long.MIN_VALUE : merged.get(0).getTimestamp();
+
+            // ...plus anything recorded after the query read the log (same objects, so compare identity)
+            for (int i = count - 1; i >= 0; i--) {
+                TransactionEntry entry = entries[Math.floorMod(next - 1 - i, entries.length)];
+                if (!fromLog.contains(entry) && entry.getTimestamp() >= oldest) {
+                    merged.add(entry);
+                }
+            }
+            merged.sort(Comparator.comparingLong(TransactionEntry::getTimestamp));
+
+            List<TransactionEntry> keep = merged.subList(Math.max(0, merged.size() - entries.length), merged.size());
+            Arrays.fill(entries, null);
+            count = 0;
+            next = 0;
+            for (TransactionEntry entry : keep) {
+                entries[next] = entry;
+                next = (next + 1) % entries.length;
+                count++;
+            }
+            complete = true;
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+}
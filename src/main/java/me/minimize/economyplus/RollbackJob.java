@@ -0,0 +1,105 @@
+package me.minimize.economyplus;
+
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Restores one player (or every player) to their money balance at a past time, using the
+ * balance journal. Meant to run on a background thread; progress and the result are
+ * reported to the sender through the tick scheduler.
+ *
+ * Each account is set through DataManager under its own lock, so the rollback is
+ * replicated, journaled and saved like any other change, and can itself be rolled back.
+ */
+public class RollbackJob implements Runnable {
+
+    private final EconomyPlus plugin;
+    private final CommandSender sender;
+    private final UUID target;       // null = every account
+    private final String targetName;
+    private final long time;
+
+    public RollbackJob(EconomyPlus plugin, CommandSender sender, UUID target, String targetName, long time) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.target = target;
+        this.targetName = targetName;
+        this.time = time;
+    }
+
+    @Override
+    public void run() {
+        DataManager data = plugin.getDataManager();
+        TickScheduler scheduler = plugin.getTickScheduler();
+        String when = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(time));
+        long start = System.currentTimeMillis();
+
+        // Shutdown waits for registered writers before its final save, so the changes
+        // made here are saved with it; a rollback started after that point would be lost
+        if (!plugin.beginDataWrite()) {
+            scheduler.sendMessage(sender, "&cCan't roll back: the server is shutting down.");
+            return;
+        }
+        try {
+            if (target != null) {
+                double value = data.getJournal().reconstruct(target, time);
+                // Accounts that didn't exist yet go back to zero
+                final double restored = Double.isNaN(value) ? 0.0 : value;
+                double delta = data.updateBalance(target, balance -> restored);
+                plugin.getTransactionManager().logTransaction("ROLLBACK", sender.getName(), targetName, delta, "MONEY");
+                scheduler.sendMessage(sender, "&aRolled " + targetName + " back to " + when + ": $"
+                        + String.format("%.2f", restored) + " (change " + String.format("%+.2f", delta) + ")");
+                return;
+            }
+
+            Map<UUID, Double> past = data.getJournal().reconstructAll(time);
+            Set<UUID> accounts = new HashSet<>(data.getAccountIds());
+            accounts.addAll(past.keySet());
+
+            long changed = 0;
+            long visited = 0;
+            double net = 0.0;
+            for (UUID uuid : accounts) {
+                if (plugin.isStopping()) {
+                    // Don't hold up shutdown; what was restored so far is logged and saved
+                    break;
+                }
+                visited++;
+                Double value = past.get(uuid);
+                final double restored = value != null ? value : 0.0;
+                double delta = data.updateBalance(uuid, balance -> restored);
+                if (delta != 0) {
+                    changed++;
+                    net += delta;
+                }
+            }
+
+            // One entry for the whole run; amount is the net money change
+            plugin.getTransactionManager().logTransaction("ROLLBACK", sender.getName(), "*", net, "MONEY");
+            if (visited < accounts.size()) {
+                scheduler.sendMessage(sender, "&cRollback stopped by shutdown after " + visited + " of "
+                        + accounts.size() + " accounts (" + changed + " changed, net "
+                        + String.format("%+.2f", net) + "). Run it again after the restart.");
+                return;
+            }
+            scheduler.sendMessage(sender, "&aRolled back " + changed + " of " + accounts.size() + " accounts to "
+                    + when + " (net change " + String.format("%+.2f", net) + ") in "
+                    + (System.currentTimeMillis() - start) + "ms");
+
+        } catch (IllegalArgumentException e) {
+            scheduler.sendMessage(sender, "&cCan't roll back to " + when + ": " + e.getMessage());
+        } catch (IOException e) {
+            e.printStackTrace();
+            scheduler.sendMessage(sender, "&cRollback failed: " + e.getMessage());
+        } finally {
+            plugin.endDataWrite();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package me.minimize.economyplus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * The "clean-shutdown" file in the data folder. It's written once onDisable has saved
+ * everything, and consumed on enable, so a missing marker means the last run crashed or
+ * was killed before its final save and balances should be recovered from the journal.
+ */
+final class ShutdownMarker {
+
+    private static final String FILE_NAME = "clean-shutdown";
+
+    private ShutdownMarker() {
+    }
+
+    /**
+     * Removes the marker and returns whether it was there (whether the last shutdown was clean).
+     */
+    static boolean consume(EconomyPlus plugin) {
+        File marker = new File(plugin.getDataFolder(), FILE_NAME);
+        if (!marker.exists()) {
+            return false;
+        }
+        // If it can't be removed, a crash this run would look like a clean shutdown next time
+        if (!marker.delete()) {
+            plugin.getLogger().warning("Could not delete " + marker
+                    + "; delete it by hand if the server stops without a clean shutdown.");
+        }
+        return true;
+    }
+
+    /**
+     * Records that everything was saved.
+     */
+    static void write(EconomyPlus plugin) {
+        File marker = new File(plugin.getDataFolder(), FILE_NAME);
+        try {
+            Files.write(marker.toPath(), String.valueOf(System.currentTimeMillis()).getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not write " + marker
+                    + ", the next start will recover from the journal: " + e);
+        }
+    }
+}
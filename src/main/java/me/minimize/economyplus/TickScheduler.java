@@ -0,0 +1,135 @@
+package me.minimize.economyplus;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.minimize.economyplus.utils.ChatUtil;
+
+/**
+ * Queues economy side effects that must run on the main thread (messaging players,
+ * rendering leaderboards) and drains them once per tick within a time budget.
+ * Whatever doesn't fit in this tick's budget carries over to the next one, so a burst
+ * such as a mass payout spreads over several ticks instead of causing a lag spike.
+ *
+ * submit() is safe from any thread.
+ */
+public class TickScheduler {
+
+    private final EconomyPlus plugin;
+    private final long budgetNanos;
+
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+
+    // Stats for /econplus stats scheduler
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong deferredTicks = new AtomicLong();
+    private volatile int peakBacklog;
+    private volatile long lastDrainNanos;
+
+    private BukkitTask task;
+
+    public TickScheduler(EconomyPlus plugin, long budgetMicros) {
+        this.plugin = plugin;
+        this.budgetNanos = Math.max(50L, budgetMicros) * 1000L;
+    }
+
+    public void start() {
+        task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }.runTaskTimer(plugin, 1L, 1L);
+    }
+
+    /**
+     * Stops the tick task and runs anything still queued (we're shutting down, budget no longer matters).
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        Runnable work;
+        while ((work = queue.poll()) != null) {
+            backlog.decrementAndGet();
+            runSafely(work);
+        }
+    }
+
+    /**
+     * Queues work for the main thread.
+     */
+    public void submit(Runnable work) {
+        queue.add(work);
+        int size = backlog.incrementAndGet();
+        if (size > peakBacklog) {
+            peakBacklog = size;
+        }
+    }
+
+    /**
+     * Queues a colored chat message.
+     */
+    public void sendMessage(CommandSender target, String message) {
+        submit(() -> target.sendMessage(ChatUtil.color(message)));
+    }
+
+    /**
+     * Runs queued work until the queue is empty or this tick's budget is used up.
+     * At least one item always runs, so the queue keeps moving even if one item is slow.
+     */
+    private void drain() {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        Runnable work;
+        do {
+            work = queue.poll();
+            if (work == null) {
+                break;
+            }
+            backlog.decrementAndGet();
+            runSafely(work);
+            executed.incrementAndGet();
+        } while (System.nanoTime() < deadline);
+
+        if (!queue.isEmpty()) {
+            deferredTicks.incrementAndGet();
+        }
+        lastDrainNanos = System.nanoTime() - start;
+    }
+
+    private void runSafely(Runnable work) {
+        try {
+            work.run();
+        } catch (Throwable t) {
+            plugin.getLogger().warning("Queued economy task failed: " + t);
+        }
+    }
+
+    public int getBacklog() {
+        return backlog.get();
+    }
+    public int getPeakBacklog() {
+        return peakBacklog;
+    }
+    public long getExecuted() {
+        return executed.get();
+    }
+    public long getDeferredTicks() {
+        return deferredTicks.get();
+    }
+    public long getLastDrainMicros() {
+        return lastDrainNanos / 1000L;
+    }
+    public long getBudgetMicros() {
+        return budgetNanos / 1000L;
+    }
+}
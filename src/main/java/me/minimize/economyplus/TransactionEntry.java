@@ -1,31 +1,114 @@
 package me.minimize.economyplus;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
- * (Optional) A simple data object to represent a transaction in code.
- * This is not strictly required since we store directly in YAML,
- * but it can help if you want to work with transactions in memory.
+ * A simple data object to represent a transaction in code.
+ * The transaction log keeps these in memory (ordered by time) so queries
+ * don't have to go back to transactions.yml.
  */
 public class TransactionEntry {
 
-    private final String date;
+    // Format used when showing a timestamp to players/staff
+    private static final String DISPLAY_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+    private final long timestamp;   // epoch milliseconds
     private final String type;      // e.g., "PAY", "ADMIN_SET", ...
     private final String from;      // who initiated or source
     private final String to;        // target (player/faction)
     private final double amount;    // amount of money/points
-    private final String currency;  // "MONEY" or "FACTION_POINTS"
+    private final Currency currency; // interned, so repeated entries share one object
+    private final String requestId; // caller's idempotency key, or null
 
-    public TransactionEntry(String date, String type, String from, String to, double amount, String currency) {
-        this.date = date;
+    public TransactionEntry(long timestamp, String type, String from, String to, double amount, String currency) {
+        this(timestamp, type, from, to, amount, currency, null);
+    }
+
+    public TransactionEntry(long timestamp, String type, String from, String to, double amount, String currency,
+                            String requestId) {
+        this.timestamp = timestamp;
         this.type = type;
         this.from = from;
         this.to = to;
         this.amount = amount;
-        this.currency = currency;
+        this.currency = currency != null ? Currency.of(currency) : null;
+        this.requestId = requestId;
+    }
+
+    /**
+     * Builds an entry from a raw map as stored in transactions.yml.
+     * Older files only have a formatted "date" string, so we fall back to parsing that.
+     * Returns null if the map doesn't look like a transaction at all.
+     */
+    public static TransactionEntry fromMap(Map<?, ?> raw) {
+        if (raw == null || raw.get("type") == null) {
+            return null;
+        }
+
+        long timestamp = 0L;
+        Object ts = raw.get("timestamp");
+        if (ts instanceof Number) {
+            timestamp = ((Number) ts).longValue();
+        } else if (raw.get("date") != null) {
+            try {
+                timestamp = new SimpleDateFormat(DISPLAY_FORMAT).parse(String.valueOf(raw.get("date"))).getTime();
+            } catch (java.text.ParseException ignored) {}
+        }
+
+        Object amountObj = raw.get("amount");
+        double amount = (amountObj instanceof Number) ? ((Number) amountObj).doubleValue() : 0.0;
+
+        return new TransactionEntry(timestamp,
+                String.valueOf(raw.get("type")),
+                raw.get("from") != null ? String.valueOf(raw.get("from")) : null,
+                raw.get("to") != null ? String.valueOf(raw.get("to")) : null,
+                amount,
+                raw.get("currency") != null ? String.valueOf(raw.get("currency")) : null,
+                raw.get("request-id") != null ? String.valueOf(raw.get("request-id")) : null);
+    }
+
+    /**
+     * Converts this entry into the map layout we save in transactions.yml.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("timestamp", timestamp);
+        map.put("type", type);
+        map.put("from", from);
+        map.put("to", to);
+        map.put("amount", amount);
+        map.put("currency", getCurrency());
+        if (requestId != null) {
+            map.put("request-id", requestId);
+        }
+        return map;
+    }
+
+    /**
+     * Copy of this entry with a different timestamp.
+     */
+    public TransactionEntry withTimestamp(long newTimestamp) {
+        return new TransactionEntry(newTimestamp, type, from, to, amount, getCurrency(), requestId);
+    }
+
+    /**
+     * Whether 'target' (player or faction name) is on either side of this transaction.
+     */
+    public boolean involves(String target) {
+        return (from != null && from.equalsIgnoreCase(target))
+                || (to != null && to.equalsIgnoreCase(target));
     }
 
     // Standard getters
+    public long getTimestamp() {
+        return timestamp;
+    }
+    // Human-readable date, only formatted when someone actually looks at it
     public String getDate() {
-        return date;
+        return new SimpleDateFormat(DISPLAY_FORMAT).format(new Date(timestamp));
     }
     public String getType() {
         return type;
@@ -40,6 +123,12 @@ public class TransactionEntry {
         return amount;
     }
     public String getCurrency() {
+        return currency != null ? currency.getName() : null;
+    }
+    public Currency getCurrencyType() {
         return currency;
     }
+    public String getRequestId() {
+        return requestId;
+    }
 }
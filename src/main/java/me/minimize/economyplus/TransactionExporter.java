@@ -0,0 +1,354 @@
+package me.minimize.economyplus;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import me.minimize.economyplus.utils.ChatUtil;
+
+/**
+ * Streams the transaction log to CSV or JSON Lines files.
+ * The log is walked in small chunks and each entry is written straight to a
+ * buffered writer, so memory use stays constant no matter how big the log is.
+ *
+ * Named exports remember a checkpoint in exports/checkpoints.yml, so e.g. a nightly
+ * export only writes new records. The checkpoint is a watermark - the timestamp of the
+ * last exported entry and how many entries with that timestamp were written - rather
+ * than a log position, so it stays valid when an import merges older entries into the
+ * log or transactions.yml is replaced. Entries merged in below a watermark are not
+ * picked up by that incremental export; the import reports them (see noteImported).
+ */
+public class TransactionExporter {
+
+    // How many entries we copy out of the log per lock acquisition
+    private static final int CHUNK_SIZE = 512;
+
+    public enum Format {
+        CSV("csv"),
+        JSONL("jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        // Parses "csv", "json", "jsonl"; returns null if unknown
+        public static Format fromString(String input) {
+            switch (input.toLowerCase()) {
+                case "csv":
+                    return CSV;
+                case "json":
+                case "jsonl":
+                    return JSONL;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Outcome of a finished export, handed to the callback on the main thread.
+     */
+    public static class Result {
+        private final File file;
+        private final long written;
+        private final long elapsedMillis;
+        private final String error;
+
+        Result(File file, long written, long elapsedMillis, String error) {
+            this.file = file;
+            this.written = written;
+            this.elapsedMillis = elapsedMillis;
+            this.error = error;
+        }
+
+        public File getFile() {
+            return file;
+        }
+        public long getWritten() {
+            return written;
+        }
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+        public boolean isSuccess() {
+            return error == null;
+        }
+        public String getError() {
+            return error;
+        }
+    }
+
+    private final EconomyPlus plugin;
+    private final File exportFolder;
+    private final File checkpointFile;
+
+    // Guards checkpoints.yml, since several exports may run at once
+    private final Object checkpointLock = new Object();
+
+    public TransactionExporter(EconomyPlus plugin) {
+        this.plugin = plugin;
+        this.exportFolder = new File(plugin.getDataFolder(), "exports");
+        this.checkpointFile = new File(exportFolder, "checkpoints.yml");
+    }
+
+    /**
+     * Starts an export on a background thread.
+     *
+     * @param format         CSV or JSONL
+     * @param fromTime       inclusive lower time bound (epoch millis), Long.MIN_VALUE for none
+     * @param toTime         inclusive upper time bound (epoch millis), Long.MAX_VALUE for none
+     * @param checkpointName if not null, resume after the last export with this name and save the new position
+     * @param callback       called on the main thread when the export finishes
+     */
+    public void exportAsync(Format format, long fromTime, long toTime, String checkpointName, Consumer<Result> callback) {
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                final Result result = export(format, fromTime, toTime, checkpointName);
+                if (callback != null) {
+                    plugin.getTickScheduler().submit(() -> callback.accept(result));
+                }
+            }
+        }.runTaskAsynchronously(plugin);
+    }
+
+    /**
+     * Runs an export on the calling thread. Prefer exportAsync from commands.
+     */
+    public Result export(Format format, long fromTime, long toTime, String checkpointName) {
+        long start = System.currentTimeMillis();
+        TransactionLog log = plugin.getTransactionManager().getLog();
+
+        // Where to start reading: the later of the time bound and the checkpoint
+        int index = log.indexOfFirstAtOrAfter(fromTime);
+        if (checkpointName != null) {
+            index = Math.max(index, loadCheckpoint(checkpointName, log));
+        }
+
+        if (!exportFolder.exists() && !exportFolder.mkdirs()) {
+            return new Result(null, 0, 0, "Could not create export folder.");
+        }
+        String baseName = (checkpointName != null ? checkpointName : "transactions") + "-" + start;
+        File outFile = new File(exportFolder, baseName + "." + format.getExtension());
+
+        long written = 0;
+        List<TransactionEntry> chunk = new ArrayList<>(CHUNK_SIZE);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile), StandardCharsets.UTF_8))) {
+            if (format == Format.CSV) {
+                writer.write("timestamp,date,type,from,to,amount,currency,request_id\n");
+            }
+
+            boolean done = false;
+            while (!done) {
+                if (plugin.isStopping()) {
+                    // Checkpoint not moved, so the next run writes these entries again
+                    return new Result(outFile, written, System.currentTimeMillis() - start,
+                            "stopped, the server is shutting down");
+                }
+                chunk.clear();
+                if (log.read(index, CHUNK_SIZE, chunk) == 0) {
+                    break;
+                }
+
+                for (TransactionEntry entry : chunk) {
+                    if (entry.getTimestamp() > toTime) {
+                        // Log is time-ordered, so nothing after this can match.
+                        // 'index' stays on this entry so the next incremental export starts here.
+                        done = true;
+                        break;
+                    }
+                    index++;
+                    if (format == Format.CSV) {
+                        writeCsv(writer, entry);
+                    } else {
+                        writeJson(writer, entry);
+                    }
+                    written++;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new Result(outFile, written, System.currentTimeMillis() - start, e.getMessage());
+        }
+
+        if (checkpointName != null && written > 0) {
+            saveCheckpoint(checkpointName, log, index);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        if (plugin.getConfigManager().logToConsole()) {
+            ChatUtil.log("&7[Export] &fWrote " + written + " transactions to " + outFile.getName() + " in " + elapsed + "ms");
+        }
+        return new Result(outFile, written, elapsed, null);
+    }
+
+    // -----------------
+    // CHECKPOINTS
+    // -----------------
+
+    // Position in 'log' right after the entries the named export already wrote
+    private int loadCheckpoint(String name, TransactionLog log) {
+        synchronized (checkpointLock) {
+            if (!checkpointFile.exists()) {
+                return 0;
+            }
+            YamlConfiguration config = YamlConfiguration.loadConfiguration(checkpointFile);
+            String path = "checkpoints." + name;
+            if (!config.contains(path + ".time")) {
+                // Older checkpoints stored a raw position; never trust one past the end of the log
+                return Math.min(Math.max(0, config.getInt(path + ".position", 0)), log.size());
+            }
+            long time = config.getLong(path + ".time");
+            int count = Math.max(0, config.getInt(path + ".count", 0));
+            // Entries merged in later at the same timestamp go after the ones we wrote
+            int first = log.indexOfFirstAtOrAfter(time);
+            int end = time == Long.MAX_VALUE ? log.size() : log.indexOfFirstAtOrAfter(time + 1);
+            return Math.min(first + count, end);
+        }
+    }
+
+    // Saves the watermark for everything before 'position' in 'log' (position > 0)
+    private void saveCheckpoint(String name, TransactionLog log, int position) {
+        List<TransactionEntry> last = new ArrayList<>(1);
+        log.read(position - 1, 1, last);
+        long time = last.get(0).getTimestamp();
+        int count = position - log.indexOfFirstAtOrAfter(time);
+
+        synchronized (checkpointLock) {
+            YamlConfiguration config = YamlConfiguration.loadConfiguration(checkpointFile);
+            config.set("checkpoints." + name + ".position", null);
+            config.set("checkpoints." + name + ".time", time);
+            config.set("checkpoints." + name + ".count", count);
+            config.set("checkpoints." + name + ".updated", System.currentTimeMillis());
+            try {
+                config.save(checkpointFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Called after an import merged 'added' entries, the oldest at 'oldestTime', into the
+     * log. Incremental exports that are already past that point won't write them, so say
+     * which ones and how to get the entries out.
+     */
+    public void noteImported(long oldestTime, int added) {
+        if (added == 0) {
+            return;
+        }
+        synchronized (checkpointLock) {
+            if (!checkpointFile.exists()) {
+                return;
+            }
+            YamlConfiguration config = YamlConfiguration.loadConfiguration(checkpointFile);
+            if (!config.isConfigurationSection("checkpoints")) {
+                return;
+            }
+            Set<String> names = config.getConfigurationSection("checkpoints").getKeys(false);
+            for (String name : names) {
+                long time = config.getLong("checkpoints." + name + ".time", Long.MIN_VALUE);
+                if (time >= oldestTime) {
+                    ChatUtil.log("&e[Export] Imported entries from " + oldestTime + " on are older than what export '"
+                            + name + "' already wrote; its next run won't include them. Export that range with since:/until:.");
+                }
+            }
+        }
+    }
+
+    // -----------------
+    // FORMATTING
+    // -----------------
+
+    private static void writeCsv(Writer writer, TransactionEntry entry) throws IOException {
+        writer.write(Long.toString(entry.getTimestamp()));
+        writer.write(',');
+        writer.write(entry.getDate());
+        writer.write(',');
+        writer.write(csvField(entry.getType()));
+        writer.write(',');
+        writer.write(csvField(entry.getFrom()));
+        writer.write(',');
+        writer.write(csvField(entry.getTo()));
+        writer.write(',');
+        writer.write(Double.toString(entry.getAmount()));
+        writer.write(',');
+        writer.write(csvField(entry.getCurrency()));
+        writer.write(',');
+        writer.write(csvField(entry.getRequestId()));
+        writer.write('\n');
+    }
+
+    private static void writeJson(Writer writer, TransactionEntry entry) throws IOException {
+        writer.write("{\"timestamp\":");
+        writer.write(Long.toString(entry.getTimestamp()));
+        writer.write(",\"type\":");
+        writer.write(jsonString(entry.getType()));
+        writer.write(",\"from\":");
+        writer.write(jsonString(entry.getFrom()));
+        writer.write(",\"to\":");
+        writer.write(jsonString(entry.getTo()));
+        writer.write(",\"amount\":");
+        writer.write(Double.toString(entry.getAmount()));
+        writer.write(",\"currency\":");
+        writer.write(jsonString(entry.getCurrency()));
+        if (entry.getRequestId() != null) {
+            writer.write(",\"requestId\":");
+            writer.write(jsonString(entry.getRequestId()));
+        }
+        writer.write("}\n");
+    }
+
+    // Quotes a CSV field only when it contains a separator, quote or newline
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String jsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,222 @@
+package me.minimize.economyplus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory, time-ordered transaction log.
+ * Entries are grouped into fixed-size segments; each segment knows its first and
+ * last timestamp, so a time-range query binary-searches the segment list and then
+ * the entries inside the first/last matching segment instead of scanning everything.
+ *
+ * Timestamps are kept non-decreasing on append (a clock step backwards is clamped
+ * to the previous timestamp), which is what makes the binary search valid.
+ */
+public class TransactionLog {
+
+    // Entries per segment; big enough to keep the segment list short
+    private static final int SEGMENT_SIZE = 1024;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private int size = 0;
+
+    /**
+     * Appends an entry to the tail of the log.
+     * Returns the entry actually stored (its timestamp may have been clamped).
+     */
+    public synchronized TransactionEntry append(TransactionEntry entry) {
+        long lastTs = lastTimestamp();
+        if (entry.getTimestamp() < lastTs) {
+            entry = entry.withTimestamp(lastTs);
+        }
+
+        Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (tail == null || tail.entries.size() >= SEGMENT_SIZE) {
+            tail = new Segment();
+            segments.add(tail);
+        }
+        tail.entries.add(entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Runs a query and returns all matching entries, oldest first.
+     */
+    public synchronized List<TransactionEntry> query(TransactionQuery query) {
+        List<TransactionEntry> results = new ArrayList<>();
+        if (segments.isEmpty() || query.getFromTime() > query.getToTime()) {
+            return results;
+        }
+
+        // First segment whose last timestamp is >= fromTime
+        int seg = firstSegmentEndingAtOrAfter(query.getFromTime());
+        for (; seg < segments.size(); seg++) {
+            Segment s = segments.get(seg);
+            if (s.firstTimestamp() > query.getToTime()) {
+                break;
+            }
+
+            int start = s.firstIndexAtOrAfter(query.getFromTime());
+            for (int i = start; i < s.entries.size(); i++) {
+                TransactionEntry entry = s.entries.get(i);
+                if (entry.getTimestamp() > query.getToTime()) {
+                    return results;
+                }
+                if (query.matches(entry)) {
+                    results.add(entry);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs several queries in a single walk over the log (covering the union of their
+     * time ranges). Results are in the same order as 'queries', each oldest first.
+     */
+    public synchronized List<List<TransactionEntry>> queryAll(List<TransactionQuery> queries) {
+        List<List<TransactionEntry>> results = new ArrayList<>(queries.size());
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        for (TransactionQuery query : queries) {
+            results.add(new ArrayList<>());
+            if (query.getFromTime() <= query.getToTime()) {
+                from = Math.min(from, query.getFromTime());
+                to = Math.max(to, query.getToTime());
+            }
+        }
+        if (segments.isEmpty() || from > to) {
+            return results;
+        }
+
+        int seg = firstSegmentEndingAtOrAfter(from);
+        for (; seg < segments.size(); seg++) {
+            Segment s = segments.get(seg);
+            if (s.firstTimestamp() > to) {
+                break;
+            }
+            int start = s.firstIndexAtOrAfter(from);
+            for (int i = start; i < s.entries.size(); i++) {
+                TransactionEntry entry = s.entries.get(i);
+                long ts = entry.getTimestamp();
+                if (ts > to) {
+                    return results;
+                }
+                for (int q = 0; q < queries.size(); q++) {
+                    TransactionQuery query = queries.get(q);
+                    if (ts >= query.getFromTime() && ts <= query.getToTime() && query.matches(entry)) {
+                        results.get(q).add(entry);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Position (0-based) of the first entry with a timestamp >= 'time',
+     * or size() if there is none. Positions never change because the log is append-only
+     * (an import builds a new log instead, so don't keep positions across logs).
+     */
+    public synchronized int indexOfFirstAtOrAfter(long time) {
+        int seg = firstSegmentEndingAtOrAfter(time);
+        if (seg >= segments.size()) {
+            return size;
+        }
+        return seg * SEGMENT_SIZE + segments.get(seg).firstIndexAtOrAfter(time);
+    }
+
+    /**
+     * Copies up to 'max' entries starting at position 'index' into 'out'.
+     * Lets callers walk the log in small chunks without holding the lock
+     * (or a full copy of the log) for the whole walk.
+     * Returns how many entries were copied.
+     */
+    public synchronized int read(int index, int max, List<TransactionEntry> out) {
+        int copied = 0;
+        while (copied < max && index < size) {
+            // Every segment except the tail is full, so the position maps directly
+            Segment s = segments.get(index / SEGMENT_SIZE);
+            int offset = index % SEGMENT_SIZE;
+            int n = Math.min(max - copied, s.entries.size() - offset);
+            out.addAll(s.entries.subList(offset, offset + n));
+            copied += n;
+            index += n;
+        }
+        return copied;
+    }
+
+    /**
+     * Returns a copy of every entry, oldest first.
+     */
+    public synchronized List<TransactionEntry> snapshot() {
+        List<TransactionEntry> all = new ArrayList<>(size);
+        for (Segment s : segments) {
+            all.addAll(s.entries);
+        }
+        return all;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        segments.clear();
+        size = 0;
+    }
+
+    // Timestamp of the newest entry, or Long.MIN_VALUE if empty
+    private long lastTimestamp() {
+        if (segments.isEmpty()) {
+            return Long.MIN_VALUE;
+        }
+        return segments.get(segments.size() - 1).lastTimestamp();
+    }
+
+    // Binary search over segments by their last timestamp
+    private int firstSegmentEndingAtOrAfter(long time) {
+        int lo = 0;
+        int hi = segments.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (segments.get(mid).lastTimestamp() < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * A contiguous, time-ordered chunk of the log.
+     */
+    private static final class Segment {
+        private final List<TransactionEntry> entries = new ArrayList<>(SEGMENT_SIZE);
+
+        long firstTimestamp() {
+            return entries.get(0).getTimestamp();
+        }
+
+        long lastTimestamp() {
+            return entries.get(entries.size() - 1).getTimestamp();
+        }
+
+        // Binary search inside the segment
+        int firstIndexAtOrAfter(long time) {
+            int lo = 0;
+            int hi = entries.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (entries.get(mid).getTimestamp() < time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -4,7 +4,6 @@ import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 import me.minimize.economyplus.utils.ChatUtil;
@@ -12,7 +11,8 @@ import me.minimize.economyplus.utils.ChatUtil;
 /**
  * Manages all transaction logs.
  * Writes to console (optionally) and to transactions.yml.
- * Can retrieve transaction history for a specific player/faction.
+ * Keeps a time-ordered in-memory log so history can be queried by
+ * participant, time range, type, currency and amount without touching the file.
  */
 public class TransactionManager {
 
@@ -23,8 +23,17 @@ public class TransactionManager {
     // Lock to ensure thread-safety when reading/writing the file
     private final Object fileLock = new Object();
 
+    // Time-ordered in-memory copy of the log, used for queries. Replaced (never modified
+    // in the middle) when an import merges older entries in; written under fileLock
+    private volatile TransactionLog log = new TransactionLog();
+
+    // Newest entries per recently active player, for /history
+    private final RecentTransactions recent;
+
     public TransactionManager(EconomyPlus plugin) {
         this.plugin = plugin;
+        this.recent = new RecentTransactions(plugin, plugin.getConfigManager().getRecentHistorySize(),
+                plugin.getConfigManager().getRecentHistoryIdleMinutes() * 60_000L);
 
         // Make sure transactions.yml exists
         transactionFile = new File(plugin.getDataFolder(), "transactions.yml");
@@ -43,6 +52,29 @@ public class TransactionManager {
             transactionConfig.createSection("transactions");
             saveFile();
         }
+
+        loadLog();
+    }
+
+    /**
+     * Loads every entry from transactions.yml into the in-memory log.
+     * Older entries only carry a formatted date, so they're sorted by time before being indexed.
+     */
+    private void loadLog() {
+        List<TransactionEntry> loaded = new ArrayList<>();
+        for (Map<String, Object> raw : getAllTransactions()) {
+            TransactionEntry entry = TransactionEntry.fromMap(raw);
+            if (entry != null) {
+                loaded.add(entry);
+            }
+        }
+
+        // Stable sort keeps insertion order for equal timestamps
+        loaded.sort(Comparator.comparingLong(TransactionEntry::getTimestamp));
+        log.clear();
+        for (TransactionEntry entry : loaded) {
+            log.append(entry);
+        }
     }
 
     /**
@@ -50,8 +82,15 @@ public class TransactionManager {
      * This includes: who initiated it, type of transaction, amounts, etc.
      */
     public void logTransaction(String type, String from, String to, double amount, String currency) {
-        // Current timestamp for the log
-        String dateStr = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        logTransaction(type, from, to, amount, currency, null);
+    }
+
+    /**
+     * Same as above, also recording the caller's idempotency key (request ID) if there is one.
+     */
+    public void logTransaction(String type, String from, String to, double amount, String currency, String requestId) {
+        // Current timestamp for the log (epoch millis, formatted only when displayed)
+        TransactionEntry entry = new TransactionEntry(System.currentTimeMillis(), type, from, to, amount, currency, requestId);
 
         // Optionally log to console
         if (plugin.getConfigManager().logToConsole()) {
@@ -74,22 +113,74 @@ public class TransactionManager {
                 }
             }
 
-            // Build our new transaction entry
-            Map<String, Object> newEntry = new HashMap<>();
-            newEntry.put("date", dateStr);
-            newEntry.put("type", type);
-            newEntry.put("from", from);
-            newEntry.put("to", to);
-            newEntry.put("amount", amount);
-            newEntry.put("currency", currency);
+            // Index it in memory (timestamp may be clamped to keep the log ordered)
+            entry = log.append(entry);
+            plugin.getAnalyticsManager().onTransaction(entry);
+            recent.record(entry);
 
             // Add and save
-            existing.add(newEntry);
+            existing.add(entry.toMap());
             transactionConfig.set("transactions", existing);
             saveFile();
         }
     }
 
+    /**
+     * Merges entries from a dump or another server's log into ours by timestamp, then
+     * rewrites transactions.yml once. Entries we already have (same fields, e.g. from
+     * re-importing our own dump) are skipped. The merged log replaces the current one, so
+     * anyone walking the old one in chunks keeps a consistent view of it.
+     * Returns how many entries were added.
+     */
+    public int importEntries(List<TransactionEntry> entries) {
+        List<TransactionEntry> incoming = new ArrayList<>(entries);
+        incoming.sort(Comparator.comparingLong(TransactionEntry::getTimestamp));
+
+        synchronized (fileLock) {
+            List<TransactionEntry> current = log.snapshot();
+            Set<Map<String, Object>> known = new HashSet<>(current.size() * 2);
+            for (TransactionEntry entry : current) {
+                known.add(entry.toMap());
+            }
+
+            // Both lists are time-ordered; on equal timestamps our own entries go first
+            TransactionLog merged = new TransactionLog();
+            List<Map<String, Object>> maps = new ArrayList<>(current.size() + incoming.size());
+            int added = 0;
+            long oldestAdded = Long.MAX_VALUE;
+            int i = 0;
+            int j = 0;
+            while (i < current.size() || j < incoming.size()) {
+                TransactionEntry next;
+                if (j >= incoming.size()
+                        || (i < current.size() && current.get(i).getTimestamp() <= incoming.get(j).getTimestamp())) {
+                    next = current.get(i++);
+                } else {
+                    next = incoming.get(j++);
+                    Map<String, Object> map = next.toMap();
+                    if (known.contains(map)) {
+                        continue;
+                    }
+                    // HourlyVolume ignores anything older than the hours it already holds
+                    plugin.getAnalyticsManager().onTransaction(next);
+                    oldestAdded = Math.min(oldestAdded, next.getTimestamp());
+                    added++;
+                }
+                next = merged.append(next);
+                maps.add(next.toMap());
+            }
+
+            log = merged;
+            // Older entries may now belong in players' newest pages; rings refill from the log
+            recent.clear();
+            transactionConfig.set("transactions", maps);
+            saveFile();
+            // Export checkpoints are timestamps, so they still hold; entries below one are reported
+            plugin.getTransactionExporter().noteImported(oldestAdded, added);
+            return added;
+        }
+    }
+
     /**
      * Retrieves all transactions from transactions.yml.
      */
@@ -115,23 +206,27 @@ public class TransactionManager {
      * Retrieves all transactions where 'target' is either the "from" or the "to".
      * This can represent a player name or a faction name.
      */
-    public List<Map<String, Object>> getTransactionsFor(String target) {
-        List<Map<String, Object>> all = getAllTransactions();
-        List<Map<String, Object>> results = new ArrayList<>();
-
-        // Case-insensitive match to handle possible differences
-        String lowerTarget = target.toLowerCase();
-        for (Map<String, Object> entry : all) {
-            String from = (String) entry.get("from");
-            String to = (String) entry.get("to");
-            if (from != null && from.equalsIgnoreCase(lowerTarget)) {
-                results.add(entry);
-            } else if (to != null && to.equalsIgnoreCase(lowerTarget)) {
-                results.add(entry);
-            }
-        }
+    public List<TransactionEntry> getTransactionsFor(String target) {
+        return query(new TransactionQuery().involving(target));
+    }
+
+    /**
+     * Runs a filtered query against the in-memory log.
+     * Results are ordered oldest first.
+     */
+    public List<TransactionEntry> query(TransactionQuery query) {
+        return log.query(query);
+    }
+
+    // Per-player ring buffers of the newest entries
+    public RecentTransactions getRecentTransactions() {
+        return recent;
+    }
 
-        return results;
+    // The in-memory log itself, for components that walk it in chunks (e.g. exports).
+    // Hold on to the returned log for the whole walk: an import swaps in a new one.
+    public TransactionLog getLog() {
+        return log;
     }
 
     // Safely saves the transactions file
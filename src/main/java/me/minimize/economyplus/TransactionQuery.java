@@ -0,0 +1,109 @@
+package me.minimize.economyplus;
+
+/**
+ * Describes a filter over the transaction log.
+ * Every filter is optional; an empty query matches everything.
+ *
+ * Example:
+ *   new TransactionQuery().involving("Steve").type("PAY").since(start).minAmount(1000)
+ */
+public class TransactionQuery {
+
+    private String participant;             // player/faction on either side
+    private String type;                    // e.g., "PAY", "ADMIN_SET"
+    private String currency;                // "MONEY", "FACTION_POINTS" or a custom currency
+    private Currency currencyType;          // interned form of 'currency', null if never seen
+    private String requestId;               // caller's idempotency key
+    private long fromTime = Long.MIN_VALUE; // inclusive, epoch millis
+    private long toTime = Long.MAX_VALUE;  // inclusive, epoch millis
+    private double minAmount = Double.NEGATIVE_INFINITY;
+    private double maxAmount = Double.POSITIVE_INFINITY;
+
+    public TransactionQuery involving(String participant) {
+        this.participant = participant;
+        return this;
+    }
+
+    public TransactionQuery type(String type) {
+        this.type = type;
+        return this;
+    }
+
+    public TransactionQuery currency(String currency) {
+        this.currency = currency;
+        this.currencyType = currency != null ? Currency.find(currency) : null;
+        return this;
+    }
+
+    public TransactionQuery requestId(String requestId) {
+        this.requestId = requestId;
+        return this;
+    }
+
+    public TransactionQuery since(long fromTime) {
+        this.fromTime = fromTime;
+        return this;
+    }
+
+    public TransactionQuery until(long toTime) {
+        this.toTime = toTime;
+        return this;
+    }
+
+    public TransactionQuery minAmount(double minAmount) {
+        this.minAmount = minAmount;
+        return this;
+    }
+
+    public TransactionQuery maxAmount(double maxAmount) {
+        this.maxAmount = maxAmount;
+        return this;
+    }
+
+    /**
+     * Checks every filter except the time range, which the log
+     * already narrows down with a binary search.
+     */
+    public boolean matches(TransactionEntry entry) {
+        if (type != null && !type.equalsIgnoreCase(entry.getType())) {
+            return false;
+        }
+        // Currencies are interned, so this is an identity check (an unknown currency matches nothing)
+        if (currency != null && (currencyType == null || currencyType != entry.getCurrencyType())) {
+            return false;
+        }
+        if (requestId != null && !requestId.equals(entry.getRequestId())) {
+            return false;
+        }
+        if (entry.getAmount() < minAmount || entry.getAmount() > maxAmount) {
+            return false;
+        }
+        return participant == null || entry.involves(participant);
+    }
+
+    // Getters
+    public String getParticipant() {
+        return participant;
+    }
+    public String getType() {
+        return type;
+    }
+    public String getCurrency() {
+        return currency;
+    }
+    public String getRequestId() {
+        return requestId;
+    }
+    public long getFromTime() {
+        return fromTime;
+    }
+    public long getToTime() {
+        return toTime;
+    }
+    public double getMinAmount() {
+        return minAmount;
+    }
+    public double getMaxAmount() {
+        return maxAmount;
+    }
+}
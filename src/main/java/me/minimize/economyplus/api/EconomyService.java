@@ -0,0 +1,102 @@
+package me.minimize.economyplus.api;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import me.minimize.economyplus.TransactionEntry;
+import me.minimize.economyplus.TransactionQuery;
+
+/**
+ * EconomyPlus API for other plugins, registered with Bukkit's ServicesManager:
+ *
+ *   EconomyService economy = Bukkit.getServicesManager().load(EconomyService.class);
+ *   economy.withdraw(player, price, orderId)
+ *          .thenAcceptAsync(ok -> giveItem(player, ok), economy.mainThread());
+ *
+ * Methods returning CompletableFuture never block the caller; the work runs on
+ * EconomyPlus' own executor and futures complete there. Use mainThread() to get back
+ * onto the server thread before touching Bukkit.
+ *
+ * The "cached" methods are sync fast paths: they read in-memory state, are safe from
+ * any thread, and are fine to call on the main thread.
+ */
+public interface EconomyService {
+
+    // -----------------
+    // SYNC FAST PATHS
+    // -----------------
+
+    /**
+     * Current money balance from memory (0 for unknown accounts).
+     */
+    double getCachedBalance(UUID account);
+
+    /**
+     * Whether the account currently has at least 'amount'. A later withdraw can still
+     * fail if the balance changes in between.
+     */
+    boolean hasCached(UUID account, double amount);
+
+    // -----------------
+    // ASYNC
+    // -----------------
+
+    CompletableFuture<Double> getBalance(UUID account);
+
+    /**
+     * Balances of many accounts at once (unknown accounts map to 0).
+     */
+    CompletableFuture<Map<UUID, Double>> getBalances(Collection<UUID> accounts);
+
+    /**
+     * Top money balances, highest first.
+     */
+    CompletableFuture<List<Map.Entry<UUID, Double>>> getTopBalances(int limit);
+
+    /**
+     * Deposits money. 'requestId' is an optional idempotency key: retrying with the same
+     * ID returns the first result instead of depositing twice. May be null.
+     * For deposit, withdraw and transfer, 'amount' must be a positive, finite number;
+     * otherwise the future completes exceptionally with IllegalArgumentException.
+     */
+    CompletableFuture<Boolean> deposit(UUID account, double amount, String requestId);
+
+    /**
+     * Withdraws money; completes with false if the account doesn't have enough.
+     */
+    CompletableFuture<Boolean> withdraw(UUID account, double amount, String requestId);
+
+    /**
+     * Moves money between two accounts atomically; false if the sender doesn't have enough.
+     * The accounts must differ (IllegalArgumentException).
+     */
+    CompletableFuture<Boolean> transfer(UUID from, UUID to, double amount, String requestId);
+
+    /**
+     * Transaction history matching a query, oldest first.
+     */
+    CompletableFuture<List<TransactionEntry>> getHistory(TransactionQuery query);
+
+    // -----------------
+    // PUSH
+    // -----------------
+
+    /**
+     * Subscribes to the top 'size' money balances (at most 100). Instead of polling
+     * getTopBalances, the listener is sent only what changed (who entered, left or moved),
+     * at most once per configured interval, on the main thread:
+     *
+     *   economy.subscribeTopBalances(10, changes -> hologram.apply(changes));
+     */
+    LeaderboardSubscription subscribeTopBalances(int size, LeaderboardListener listener);
+
+    /**
+     * Runs callbacks on the server's main thread (within EconomyPlus' per-tick budget),
+     * e.g. future.thenAcceptAsync(callback, service.mainThread()).
+     */
+    Executor mainThread();
+}
@@ -0,0 +1,16 @@
+package me.minimize.economyplus.api;
+
+import java.util.List;
+
+/**
+ * Receives changes to a top-N leaderboard, on the server's main thread.
+ */
+public interface LeaderboardListener {
+
+    /**
+     * Called with everything that changed since the last call: LEFT entries first, then
+     * the rest ordered by new rank. The first call lists the whole current top N as ENTERED.
+     * Changes in between calls are coalesced, so an account that moved twice shows up once.
+     */
+    void onUpdate(List<RankChange> changes);
+}
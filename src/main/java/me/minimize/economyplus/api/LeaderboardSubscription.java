@@ -0,0 +1,17 @@
+package me.minimize.economyplus.api;
+
+/**
+ * Handle for a leaderboard subscription. Subscriptions also end when EconomyPlus disables.
+ */
+public interface LeaderboardSubscription {
+
+    /**
+     * Stops updates. No listener call starts after this returns (on the main thread).
+     */
+    void cancel();
+
+    /**
+     * How many top entries are tracked.
+     */
+    int getSize();
+}
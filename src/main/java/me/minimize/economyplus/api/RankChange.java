@@ -0,0 +1,54 @@
+package me.minimize.economyplus.api;
+
+import java.util.UUID;
+
+/**
+ * One change to a subscribed top-N leaderboard (see EconomyService.subscribeTopBalances).
+ * Ranks start at 1; a rank is 0 where it doesn't apply (no old rank for ENTERED, no new
+ * rank for LEFT).
+ */
+public final class RankChange {
+
+    public enum Type {
+        ENTERED,  // now in the top N
+        LEFT,     // no longer in the top N
+        MOVED,    // still in the top N, at another rank
+        CHANGED   // same rank, different balance
+    }
+
+    private final Type type;
+    private final UUID account;
+    private final int oldRank;
+    private final int newRank;
+    private final double balance;
+
+    public RankChange(Type type, UUID account, int oldRank, int newRank, double balance) {
+        this.type = type;
+        this.account = account;
+        this.oldRank = oldRank;
+        this.newRank = newRank;
+        this.balance = balance;
+    }
+
+    public Type getType() {
+        return type;
+    }
+    public UUID getAccount() {
+        return account;
+    }
+    public int getOldRank() {
+        return oldRank;
+    }
+    public int getNewRank() {
+        return newRank;
+    }
+    // Current balance (the last known one for LEFT)
+    public double getBalance() {
+        return balance;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + account + " " + oldRank + "->" + newRank + " " + balance;
+    }
+}
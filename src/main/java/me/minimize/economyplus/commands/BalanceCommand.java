@@ -4,12 +4,13 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import me.minimize.economyplus.Currency;
 import me.minimize.economyplus.EconomyPlus;
 import me.minimize.economyplus.utils.ChatUtil;
 
 /**
- * /balance (alias: /bal)
- * Displays the player's current money balance.
+ * /balance [currency] (alias: /bal)
+ * Displays the player's current money balance, or their balance in another currency.
  */
 public class BalanceCommand implements CommandExecutor {
 
@@ -35,6 +36,21 @@ public class BalanceCommand implements CommandExecutor {
             return true;
         }
 
+        // Other currency requested?
+        if (args.length >= 1) {
+            Currency currency = plugin.getDataManager().findCurrency(args[0]);
+            if (currency == null) {
+                player.sendMessage(ChatUtil.color("&cUnknown currency."));
+                return true;
+            }
+            if (currency != Currency.MONEY) {
+                double amount = plugin.getDataManager().getBalance(currency, player.getUniqueId());
+                player.sendMessage(ChatUtil.color("&eYour " + currency.getName() + " balance: &a"
+                        + plugin.getDataManager().format(currency, amount)));
+                return true;
+            }
+        }
+
         // Get the player's balance
         double bal = plugin.getDataManager().getBalance(player.getUniqueId());
 
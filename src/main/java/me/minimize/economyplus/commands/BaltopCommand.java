@@ -4,7 +4,10 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.OfflinePlayer;
+import me.minimize.economyplus.Currency;
+import me.minimize.economyplus.DataManager;
 import me.minimize.economyplus.EconomyPlus;
+import me.minimize.economyplus.TickScheduler;
 import me.minimize.economyplus.utils.ChatUtil;
 
 import java.util.List;
@@ -12,8 +15,8 @@ import java.util.Map;
 import java.util.UUID;
 
 /**
- * /baltop
- * Displays the top player balances in descending order.
+ * /baltop [currency]
+ * Displays the top player balances (money by default) in descending order.
  * Currently shows top 10 for simplicity.
  */
 public class BaltopCommand implements CommandExecutor {
@@ -34,16 +37,33 @@ public class BaltopCommand implements CommandExecutor {
             return true;
         }
 
+        DataManager data = plugin.getDataManager();
+        Currency currency = Currency.MONEY;
+        if (args.length >= 1) {
+            currency = data.findCurrency(args[0]);
+            if (currency == null) {
+                sender.sendMessage(ChatUtil.color("&cUnknown currency."));
+                return true;
+            }
+        }
+        final Currency shown = currency;
+
         // Fetch top 10 balances
-        List<Map.Entry<UUID, Double>> topBalances = plugin.getDataManager().getTopBalances(10);
+        List<Map.Entry<UUID, Double>> topBalances = data.getTopBalances(currency, 10);
 
-        sender.sendMessage(ChatUtil.color("&e--- Top Balances ---"));
+        // Each line resolves a player name, so render them through the tick-budgeted queue
+        TickScheduler scheduler = plugin.getTickScheduler();
+        scheduler.sendMessage(sender, currency == Currency.MONEY ? "&e--- Top Balances ---"
+                : "&e--- Top " + currency.getName() + " ---");
         int rank = 1;
         for (Map.Entry<UUID, Double> entry : topBalances) {
-            OfflinePlayer offlinePlayer = plugin.getServer().getOfflinePlayer(entry.getKey());
-            String name = (offlinePlayer != null) ? offlinePlayer.getName() : "Unknown";
-            double bal = entry.getValue();
-            sender.sendMessage(ChatUtil.color("&6#" + rank + " &f" + name + " - &a$" + String.format("%.2f", bal)));
+            final int lineRank = rank;
+            scheduler.submit(() -> {
+                OfflinePlayer offlinePlayer = plugin.getServer().getOfflinePlayer(entry.getKey());
+                String name = (offlinePlayer != null) ? offlinePlayer.getName() : "Unknown";
+                double bal = entry.getValue();
+                sender.sendMessage(ChatUtil.color("&6#" + lineRank + " &f" + name + " - &a" + data.format(shown, bal)));
+            });
             rank++;
         }
         return true;
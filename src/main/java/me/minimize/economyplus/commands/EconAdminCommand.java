@@ -3,27 +3,52 @@ package me.minimize.economyplus.commands;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitRunnable;
+import me.minimize.economyplus.AccountDirectory;
+import me.minimize.economyplus.AnalyticsManager;
+import me.minimize.economyplus.AuditJob;
+import me.minimize.economyplus.Currency;
+import me.minimize.economyplus.EconomyDump;
 import me.minimize.economyplus.EconomyPlus;
+import me.minimize.economyplus.EconomyPolicyEngine;
+import me.minimize.economyplus.RollbackJob;
+import me.minimize.economyplus.TickScheduler;
+import me.minimize.economyplus.TransactionEntry;
+import me.minimize.economyplus.TransactionExporter;
+import me.minimize.economyplus.TransactionQuery;
 import me.minimize.economyplus.utils.ChatUtil;
-import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
+import me.minimize.economyplus.utils.TimeUtil;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * /econplus set|give|take|history ...
+ * /econplus set|give|take|history|export|stats|policy|rollback|audit|dump ...
  * Admin commands for EconomyPlus, including controlling money/faction points and viewing transaction history.
  */
 public class EconAdminCommand implements CommandExecutor {
 
     private final EconomyPlus plugin;
 
+    // Only one rollback at a time
+    private final AtomicBoolean rollbackRunning = new AtomicBoolean(false);
+
+    // Only one audit at a time (each replays the whole log window)
+    private final AtomicBoolean auditRunning = new AtomicBoolean(false);
+
+    // Only one dump export/import at a time
+    private final AtomicBoolean dumpRunning = new AtomicBoolean(false);
+
     public EconAdminCommand(EconomyPlus plugin) {
         this.plugin = plugin;
     }
 
-    @SuppressWarnings("deprecation")
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         // Basic permission check for admin commands
@@ -34,7 +59,7 @@ public class EconAdminCommand implements CommandExecutor {
 
         // Verify at least one subcommand
         if (args.length < 1) {
-            sender.sendMessage(ChatUtil.color("&cUsage: /econplus <set|give|take|history> ..."));
+            sender.sendMessage(ChatUtil.color("&cUsage: /econplus <set|give|take|history|export|stats|policy|rollback|audit|dump> ..."));
             return true;
         }
 
@@ -42,46 +67,98 @@ public class EconAdminCommand implements CommandExecutor {
 
         switch (subCmd) {
             case "set":
-                // /econplus set <player|faction> <amount>
-                if (args.length != 3) {
-                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus set <player|faction> <amount>"));
+                // /econplus set <player|faction> <amount> [currency]
+                if (args.length != 3 && args.length != 4) {
+                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus set <player|faction> <amount> [currency]"));
                     return true;
                 }
-                handleSet(sender, args[1], args[2]);
+                handleSet(sender, args[1], args[2], args.length == 4 ? args[3] : null);
                 break;
 
             case "give":
-                // /econplus give <player|faction> <amount>
-                if (args.length != 3) {
-                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus give <player|faction> <amount>"));
+                // /econplus give <player|faction> <amount> [currency]
+                if (args.length != 3 && args.length != 4) {
+                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus give <player|faction> <amount> [currency]"));
                     return true;
                 }
-                handleGive(sender, args[1], args[2]);
+                handleGive(sender, args[1], args[2], args.length == 4 ? args[3] : null);
                 break;
 
             case "take":
-                // /econplus take <player|faction> <amount>
-                if (args.length != 3) {
-                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus take <player|faction> <amount>"));
+                // /econplus take <player|faction> <amount> [currency]
+                if (args.length != 3 && args.length != 4) {
+                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus take <player|faction> <amount> [currency]"));
                     return true;
                 }
-                handleTake(sender, args[1], args[2]);
+                handleTake(sender, args[1], args[2], args.length == 4 ? args[3] : null);
                 break;
 
             case "history":
-                // /econplus history <player|faction> [page]
+                // /econplus history <player|faction|*> [page] [since:<time>] [until:<time>] [type:<type>]
+                //                   [currency:<currency>] [min:<amount>] [max:<amount>] [id:<request id>]
                 if (args.length < 2) {
-                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus history <player|faction> [page]"));
+                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus history <player|faction|*> [page] "
+                            + "[since:<time>] [until:<time>] [type:<type>] [currency:<currency>] [min:<amount>] [max:<amount>] [id:<request id>]"));
+                    return true;
+                }
+                handleHistory(sender, args);
+                break;
+
+            case "export":
+                // /econplus export <csv|jsonl> [since:<time>] [until:<time>] [checkpoint:<name>]
+                if (args.length < 2) {
+                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus export <csv|jsonl> [since:<time>] [until:<time>] [checkpoint:<name>]"));
+                    return true;
+                }
+                handleExport(sender, args);
+                break;
+
+            case "stats":
+                // /econplus stats <economy|scheduler>
+                if (args.length == 2 && args[1].equalsIgnoreCase("economy")) {
+                    handleEconomyStats(sender);
+                } else if (args.length == 2 && args[1].equalsIgnoreCase("scheduler")) {
+                    handleSchedulerStats(sender);
+                } else {
+                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus stats <economy|scheduler>"));
+                }
+                break;
+
+            case "policy":
+                // /econplus policy <run|status>
+                if (args.length != 2) {
+                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus policy <run|status>"));
+                    return true;
+                }
+                handlePolicy(sender, args[1].toLowerCase());
+                break;
+
+            case "rollback":
+                // /econplus rollback <player|all> <time>
+                if (args.length != 3) {
+                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus rollback <player|all> <time>"));
+                    return true;
+                }
+                handleRollback(sender, args[1], args[2]);
+                break;
+
+            case "audit":
+                // /econplus audit [since]
+                if (args.length > 2) {
+                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus audit [since]"));
                     return true;
                 }
-                String target = args[1];
-                int page = 1;
-                if (args.length >= 3) {
-                    try {
-                        page = Integer.parseInt(args[2]);
-                    } catch (NumberFormatException ignored) {}
+                handleAudit(sender, args.length == 2 ? args[1] : null);
+                break;
+
+            case "dump":
+                // /econplus dump export [name] | /econplus dump import <name|folder>
+                if (args.length < 2 || args.length > 3
+                        || !(args[1].equalsIgnoreCase("export") || (args[1].equalsIgnoreCase("import") && args.length == 3))) {
+                    sender.sendMessage(ChatUtil.color("&cUsage: /econplus dump export [name] | /econplus dump import <name|folder>"));
+                    return true;
                 }
-                handleHistory(sender, target, page);
+                handleDump(sender, args[1].toLowerCase(), args.length == 3 ? args[2] : null);
                 break;
 
             default:
@@ -93,10 +170,10 @@ public class EconAdminCommand implements CommandExecutor {
     }
 
     /**
-     * /econplus set <player|faction> <amount>
+     * /econplus set <player|faction> <amount> [currency]
      * Sets money or faction points directly to the specified amount.
      */
-    private void handleSet(CommandSender sender, String target, String amountStr) {
+    private void handleSet(CommandSender sender, String target, String amountStr, String currencyStr) {
         double amount;
         try {
             amount = Double.parseDouble(amountStr);
@@ -105,38 +182,53 @@ public class EconAdminCommand implements CommandExecutor {
             return;
         }
 
-        // If faction points are enabled, check if this "target" is a faction
-        if (plugin.getConfigManager().isFactionPointsEnabled() && isPossibleFaction(target)) {
+        Target resolved = resolveTarget(sender, target);
+        if (resolved == null) {
+            return;
+        }
+
+        Currency currency = resolveCurrency(sender, resolved, currencyStr);
+        if (currency == null) {
+            return;
+        }
+        amount = checkAmount(sender, resolved, currency, amount);
+        if (Double.isNaN(amount)) {
+            return;
+        }
+
+        if (currency != Currency.MONEY) {
+            // Set another currency
+            plugin.getDataManager().setBalance(currency, resolved.uuid, amount);
+            plugin.getTransactionManager().logTransaction("ADMIN_SET", sender.getName(), resolved.name, amount, currency.getName());
+            sender.sendMessage(ChatUtil.color("&aSet " + resolved.name + "'s " + currency.getName() + " to "
+                    + plugin.getDataManager().format(currency, amount)));
+
+        } else if (resolved.faction) {
             // Set Faction Points
-            plugin.getDataManager().setFactionPoints(target, (int) amount);
-            plugin.getTransactionManager().logTransaction("ADMIN_SET", sender.getName(), target, amount, "FACTION_POINTS");
+            plugin.getDataManager().setFactionPoints(resolved.name, (int) amount);
+            plugin.getTransactionManager().logTransaction("ADMIN_SET", sender.getName(), resolved.name, amount, "FACTION_POINTS");
             String msg = plugin.getConfigManager().getMessage("set-points")
-                    .replace("%target%", target)
+                    .replace("%target%", resolved.name)
                     .replace("%amount%", String.valueOf((int) amount));
             sender.sendMessage(ChatUtil.color(msg));
 
         } else {
             // Set Player Money
-            OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(target);
-            if (offlinePlayer == null || (!offlinePlayer.hasPlayedBefore() && !offlinePlayer.isOnline())) {
-                sender.sendMessage(ChatUtil.color("&cPlayer not found."));
-                return;
-            }
-            plugin.getDataManager().setBalance(offlinePlayer.getUniqueId(), amount);
-            plugin.getTransactionManager().logTransaction("ADMIN_SET", sender.getName(), target, amount, "MONEY");
+            plugin.getDataManager().setBalance(resolved.uuid, amount);
+            plugin.getTransactionManager().logTransaction("ADMIN_SET", sender.getName(), resolved.name, amount, "MONEY");
 
             String msg = plugin.getConfigManager().getMessage("set-money")
-                    .replace("%target%", target)
+                    .replace("%target%", resolved.name)
                     .replace("%amount%", String.format("%.2f", amount));
             sender.sendMessage(ChatUtil.color(msg));
         }
     }
 
     /**
-     * /econplus give <player|faction> <amount>
+     * /econplus give <player|faction> <amount> [currency]
      * Adds money or faction points to the target.
      */
-    private void handleGive(CommandSender sender, String target, String amountStr) {
+    private void handleGive(CommandSender sender, String target, String amountStr, String currencyStr) {
         double amount;
         try {
             amount = Double.parseDouble(amountStr);
@@ -145,29 +237,43 @@ public class EconAdminCommand implements CommandExecutor {
             return;
         }
 
-        if (plugin.getConfigManager().isFactionPointsEnabled() && isPossibleFaction(target)) {
+        Target resolved = resolveTarget(sender, target);
+        if (resolved == null) {
+            return;
+        }
+
+        Currency currency = resolveCurrency(sender, resolved, currencyStr);
+        if (currency == null) {
+            return;
+        }
+        amount = checkAmount(sender, resolved, currency, amount);
+        if (Double.isNaN(amount)) {
+            return;
+        }
+
+        if (currency != Currency.MONEY) {
+            // Give another currency
+            plugin.getDataManager().addBalance(currency, resolved.uuid, amount);
+            plugin.getTransactionManager().logTransaction("ADMIN_GIVE", sender.getName(), resolved.name, amount, currency.getName());
+            sender.sendMessage(ChatUtil.color("&aGave " + plugin.getDataManager().format(currency, amount) + " to " + resolved.name));
+        } else if (resolved.faction) {
             // Give Faction Points
-            plugin.getDataManager().addFactionPoints(target, (int) amount);
-            plugin.getTransactionManager().logTransaction("ADMIN_GIVE", sender.getName(), target, amount, "FACTION_POINTS");
-            sender.sendMessage(ChatUtil.color("&aGave " + (int) amount + " points to faction " + target));
+            plugin.getDataManager().addFactionPoints(resolved.name, (int) amount);
+            plugin.getTransactionManager().logTransaction("ADMIN_GIVE", sender.getName(), resolved.name, amount, "FACTION_POINTS");
+            sender.sendMessage(ChatUtil.color("&aGave " + (int) amount + " points to faction " + resolved.name));
         } else {
             // Give Player Money
-            OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(target);
-            if (offlinePlayer == null || (!offlinePlayer.hasPlayedBefore() && !offlinePlayer.isOnline())) {
-                sender.sendMessage(ChatUtil.color("&cPlayer not found."));
-                return;
-            }
-            plugin.getDataManager().addBalance(offlinePlayer.getUniqueId(), amount);
-            plugin.getTransactionManager().logTransaction("ADMIN_GIVE", sender.getName(), target, amount, "MONEY");
-            sender.sendMessage(ChatUtil.color("&aGave $" + String.format("%.2f", amount) + " to " + target));
+            plugin.getDataManager().addBalance(resolved.uuid, amount);
+            plugin.getTransactionManager().logTransaction("ADMIN_GIVE", sender.getName(), resolved.name, amount, "MONEY");
+            sender.sendMessage(ChatUtil.color("&aGave $" + String.format("%.2f", amount) + " to " + resolved.name));
         }
     }
 
     /**
-     * /econplus take <player|faction> <amount>
+     * /econplus take <player|faction> <amount> [currency]
      * Removes money or faction points from the target, if they have enough.
      */
-    private void handleTake(CommandSender sender, String target, String amountStr) {
+    private void handleTake(CommandSender sender, String target, String amountStr, String currencyStr) {
         double amount;
         try {
             amount = Double.parseDouble(amountStr);
@@ -176,46 +282,148 @@ public class EconAdminCommand implements CommandExecutor {
             return;
         }
 
-        if (plugin.getConfigManager().isFactionPointsEnabled() && isPossibleFaction(target)) {
+        Target resolved = resolveTarget(sender, target);
+        if (resolved == null) {
+            return;
+        }
+
+        Currency currency = resolveCurrency(sender, resolved, currencyStr);
+        if (currency == null) {
+            return;
+        }
+        amount = checkAmount(sender, resolved, currency, amount);
+        if (Double.isNaN(amount)) {
+            return;
+        }
+
+        if (currency != Currency.MONEY) {
+            // Take another currency
+            boolean success = plugin.getDataManager().takeBalance(currency, resolved.uuid, amount);
+            if (!success) {
+                sender.sendMessage(ChatUtil.color("&cPlayer does not have enough " + currency.getName() + "."));
+                return;
+            }
+            plugin.getTransactionManager().logTransaction("ADMIN_TAKE", sender.getName(), resolved.name, amount, currency.getName());
+            sender.sendMessage(ChatUtil.color("&aTook " + plugin.getDataManager().format(currency, amount) + " from " + resolved.name));
+        } else if (resolved.faction) {
             // Take Faction Points
-            boolean success = plugin.getDataManager().takeFactionPoints(target, (int) amount);
+            boolean success = plugin.getDataManager().takeFactionPoints(resolved.name, (int) amount);
             if (!success) {
                 sender.sendMessage(ChatUtil.color("&cThat faction does not have enough points."));
                 return;
             }
-            plugin.getTransactionManager().logTransaction("ADMIN_TAKE", sender.getName(), target, amount, "FACTION_POINTS");
-            sender.sendMessage(ChatUtil.color("&aTook " + (int) amount + " points from faction " + target));
+            plugin.getTransactionManager().logTransaction("ADMIN_TAKE", sender.getName(), resolved.name, amount, "FACTION_POINTS");
+            sender.sendMessage(ChatUtil.color("&aTook " + (int) amount + " points from faction " + resolved.name));
         } else {
             // Take Player Money
-            OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(target);
-            if (offlinePlayer == null || (!offlinePlayer.hasPlayedBefore() && !offlinePlayer.isOnline())) {
-                sender.sendMessage(ChatUtil.color("&cPlayer not found."));
-                return;
-            }
-            boolean success = plugin.getDataManager().takeBalance(offlinePlayer.getUniqueId(), amount);
+            boolean success = plugin.getDataManager().takeBalance(resolved.uuid, amount);
             if (!success) {
                 sender.sendMessage(ChatUtil.color("&cPlayer does not have enough money."));
                 return;
             }
-            plugin.getTransactionManager().logTransaction("ADMIN_TAKE", sender.getName(), target, amount, "MONEY");
-            sender.sendMessage(ChatUtil.color("&aTook $" + String.format("%.2f", amount) + " from " + target));
+            plugin.getTransactionManager().logTransaction("ADMIN_TAKE", sender.getName(), resolved.name, amount, "MONEY");
+            sender.sendMessage(ChatUtil.color("&aTook $" + String.format("%.2f", amount) + " from " + resolved.name));
         }
     }
 
     /**
-     * /econplus history <player|faction> [page]
-     * Displays transaction logs for a particular player/faction in pages.
+     * The amount as it will actually be stored, or NaN (after telling the sender) if it can't
+     * be: not a finite number, a fraction of a faction point, or more decimal places than
+     * the currency has.
      */
-    private void handleHistory(CommandSender sender, String target, int page) {
-        // Retrieve all transactions where 'target' was either 'from' or 'to'
-        List<Map<String, Object>> all = plugin.getTransactionManager().getTransactionsFor(target);
+    private double checkAmount(CommandSender sender, Target resolved, Currency currency, double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            sender.sendMessage(ChatUtil.color("&cInvalid amount."));
+            return Double.NaN;
+        }
+        if (currency == Currency.MONEY && resolved.faction) {
+            if (amount != Math.rint(amount)) {
+                sender.sendMessage(ChatUtil.color("&cFaction points are whole numbers."));
+                return Double.NaN;
+            }
+            return amount;
+        }
+        double stored = plugin.getDataManager().toStoredAmount(currency, amount);
+        if (Double.isNaN(stored)) {
+            sender.sendMessage(ChatUtil.color("&c" + currency.getName() + " only has "
+                    + plugin.getDataManager().getCurrencyStore(currency).getDecimalPlaces() + " decimal places."));
+        }
+        return stored;
+    }
+
+    /**
+     * /econplus history <player|faction|*> [page] [filters...]
+     * Displays transaction logs for a particular player/faction (or everyone, with '*') in pages.
+     * Filters are key:value pairs; times accept durations ("7d" = 7 days ago) or dates ("2024-05-01").
+     */
+    private void handleHistory(CommandSender sender, String[] args) {
+        String target = args[1];
+        TransactionQuery query = new TransactionQuery();
+        if (!target.equals("*")) {
+            query.involving(target);
+        }
+
+        int page = 1;
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            int colon = arg.indexOf(':');
+            if (colon < 0) {
+                try {
+                    page = Integer.parseInt(arg);
+                } catch (NumberFormatException ignored) {}
+                continue;
+            }
+
+            String key = arg.substring(0, colon).toLowerCase();
+            String value = arg.substring(colon + 1);
+            try {
+                switch (key) {
+                    case "since":
+                    case "until":
+                        long time = TimeUtil.parseTime(value);
+                        if (time < 0) {
+                            sender.sendMessage(ChatUtil.color("&cInvalid time: " + value));
+                            return;
+                        }
+                        if (key.equals("since")) {
+                            query.since(time);
+                        } else {
+                            query.until(time);
+                        }
+                        break;
+                    case "type":
+                        query.type(value.toUpperCase());
+                        break;
+                    case "currency":
+                        query.currency(value.toUpperCase());
+                        break;
+                    case "min":
+                        query.minAmount(Double.parseDouble(value));
+                        break;
+                    case "max":
+                        query.maxAmount(Double.parseDouble(value));
+                        break;
+                    case "id":
+                        query.requestId(value);
+                        break;
+                    default:
+                        sender.sendMessage(ChatUtil.color("&cUnknown filter: " + key));
+                        return;
+                }
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatUtil.color("&cInvalid amount: " + value));
+                return;
+            }
+        }
+
+        List<TransactionEntry> all = plugin.getTransactionManager().query(query);
 
         if (all.isEmpty()) {
             sender.sendMessage(ChatUtil.color("&cNo transactions found for " + target));
             return;
         }
 
-        // We'll just keep the order they were inserted in the config (or you could sort by date).
+        // Results come back oldest first.
         // Implement pagination using the default page size from config.
         int pageSize = plugin.getConfigManager().getDefaultHistoryPageSize();
         int totalPages = (int) Math.ceil((double) all.size() / pageSize);
@@ -223,34 +431,386 @@ public class EconAdminCommand implements CommandExecutor {
         if (page < 1) page = 1;
         if (page > totalPages) page = totalPages;
 
-        sender.sendMessage(ChatUtil.color("&eShowing history for: " + target + " (Page " + page + " / " + totalPages + ")"));
+        sender.sendMessage(ChatUtil.color("&eShowing history for: " + target + " (Page " + page + " / " + totalPages
+                + ", " + all.size() + " matches)"));
 
         int startIndex = (page - 1) * pageSize;
         int endIndex = Math.min(startIndex + pageSize, all.size());
 
         for (int i = startIndex; i < endIndex; i++) {
-            Map<String, Object> entry = all.get(i);
-            String date = (String) entry.get("date");
-            String type = (String) entry.get("type");
-            String from = (String) entry.get("from");
-            String to = (String) entry.get("to");
-            double amount = (double) entry.get("amount");
-            String currency = (String) entry.get("currency");
-
-            sender.sendMessage(ChatUtil.color("&7[" + date + "] &f" + type 
-                + " | " + from + " -> " + to + ": " + amount + " " + currency));
+            TransactionEntry entry = all.get(i);
+            sender.sendMessage(ChatUtil.color("&7[" + entry.getDate() + "] &f" + entry.getType()
+                + " | " + entry.getFrom() + " -> " + entry.getTo() + ": " + entry.getAmount() + " " + entry.getCurrency()
+                + (entry.getRequestId() != null ? " &8(id " + entry.getRequestId() + ")" : "")));
         }
 
         sender.sendMessage(ChatUtil.color("&eEnd of page " + page));
     }
 
     /**
-     * Quick helper to guess if a string is a faction name or a player name.
-     * Here, we assume if there's no offline player with that name, it's a faction.
+     * /econplus export <csv|jsonl> [since:<time>] [until:<time>] [checkpoint:<name>]
+     * Streams the transaction log to plugins/EconomyPlus/exports on a background thread.
+     * With a checkpoint name, only records added since the last export of that name are written.
      */
-    private boolean isPossibleFaction(String target) {
-        OfflinePlayer offline = Bukkit.getOfflinePlayer(target);
-        // If the offline player object is null or they've never played, treat as faction
-        return (offline == null || (!offline.hasPlayedBefore() && !offline.isOnline()));
+    private void handleExport(CommandSender sender, String[] args) {
+        TransactionExporter.Format format = TransactionExporter.Format.fromString(args[1]);
+        if (format == null) {
+            sender.sendMessage(ChatUtil.color("&cUnknown format: " + args[1] + " (use csv or jsonl)"));
+            return;
+        }
+
+        long fromTime = Long.MIN_VALUE;
+        long toTime = Long.MAX_VALUE;
+        String checkpoint = null;
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            int colon = arg.indexOf(':');
+            String key = colon < 0 ? arg.toLowerCase() : arg.substring(0, colon).toLowerCase();
+            String value = colon < 0 ? "" : arg.substring(colon + 1);
+
+            switch (key) {
+                case "since":
+                case "until":
+                    long time = TimeUtil.parseTime(value);
+                    if (time < 0) {
+                        sender.sendMessage(ChatUtil.color("&cInvalid time: " + value));
+                        return;
+                    }
+                    if (key.equals("since")) {
+                        fromTime = time;
+                    } else {
+                        toTime = time;
+                    }
+                    break;
+                case "checkpoint":
+                    if (!value.matches("[A-Za-z0-9_-]+")) {
+                        sender.sendMessage(ChatUtil.color("&cCheckpoint names may only use letters, digits, '_' and '-'."));
+                        return;
+                    }
+                    checkpoint = value;
+                    break;
+                default:
+                    sender.sendMessage(ChatUtil.color("&cUnknown option: " + key));
+                    return;
+            }
+        }
+
+        sender.sendMessage(ChatUtil.color("&eExporting transactions in the background..."));
+        plugin.getTransactionExporter().exportAsync(format, fromTime, toTime, checkpoint, result -> {
+            if (result.isSuccess()) {
+                sender.sendMessage(ChatUtil.color("&aExported " + result.getWritten() + " transactions to "
+                        + result.getFile().getName() + " in " + result.getElapsedMillis() + "ms."));
+            } else {
+                sender.sendMessage(ChatUtil.color("&cExport failed: " + result.getError()));
+            }
+        });
+    }
+
+    /**
+     * /econplus stats economy
+     * Shows money supply, velocity, hourly volume and the last computed balance distribution.
+     * Everything here is precomputed, so this is cheap even on huge economies.
+     */
+    private void handleEconomyStats(CommandSender sender) {
+        AnalyticsManager analytics = plugin.getAnalyticsManager();
+        AnalyticsManager.Distribution dist = analytics.getDistribution();
+
+        sender.sendMessage(ChatUtil.color("&e--- Economy Stats ---"));
+        sender.sendMessage(ChatUtil.color("&6Money supply: &a$" + String.format("%.2f", analytics.getMoneySupply())
+                + " &6across &f" + analytics.getAccountCount() + " &6accounts"));
+        sender.sendMessage(ChatUtil.color("&6Velocity (24h): &f" + String.format("%.4f", analytics.getDailyVelocity())));
+
+        for (Map.Entry<String, double[]> entry : analytics.getVolume("MONEY", 24).entrySet()) {
+            double[] v = entry.getValue();
+            sender.sendMessage(ChatUtil.color("&7  " + entry.getKey() + ": &f" + (long) v[0] + " tx, $"
+                    + String.format("%.2f", v[1]) + " (24h)"));
+        }
+
+        long ageSeconds = (System.currentTimeMillis() - dist.getComputedAt()) / 1000;
+        sender.sendMessage(ChatUtil.color("&6Distribution &7(" + dist.getAccounts() + " accounts, " + ageSeconds + "s ago, "
+                + dist.getComputeMillis() + "ms):"));
+        sender.sendMessage(ChatUtil.color("&7  p25 &f$" + String.format("%.2f", dist.getP25())
+                + " &7median &f$" + String.format("%.2f", dist.getMedian())
+                + " &7p75 &f$" + String.format("%.2f", dist.getP75())));
+        sender.sendMessage(ChatUtil.color("&7  p90 &f$" + String.format("%.2f", dist.getP90())
+                + " &7p99 &f$" + String.format("%.2f", dist.getP99())
+                + " &7Gini &f" + String.format("%.3f", dist.getGini())));
+    }
+
+    /**
+     * /econplus stats scheduler
+     * Shows how much main-thread work is queued and how often it had to spill into later ticks.
+     */
+    private void handleSchedulerStats(CommandSender sender) {
+        TickScheduler scheduler = plugin.getTickScheduler();
+        sender.sendMessage(ChatUtil.color("&e--- Main-Thread Work Queue ---"));
+        sender.sendMessage(ChatUtil.color("&6Backlog: &f" + scheduler.getBacklog() + " &7(peak " + scheduler.getPeakBacklog() + ")"));
+        sender.sendMessage(ChatUtil.color("&6Budget: &f" + scheduler.getBudgetMicros() + "us/tick &7(last drain "
+                + scheduler.getLastDrainMicros() + "us)"));
+        sender.sendMessage(ChatUtil.color("&6Executed: &f" + scheduler.getExecuted()
+                + " &6Ticks with leftovers: &f" + scheduler.getDeferredTicks()));
+    }
+
+    /**
+     * /econplus rollback <player|all> <time>
+     * Restores money balances to what they were at 'time', rebuilt from the balance journal.
+     * Runs in the background; the result is sent to the sender when it's done.
+     */
+    private void handleRollback(CommandSender sender, String target, String timeStr) {
+        long time = TimeUtil.parseTime(timeStr);
+        if (time < 0 || time > System.currentTimeMillis()) {
+            sender.sendMessage(ChatUtil.color("&cInvalid time: " + timeStr + " (e.g. 2h, 1d, 2024-05-01_18:30)"));
+            return;
+        }
+
+        UUID uuid = null;
+        String name = "all accounts";
+        if (!target.equalsIgnoreCase("all")) {
+            uuid = plugin.getAccountDirectory().findPlayer(target);
+            if (uuid == null) {
+                sender.sendMessage(ChatUtil.color("&cPlayer not found."));
+                return;
+            }
+            name = plugin.getAccountDirectory().getName(uuid);
+        }
+
+        // Audits and dumps refuse to run during a rollback; the reverse holds too
+        if (auditRunning.get()) {
+            sender.sendMessage(ChatUtil.color("&cWait for the audit to finish first."));
+            return;
+        }
+        if (dumpRunning.get()) {
+            sender.sendMessage(ChatUtil.color("&cWait for the dump export/import to finish first."));
+            return;
+        }
+        if (!rollbackRunning.compareAndSet(false, true)) {
+            sender.sendMessage(ChatUtil.color("&cA rollback is already in progress."));
+            return;
+        }
+        sender.sendMessage(ChatUtil.color("&eRolling back " + name + " in the background..."));
+
+        final RollbackJob job = new RollbackJob(plugin, sender, uuid, name, time);
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                try {
+                    job.run();
+                } finally {
+                    rollbackRunning.set(false);
+                }
+            }
+        }.runTaskAsynchronously(plugin);
+    }
+
+    /**
+     * /econplus audit [since]
+     * Checks every money balance against the transaction log, starting from the balance
+     * journal at 'since' (default: as far back as the journal goes). Runs in the background.
+     */
+    private void handleAudit(CommandSender sender, String sinceStr) {
+        long since = -1;
+        if (sinceStr != null) {
+            since = TimeUtil.parseTime(sinceStr);
+            if (since < 0 || since > System.currentTimeMillis()) {
+                sender.sendMessage(ChatUtil.color("&cInvalid time: " + sinceStr + " (e.g. 2h, 1d, 2024-05-01_18:30)"));
+                return;
+            }
+        }
+
+        // A rollback or import rewrites balances wholesale, which the audit would only report as noise
+        if (rollbackRunning.get()) {
+            sender.sendMessage(ChatUtil.color("&cWait for the rollback to finish first."));
+            return;
+        }
+        if (dumpRunning.get()) {
+            sender.sendMessage(ChatUtil.color("&cWait for the dump export/import to finish first."));
+            return;
+        }
+        if (!auditRunning.compareAndSet(false, true)) {
+            sender.sendMessage(ChatUtil.color("&cAn audit is already in progress."));
+            return;
+        }
+        sender.sendMessage(ChatUtil.color("&eAuditing balances in the background..."));
+
+        final AuditJob job = new AuditJob(plugin, sender, since);
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                try {
+                    job.run();
+                } finally {
+                    auditRunning.set(false);
+                }
+            }
+        }.runTaskAsynchronously(plugin);
+    }
+
+    /**
+     * /econplus dump export [name] | /econplus dump import <name|folder>
+     * Writes or loads a binary dump (dumps/<name>.epd). Import also takes a folder with
+     * another install's balances.yml/transactions.yml. Runs in the background.
+     */
+    private void handleDump(CommandSender sender, String action, String target) {
+        final EconomyDump dump = new EconomyDump(plugin);
+        final boolean export = action.equals("export");
+        final String name = target != null ? target
+                : "dump-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        if (name.contains("..")) {
+            sender.sendMessage(ChatUtil.color("&cInvalid name: " + name));
+            return;
+        }
+
+        // Import from dumps/<name>.epd, or else from a folder relative to the server directory
+        File source = null;
+        if (!export) {
+            source = dump.getDumpFile(name);
+            if (!source.isFile()) {
+                source = new File(name);
+                if (!source.isDirectory()) {
+                    sender.sendMessage(ChatUtil.color("&cNo dump " + dump.getDumpFile(name).getName()
+                            + " and no folder " + name + " found."));
+                    return;
+                }
+            }
+        }
+
+        // Both would fight over the same balances
+        if (rollbackRunning.get()) {
+            sender.sendMessage(ChatUtil.color("&cWait for the rollback to finish first."));
+            return;
+        }
+        if (!export && auditRunning.get()) {
+            sender.sendMessage(ChatUtil.color("&cWait for the audit to finish first."));
+            return;
+        }
+        if (!dumpRunning.compareAndSet(false, true)) {
+            sender.sendMessage(ChatUtil.color("&cA dump export/import is already in progress."));
+            return;
+        }
+        sender.sendMessage(ChatUtil.color(export ? "&eExporting in the background..." : "&eImporting in the background..."));
+
+        final File from = source;
+        final TickScheduler scheduler = plugin.getTickScheduler();
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                try {
+                    EconomyDump.Result result;
+                    if (export) {
+                        result = dump.export(name);
+                    } else if (from.isDirectory()) {
+                        result = dump.importYaml(from);
+                    } else {
+                        result = dump.importDump(from);
+                    }
+                    scheduler.sendMessage(sender, "&a" + (export ? "Exported" : "Imported") + " " + result.getAccounts()
+                            + " accounts, " + result.getFactions() + " factions, " + result.getCurrencyAccounts()
+                            + " currency accounts and " + result.getTransactions() + " transactions ("
+                            + (result.getBytes() / 1024) + " KB) in " + result.getElapsedMillis() + "ms.");
+                    scheduler.sendMessage(sender, "&7" + result.getFile().getPath());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    scheduler.sendMessage(sender, "&c" + (export ? "Export" : "Import") + " failed: " + e.getMessage());
+                } finally {
+                    dumpRunning.set(false);
+                }
+            }
+        }.runTaskAsynchronously(plugin);
+    }
+
+    /**
+     * /econplus policy <run|status>
+     * Triggers a policy run now, or shows the result of the last one.
+     */
+    private void handlePolicy(CommandSender sender, String action) {
+        EconomyPolicyEngine engine = plugin.getPolicyEngine();
+        if (action.equals("run")) {
+            if (engine.runNow()) {
+                sender.sendMessage(ChatUtil.color("&aPolicy run started in the background."));
+            } else {
+                sender.sendMessage(ChatUtil.color("&cA policy run is already in progress."));
+            }
+            return;
+        }
+
+        EconomyPolicyEngine.RunReport report = engine.getLastReport();
+        if (report == null) {
+            sender.sendMessage(ChatUtil.color("&eNo policy run has finished yet."
+                    + (engine.isRunning() ? " One is running now." : "")));
+            return;
+        }
+        long ago = (System.currentTimeMillis() - report.getFinishedAt()) / 1000;
+        sender.sendMessage(ChatUtil.color("&e--- Last Policy Run (" + ago + "s ago) ---"));
+        sender.sendMessage(ChatUtil.color("&6Accounts changed: &f" + report.getAccountsChanged()));
+        sender.sendMessage(ChatUtil.color("&6Interest paid: &a$" + String.format("%.2f", report.getInterestPaid())));
+        sender.sendMessage(ChatUtil.color("&6Tax collected: &c$" + String.format("%.2f", report.getTaxCollected())));
+        sender.sendMessage(ChatUtil.color("&6Faction upkeep: &f" + report.getUpkeepCollected() + " points"));
+        sender.sendMessage(ChatUtil.color("&6Duration: &f" + report.getElapsedMillis() + "ms"
+                + (engine.isRunning() ? " &7(another run in progress)" : "")));
+    }
+
+    /**
+     * Parses the optional [currency] argument of set/give/take. Players default to MONEY;
+     * factions only hold points, so they can't take a currency. Messages the sender and
+     * returns null if the currency is unknown or doesn't fit the target.
+     */
+    private Currency resolveCurrency(CommandSender sender, Target target, String currencyStr) {
+        if (currencyStr == null) {
+            return Currency.MONEY;
+        }
+        Currency currency = plugin.getDataManager().findCurrency(currencyStr);
+        if (currency == null) {
+            sender.sendMessage(ChatUtil.color("&cUnknown currency: " + currencyStr));
+            return null;
+        }
+        if (target.faction && currency != Currency.MONEY) {
+            sender.sendMessage(ChatUtil.color("&cFactions only hold points."));
+            return null;
+        }
+        return currency;
+    }
+
+    /**
+     * Works out whether 'target' is a known player or faction, using the account directory
+     * (no offline-player lookups). "f:<name>" forces a faction, which is how a new faction
+     * gets its first points. Tells the sender and returns null if nothing matches.
+     */
+    private Target resolveTarget(CommandSender sender, String target) {
+        boolean factionsEnabled = plugin.getConfigManager().isFactionPointsEnabled();
+        if (target.regionMatches(true, 0, "f:", 0, 2)) {
+            if (!factionsEnabled) {
+                sender.sendMessage(ChatUtil.color("&cFaction points are disabled in the config."));
+                return null;
+            }
+            return new Target(target.substring(2), null, true);
+        }
+
+        AccountDirectory directory = plugin.getAccountDirectory();
+        switch (directory.resolve(target)) {
+            case PLAYER:
+                UUID uuid = directory.findPlayer(target);
+                return new Target(directory.getName(uuid), uuid, false);
+            case FACTION:
+                return new Target(target, null, true);
+            default:
+                sender.sendMessage(ChatUtil.color("&cNo player or faction named " + target + " found."
+                        + (factionsEnabled ? " Use f:" + target + " to create a faction." : "")));
+                return null;
+        }
+    }
+
+    /**
+     * A resolved command target: either a player (with UUID) or a faction.
+     */
+    private static final class Target {
+        private final String name;
+        private final UUID uuid;
+        private final boolean faction;
+
+        Target(String name, UUID uuid, boolean faction) {
+            this.name = name;
+            this.uuid = uuid;
+            this.faction = faction;
+        }
     }
 }
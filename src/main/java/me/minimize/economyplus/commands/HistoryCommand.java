@@ -0,0 +1,142 @@
+package me.minimize.economyplus.commands;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import me.minimize.economyplus.EconomyPlus;
+import me.minimize.economyplus.RecentTransactions;
+import me.minimize.economyplus.TickScheduler;
+import me.minimize.economyplus.TransactionEntry;
+import me.minimize.economyplus.utils.ChatUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * /history [page] or /history <player> [page]
+ * Shows a player's transactions, newest first. The first pages come straight from the
+ * in-memory recent-transaction buffer; older pages (or a player with no buffer yet)
+ * are looked up in the log on a background thread.
+ */
+public class HistoryCommand implements CommandExecutor {
+
+    private final EconomyPlus plugin;
+
+    public HistoryCommand(EconomyPlus plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command cmd, String label, String[] args) {
+        if (!sender.hasPermission("economyplus.command.history")) {
+            sender.sendMessage(ChatUtil.color(plugin.getConfigManager().getMessage("no-permission")));
+            return true;
+        }
+
+        // Optional player name (staff only), then optional page
+        String name = null;
+        int page = 1;
+        for (String arg : args) {
+            try {
+                page = Integer.parseInt(arg);
+            } catch (NumberFormatException e) {
+                name = arg;
+            }
+        }
+
+        UUID account;
+        if (name != null) {
+            if (!sender.hasPermission("economyplus.command.history.others")) {
+                sender.sendMessage(ChatUtil.color(plugin.getConfigManager().getMessage("no-permission")));
+                return true;
+            }
+            account = plugin.getAccountDirectory().findPlayer(name);
+            if (account == null) {
+                sender.sendMessage(ChatUtil.color("&cPlayer not found."));
+                return true;
+            }
+            name = plugin.getAccountDirectory().getName(account);
+        } else if (sender instanceof Player) {
+            account = ((Player) sender).getUniqueId();
+            name = sender.getName();
+        } else {
+            sender.sendMessage("Usage: /history <player> [page]");
+            return true;
+        }
+        if (page < 1) {
+            page = 1;
+        }
+
+        int pageSize = plugin.getConfigManager().getPlayerHistoryPageSize();
+        RecentTransactions recent = plugin.getTransactionManager().getRecentTransactions();
+        List<TransactionEntry> entries = recent.newest(account, (page - 1) * pageSize, pageSize);
+        if (entries != null) {
+            // A full page may or may not be followed by older entries; offer the next page either way
+            show(sender, name, page, entries, entries.size() == pageSize);
+            return true;
+        }
+
+        // Not in memory: scan the log off the main thread, and keep the newest entries for next time
+        final UUID target = account;
+        final String targetName = name;
+        final int requested = page;
+        final TickScheduler scheduler = plugin.getTickScheduler();
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                List<TransactionEntry> all = plugin.getTransactionManager().getTransactionsFor(targetName);
+                recent.seed(target, all);
+
+                // 'all' is oldest first; page 1 is the newest
+                List<TransactionEntry> pageEntries = new ArrayList<>(pageSize);
+                int from = all.size() - 1 - (requested - 1) * pageSize;
+                for (int i = from; i >= 0 && i > from - pageSize; i--) {
+                    pageEntries.add(all.get(i));
+                }
+                final boolean more = from - pageSize >= 0;
+                scheduler.submit(() -> show(sender, targetName, requested, pageEntries, more));
+            }
+        }.runTaskAsynchronously(plugin);
+        return true;
+    }
+
+    private void show(CommandSender sender, String name, int page, List<TransactionEntry> entries, boolean more) {
+        if (entries.isEmpty()) {
+            sender.sendMessage(ChatUtil.color(page == 1 ? "&eNo transactions yet." : "&eNo transactions on page " + page + "."));
+            return;
+        }
+
+        sender.sendMessage(ChatUtil.color("&e--- Transactions of " + name + " (page " + page + ") ---"));
+        for (TransactionEntry entry : entries) {
+            boolean outgoing = name.equalsIgnoreCase(entry.getFrom()) && !name.equalsIgnoreCase(entry.getTo());
+            String other = outgoing ? entry.getTo() : entry.getFrom();
+            sender.sendMessage(ChatUtil.color("&7[" + entry.getDate() + "] &f" + entry.getType()
+                    + (other != null ? (outgoing ? " &7to &f" : " &7from &f") + other : "")
+                    + " " + formatAmount(entry, outgoing)));
+        }
+        if (more) {
+            sender.sendMessage(ChatUtil.color("&7/history " + (sender.getName().equals(name) ? "" : name + " ")
+                    + (page + 1) + " for older transactions"));
+        }
+    }
+
+    // Signed from the player's point of view: red for money leaving, green for money coming in
+    private static String formatAmount(TransactionEntry entry, boolean outgoing) {
+        String amount = String.format("%.2f", Math.abs(entry.getAmount())) + " " + entry.getCurrency();
+        String type = entry.getType();
+        if (type.startsWith("ADMIN_") || type.equals("ROLLBACK")) {
+            if (outgoing) {
+                return "&7" + amount; // the player is the staff member who ran it
+            }
+            if (type.equals("ADMIN_SET")) {
+                return "&e= " + amount;
+            }
+            boolean taken = type.equals("ADMIN_TAKE") || (type.equals("ROLLBACK") && entry.getAmount() < 0);
+            return (taken ? "&c-" : "&a+") + amount;
+        }
+        return (outgoing ? "&c-" : "&a+") + amount;
+    }
+}
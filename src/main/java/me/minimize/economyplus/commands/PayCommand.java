@@ -1,17 +1,20 @@
 package me.minimize.economyplus.commands;
 
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import me.minimize.economyplus.Currency;
 import me.minimize.economyplus.EconomyPlus;
+import me.minimize.economyplus.TickScheduler;
 import me.minimize.economyplus.utils.ChatUtil;
 
+import java.util.UUID;
+
 /**
- * /pay <player> <amount>
- * Transfers money from one player to another, even if the target is offline.
+ * /pay <player> <amount> [currency]
+ * Transfers money (or another currency) from one player to another, even if the target is offline.
  */
 public class PayCommand implements CommandExecutor {
 
@@ -21,7 +24,6 @@ public class PayCommand implements CommandExecutor {
         this.plugin = plugin;
     }
 
-    @SuppressWarnings("deprecation")
     @Override
     public boolean onCommand(CommandSender sender, Command cmd, String label, String[] args) {
         // Only players can pay money
@@ -37,18 +39,28 @@ public class PayCommand implements CommandExecutor {
             return true;
         }
 
-        // Verify correct usage: /pay <player> <amount>
-        if (args.length != 2) {
-            player.sendMessage(ChatUtil.color("&cUsage: /pay <player> <amount>"));
+        // Verify correct usage: /pay <player> <amount> [currency]
+        if (args.length != 2 && args.length != 3) {
+            player.sendMessage(ChatUtil.color("&cUsage: /pay <player> <amount> [currency]"));
             return true;
         }
 
-        String targetName = args[0];
-        OfflinePlayer targetPlayer = Bukkit.getOfflinePlayer(targetName); 
-        if (targetPlayer == null || (!targetPlayer.hasPlayedBefore() && !targetPlayer.isOnline())) {
+        Currency currency = Currency.MONEY;
+        if (args.length == 3) {
+            currency = plugin.getDataManager().findCurrency(args[2]);
+            if (currency == null) {
+                player.sendMessage(ChatUtil.color("&cUnknown currency."));
+                return true;
+            }
+        }
+
+        // Resolve through the account directory; unknown names are rejected without a lookup
+        UUID targetId = plugin.getAccountDirectory().findPlayer(args[0]);
+        if (targetId == null) {
             player.sendMessage(ChatUtil.color("&cPlayer not found."));
             return true;
         }
+        String targetName = plugin.getAccountDirectory().getName(targetId);
 
         // Parse the amount
         double amount;
@@ -59,41 +71,80 @@ public class PayCommand implements CommandExecutor {
             return true;
         }
 
-        // Amount must be positive
-        if (amount <= 0) {
+        // Amount must be positive (and not NaN/Infinity, which parseDouble accepts)
+        if (!(amount > 0) || Double.isInfinite(amount)) {
             player.sendMessage(ChatUtil.color("&cAmount must be a positive number."));
             return true;
         }
 
-        // Withdraw from sender
-        boolean success = plugin.getDataManager().takeBalance(player.getUniqueId(), amount);
+        // Other currencies move whole minor units; refuse what they can't represent
+        amount = plugin.getDataManager().toStoredAmount(currency, amount);
+        if (Double.isNaN(amount)) {
+            player.sendMessage(ChatUtil.color("&c" + currency.getName() + " only has "
+                    + plugin.getDataManager().getCurrencyStore(currency).getDecimalPlaces() + " decimal places."));
+            return true;
+        }
+
+        // Throttle spammy senders before any writes. Checked last, so a typo in the name or
+        // amount doesn't use up a token
+        if (!player.hasPermission("economyplus.bypass.ratelimit")
+                && !plugin.getPayRateLimiter().tryAcquire(player.getUniqueId())) {
+            double wait = plugin.getPayRateLimiter().secondsUntilNextToken(player.getUniqueId());
+            String limitedMsg = plugin.getConfigManager().getMessage("pay-rate-limited")
+                    .replace("%seconds%", String.format("%.1f", wait));
+            player.sendMessage(ChatUtil.color(limitedMsg));
+            return true;
+        }
+
+        // Withdraw from sender and deposit into target as one atomic step
+        boolean success = plugin.getDataManager().transfer(currency, player.getUniqueId(), targetId, amount);
         if (!success) {
             // Not enough money
             player.sendMessage(ChatUtil.color(plugin.getConfigManager().getMessage("not-enough-money")));
             return true;
         }
 
-        // Deposit into target
-        plugin.getDataManager().addBalance(targetPlayer.getUniqueId(), amount);
-
         // Log the transaction
-        plugin.getTransactionManager().logTransaction("PAY", player.getName(), targetName, amount, "MONEY");
+        plugin.getTransactionManager().logTransaction("PAY", player.getName(), targetName, amount, currency.getName());
 
-        // Notify sender
+        // Flag unusual frequency or circular payments to staff
+        String anomaly = plugin.getPayAnomalyDetector().record(player.getUniqueId(), targetId);
+        if (anomaly != null) {
+            alertStaff("&c[EconomyPlus] &fSuspicious /pay from " + player.getName() + ": " + anomaly);
+        }
+
+        // Notify sender (queued, so payout bursts are spread over ticks)
+        TickScheduler scheduler = plugin.getTickScheduler();
+        // Messages are written as "$%amount%"; swap in the currency's own symbol
+        String formatted = plugin.getDataManager().format(currency, amount);
         String payMsg = plugin.getConfigManager().getMessage("pay-success")
                 .replace("%player%", targetName)
-                .replace("%amount%", String.format("%.2f", amount));
-        player.sendMessage(ChatUtil.color(payMsg));
+                .replace("$%amount%", formatted)
+                .replace("%amount%", formatted);
+        scheduler.sendMessage(player, payMsg);
 
         // If target is online, notify them
-        if (targetPlayer.isOnline()) {
-            Player tp = (Player) targetPlayer;
+        Player tp = Bukkit.getPlayer(targetId);
+        if (tp != null) {
             String receivedMsg = plugin.getConfigManager().getMessage("pay-received")
                     .replace("%player%", player.getName())
-                    .replace("%amount%", String.format("%.2f", amount));
-            tp.sendMessage(ChatUtil.color(receivedMsg));
+                    .replace("$%amount%", formatted)
+                    .replace("%amount%", formatted);
+            scheduler.sendMessage(tp, receivedMsg);
         }
 
         return true;
     }
+
+    // Sends an alert to console and every online player with the alerts permission
+    private void alertStaff(String msg) {
+        plugin.getTickScheduler().submit(() -> {
+            ChatUtil.log(msg);
+            for (Player online : Bukkit.getOnlinePlayers()) {
+                if (online.hasPermission("economyplus.admin.alerts")) {
+                    online.sendMessage(ChatUtil.color(msg));
+                }
+            }
+        });
+    }
 }
@@ -0,0 +1,28 @@
+package me.minimize.economyplus.listeners;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import me.minimize.economyplus.EconomyPlus;
+
+/**
+ * Keeps the account directory current as players join (new players and renames),
+ * and records when each account was last seen.
+ */
+public class PlayerListener implements Listener {
+
+    private final EconomyPlus plugin;
+
+    public PlayerListener(EconomyPlus plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        plugin.getAccountDirectory().registerPlayer(player.getUniqueId(), player.getName());
+        plugin.getDataManager().markSeen(player.getUniqueId());
+    }
+}
@@ -0,0 +1,54 @@
+package me.minimize.economyplus.replication;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process transport: every LocalTransport on the same channel in this JVM
+ * receives the batches the others publish. Needs no broker or sockets, which makes
+ * it handy for tests and for running several economy instances side by side.
+ */
+public class LocalTransport implements ReplicationTransport {
+
+    // channel name -> connected receivers
+    private static final Map<String, List<LocalTransport>> CHANNELS = new ConcurrentHashMap<>();
+
+    private final String channel;
+    private volatile Consumer<byte[]> receiver;
+
+    public LocalTransport(String channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        CHANNELS.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(this);
+    }
+
+    @Override
+    public void publish(byte[] batch) {
+        List<LocalTransport> peers = CHANNELS.get(channel);
+        if (peers == null) {
+            return;
+        }
+        for (LocalTransport peer : peers) {
+            Consumer<byte[]> r = peer.receiver;
+            if (peer != this && r != null) {
+                r.accept(batch);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        List<LocalTransport> peers = CHANNELS.get(channel);
+        if (peers != null) {
+            peers.remove(this);
+        }
+        receiver = null;
+    }
+}
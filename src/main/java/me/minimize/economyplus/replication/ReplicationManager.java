@@ -0,0 +1,359 @@
+package me.minimize.economyplus.replication;
+
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import me.minimize.economyplus.EconomyPlus;
+import me.minimize.economyplus.utils.ChatUtil;
+
+/**
+ * Replicates balance and faction point changes between servers.
+ *
+ * DataManager reports every local balance change as a delta (new value - old value), never a
+ * full value, so concurrent changes on different servers add up instead of overwriting
+ * each other. Deltas are coalesced per account and shipped in batches on a timer.
+ * Faction counters keep their own running total of local changes, which is read at flush time.
+ *
+ * Each batch carries the origin server id, the origin's epoch and the range of sequence
+ * numbers it covers (one, unless a transport merged queued batches for a peer that was
+ * down, see merge()). The epoch is a counter bumped on every start, not the clock, so a
+ * clock change can't make new batches look old. Receivers keep the highest
+ * (epoch, sequence) applied per origin - a small version vector - and drop anything at
+ * or below it, so resent batches are harmless. A batch that doesn't start right after
+ * the last applied one means deltas were lost, and the servers' balances have diverged;
+ * that's reported loudly.
+ *
+ * The epoch counter and the version vector live in replication.dat. The vector is
+ * written after every applied batch and before the transport acknowledges it, so a batch
+ * resent after a restart (ours or the sender's) is still recognised and dropped.
+ */
+public class ReplicationManager {
+
+    private static final int MAGIC = 0x45504C52; // "EPLR"
+    private static final byte FORMAT_VERSION = 2;
+    private static final int STATE_MAGIC = 0x45505253; // "EPRS"
+
+    private final EconomyPlus plugin;
+    private final String serverId;
+    private final ReplicationTransport transport;
+    private final File stateFile;
+
+    // Identifies this run of the server (persisted counter); a restart starts a new sequence
+    private long epoch;
+    private long nextSequence = 1;
+
+    // Local deltas waiting for the next flush, coalesced per account
+    private final Object pendingLock = new Object();
+    private Map<UUID, Double> pendingBalances = new HashMap<>();
+
+    // Held while publishing so batches leave in sequence order
+    private final Object flushLock = new Object();
+
+    // origin server id -> {epoch, last applied sequence} (guarded by 'this', persisted)
+    private final Map<String, long[]> applied = new HashMap<>();
+
+    private BukkitTask flushTask;
+
+    public ReplicationManager(EconomyPlus plugin, String serverId, ReplicationTransport transport) {
+        this.plugin = plugin;
+        this.serverId = serverId;
+        this.transport = transport;
+        this.stateFile = new File(plugin.getDataFolder(), "replication.dat");
+    }
+
+    /**
+     * Loads the saved state, takes the next epoch, connects the transport and starts the
+     * periodic flush.
+     */
+    public void start(long flushIntervalTicks) throws Exception {
+        synchronized (this) {
+            epoch = loadState() + 1;
+            // Saved before anything is sent, so no two runs ever share an epoch
+            saveState();
+        }
+        transport.start(this::receive);
+        flushTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }.runTaskTimerAsynchronously(plugin, flushIntervalTicks, flushIntervalTicks);
+        ChatUtil.log("&a[Replication] Started as '" + serverId + "'.");
+    }
+
+    /**
+     * Stops the flush timer, sends whatever is still pending and closes the transport.
+     */
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flush();
+        transport.close();
+    }
+
+    // -----------------
+    // OUTGOING
+    // -----------------
+
+    public void recordBalanceDelta(UUID uuid, double delta) {
+        if (delta == 0) {
+            return;
+        }
+        synchronized (pendingLock) {
+            pendingBalances.merge(uuid, delta, Double::sum);
+        }
+    }
+
+    /**
+     * Encodes and publishes all pending deltas as one batch.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<UUID, Double> balances;
+            synchronized (pendingLock) {
+                balances = pendingBalances;
+                pendingBalances = new HashMap<>();
+            }
+            // Faction points are striped counters that track their own unsent change
+            Map<String, Integer> factions = new HashMap<>();
+            plugin.getDataManager().getFactionCounters().collectUnreplicated(factions);
+            if (balances.isEmpty() && factions.isEmpty()) {
+                return;
+            }
+
+            long sequence = nextSequence++;
+            transport.publish(new Batch(serverId, epoch, sequence, sequence, balances, factions).encode());
+        }
+    }
+
+    /**
+     * Combines consecutive batches from one origin (oldest first) into a single batch with the
+     * summed deltas, covering all their sequence numbers. Deltas add up, so nothing is lost;
+     * transports use this to keep a bounded queue for a peer that is down.
+     */
+    static byte[] merge(List<byte[]> batches) throws IOException {
+        Batch merged = Batch.decode(batches.get(0));
+        for (int i = 1; i < batches.size(); i++) {
+            Batch next = Batch.decode(batches.get(i));
+            if (next.epoch != merged.epoch || next.first != merged.last + 1) {
+                throw new IOException("Batches aren't consecutive");
+            }
+            for (Map.Entry<UUID, Double> entry : next.balances.entrySet()) {
+                merged.balances.merge(entry.getKey(), entry.getValue(), Double::sum);
+            }
+            for (Map.Entry<String, Integer> entry : next.factions.entrySet()) {
+                merged.factions.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+            merged.last = next.last;
+        }
+        return merged.encode();
+    }
+
+    // -----------------
+    // INCOMING
+    // -----------------
+
+    /**
+     * Decodes a batch from another server and applies it, unless it was already applied.
+     * Returning normally tells the transport the batch is handled (it may acknowledge it);
+     * throws UncheckedIOException if the version vector couldn't be saved, so the sender
+     * keeps the batch and resends it.
+     */
+    private synchronized void receive(byte[] data) {
+        // Decode everything before applying anything, so a truncated batch changes nothing
+        Batch batch;
+        try {
+            batch = Batch.decode(data);
+        } catch (IOException e) {
+            ChatUtil.log("&c[Replication] Could not decode batch: " + e.getMessage());
+            return;
+        }
+        if (batch.origin.equals(serverId)) {
+            return;
+        }
+
+        long[] last = applied.get(batch.origin);
+        if (last != null) {
+            if (batch.epoch < last[0] || (batch.epoch == last[0] && batch.last <= last[1])) {
+                return; // stale or duplicate
+            }
+            if (batch.epoch == last[0] && batch.first != last[1] + 1) {
+                // Transports merge rather than drop, so this means a bug or a lost process
+                String problem = batch.first > last[1] + 1
+                        ? "batches " + (last[1] + 1) + " to " + (batch.first - 1) + " never arrived"
+                        : "batch " + batch.first + ".." + batch.last + " overlaps ones already applied";
+                plugin.getLogger().severe("[Replication] From " + batch.origin + ", " + problem
+                        + "; balances here no longer match that server. Resync them with /econplus dump.");
+            }
+        }
+
+        for (Map.Entry<UUID, Double> entry : batch.balances.entrySet()) {
+            plugin.getDataManager().applyReplicatedBalanceDelta(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Integer> entry : batch.factions.entrySet()) {
+            plugin.getDataManager().applyReplicatedFactionDelta(entry.getKey(), entry.getValue());
+        }
+
+        applied.put(batch.origin, new long[]{batch.epoch, batch.last});
+        try {
+            saveState();
+        } catch (IOException e) {
+            plugin.getLogger().severe("[Replication] Could not save " + stateFile.getName() + ": " + e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // -----------------
+    // STATE
+    // -----------------
+
+    // Reads the version vector and returns the last epoch used (0 if there's no state yet)
+    private long loadState() throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(stateFile))) {
+            if (in.readInt() != STATE_MAGIC) {
+                throw new IOException(stateFile.getName() + " is corrupt");
+            }
+            long lastEpoch = in.readLong();
+            int origins = in.readInt();
+            for (int i = 0; i < origins; i++) {
+                String origin = in.readUTF();
+                applied.put(origin, new long[]{in.readLong(), in.readLong()});
+            }
+            return lastEpoch;
+        } catch (FileNotFoundException e) {
+            return 0L;
+        }
+    }
+
+    // Writes our epoch and the version vector to a temp file, then moves it over the old one
+    private void saveState() throws IOException {
+        File temp = new File(stateFile.getPath() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(STATE_MAGIC);
+            out.writeLong(epoch);
+            out.writeInt(applied.size());
+            for (Map.Entry<String, long[]> entry : applied.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue()[0]);
+                out.writeLong(entry.getValue()[1]);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    /**
+     * One batch of deltas from one origin, covering sequence numbers first..last.
+     */
+    private static final class Batch {
+        private final String origin;
+        private final long epoch;
+        private final long first;
+        private long last;
+        private final Map<UUID, Double> balances;
+        private final Map<String, Integer> factions;
+
+        Batch(String origin, long epoch, long first, long last,
+              Map<UUID, Double> balances, Map<String, Integer> factions) {
+            this.origin = origin;
+            this.epoch = epoch;
+            this.first = first;
+            this.last = last;
+            this.balances = balances;
+            this.factions = factions;
+        }
+
+        byte[] encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + balances.size() * 24);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeByte(FORMAT_VERSION);
+                out.writeUTF(origin);
+                out.writeLong(epoch);
+                out.writeLong(first);
+                out.writeLong(last);
+
+                out.writeInt(balances.size());
+                for (Map.Entry<UUID, Double> entry : balances.entrySet()) {
+                    out.writeLong(entry.getKey().getMostSignificantBits());
+                    out.writeLong(entry.getKey().getLeastSignificantBits());
+                    out.writeDouble(entry.getValue());
+                }
+
+                out.writeInt(factions.size());
+                for (Map.Entry<String, Integer> entry : factions.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // in-memory stream, can't happen
+            }
+            return bytes.toByteArray();
+        }
+
+        static Batch decode(byte[] data) throws IOException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+                if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                    throw new IOException("unknown format");
+                }
+                String origin = in.readUTF();
+                long epoch = in.readLong();
+                long first = in.readLong();
+                long last = in.readLong();
+                if (first > last) {
+                    throw new IOException("bad sequence range " + first + ".." + last);
+                }
+
+                int balanceCount = in.readInt();
+                if (balanceCount < 0) {
+                    throw new IOException("bad balance count " + balanceCount);
+                }
+                Map<UUID, Double> balances = new HashMap<>();
+                for (int i = 0; i < balanceCount; i++) {
+                    UUID uuid = new UUID(in.readLong(), in.readLong());
+                    double delta = in.readDouble();
+                    if (Double.isNaN(delta) || Double.isInfinite(delta)) {
+                        throw new IOException("bad delta for " + uuid);
+                    }
+                    balances.merge(uuid, delta, Double::sum);
+                }
+
+                int factionCount = in.readInt();
+                if (factionCount < 0) {
+                    throw new IOException("bad faction count " + factionCount);
+                }
+                Map<String, Integer> factions = new HashMap<>();
+                for (int i = 0; i < factionCount; i++) {
+                    String faction = in.readUTF();
+                    factions.merge(faction, in.readInt(), Integer::sum);
+                }
+                return new Batch(origin, epoch, first, last, balances, factions);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package me.minimize.economyplus.replication;
+
+import java.util.function.Consumer;
+
+/**
+ * Moves encoded delta batches between servers.
+ * Implementations only need to deliver opaque byte arrays; ordering, dedup and
+ * applying the deltas is handled by ReplicationManager.
+ */
+public interface ReplicationTransport {
+
+    /**
+     * Starts the transport. Every batch received from another server is passed to 'receiver',
+     * possibly on a transport-owned thread. A batch counts as delivered only once 'receiver'
+     * returns normally; if it throws, the sender must keep the batch and send it again.
+     */
+    void start(Consumer<byte[]> receiver) throws Exception;
+
+    /**
+     * Sends a batch to every other server. Must not block for long; called from an async task.
+     */
+    void publish(byte[] batch);
+
+    /**
+     * Stops the transport and releases any threads/sockets.
+     */
+    void close();
+}
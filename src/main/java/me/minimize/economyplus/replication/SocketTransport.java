@@ -0,0 +1,307 @@
+package me.minimize.economyplus.replication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import me.minimize.economyplus.utils.ChatUtil;
+
+/**
+ * Plain TCP transport with length-prefixed frames.
+ * Each server listens on one port and pushes its batches to a fixed list of peers
+ * (e.g. other Spigot instances on the same machine, over 127.0.0.1).
+ * Peers that are down are skipped and reconnected on the next publish.
+ *
+ * The receiving side answers every frame with an acknowledgement once the batch has been
+ * applied (and recorded as applied); the sender only forgets a batch when its ack comes
+ * back. A flush that succeeded on a socket the peer already dropped proves nothing.
+ *
+ * With a shared secret, every frame ends with an HMAC-SHA256 of its batch and frames
+ * without a valid one are refused; without a secret the transport only listens on a
+ * loopback address, since anyone who can reach the port could otherwise change balances.
+ */
+public class SocketTransport implements ReplicationTransport {
+
+    // Refuse frames bigger than this; protects against garbage on the port
+    private static final int MAX_FRAME = 16 * 1024 * 1024;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+
+    // Sent back for each handled frame
+    private static final int ACK = 0x45504B41; // "EPKA"
+    // How long a sender waits for acks before treating the connection as broken
+    private static final int ACK_TIMEOUT_MILLIS = 5000;
+
+    private final String bindHost;
+    private final int listenPort;
+    private final byte[] secret; // null = unauthenticated, loopback only
+    private final List<Peer> peers = new ArrayList<>();
+
+    private volatile ServerSocket serverSocket;
+    private volatile boolean running;
+
+    /**
+     * @param bindHost   address to listen on (use 127.0.0.1 for loopback only)
+     * @param listenPort port to accept batches on
+     * @param peerAddresses "host:port" entries for the other servers (malformed ones are skipped)
+     * @param secret     shared by all servers to authenticate frames, or null
+     */
+    public SocketTransport(String bindHost, int listenPort, List<String> peerAddresses, String secret) {
+        this.bindHost = bindHost;
+        this.listenPort = listenPort;
+        this.secret = secret != null ? secret.getBytes(StandardCharsets.UTF_8) : null;
+        for (String address : peerAddresses) {
+            int colon = address.lastIndexOf(':');
+            int port = -1;
+            if (colon > 0) {
+                try {
+                    port = Integer.parseInt(address.substring(colon + 1).trim());
+                } catch (NumberFormatException ignored) {
+                    // Reported below
+                }
+            }
+            if (port < 1 || port > 65535) {
+                ChatUtil.log("&c[Replication] Ignoring peer '" + address + "', expected host:port.");
+                continue;
+            }
+            peers.add(new Peer(address.substring(0, colon).trim(), port));
+        }
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) throws IOException {
+        if (secret == null && !InetAddress.getByName(bindHost).isLoopbackAddress()) {
+            throw new IOException("refusing to listen on " + bindHost
+                    + " without replication.socket.secret (anyone reaching the port could change balances)");
+        }
+        if (secret != null) {
+            newMac(); // fail now rather than on the first frame if HMAC isn't available
+        }
+
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(bindHost, listenPort));
+        running = true;
+
+        Thread acceptor = new Thread(() -> {
+            while (running) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    Thread reader = new Thread(() -> readLoop(socket, receiver), "EconomyPlus-Replication-Reader");
+                    reader.setDaemon(true);
+                    reader.start();
+                } catch (IOException e) {
+                    if (running) {
+                        ChatUtil.log("&c[Replication] Accept failed: " + e.getMessage());
+                    }
+                }
+            }
+        }, "EconomyPlus-Replication-Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void readLoop(Socket socket, Consumer<byte[]> receiver) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream acks = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            Mac mac = secret != null ? newMac() : null;
+            int macLength = mac != null ? MAC_LENGTH : 0;
+            while (running) {
+                int length = in.readInt();
+                if (length < macLength || length > MAX_FRAME) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                byte[] frame = new byte[length - macLength];
+                in.readFully(frame);
+                if (mac != null) {
+                    byte[] tag = new byte[MAC_LENGTH];
+                    in.readFully(tag);
+                    if (!MessageDigest.isEqual(tag, mac.doFinal(frame))) {
+                        ChatUtil.log("&c[Replication] Dropping connection from " + socket.getRemoteSocketAddress()
+                                + ": frame isn't signed with our secret.");
+                        return;
+                    }
+                }
+                // Throws if the batch couldn't be handled; then no ack, and the sender resends it
+                receiver.accept(frame);
+                acks.writeInt(ACK);
+                if (in.available() == 0) {
+                    acks.flush();
+                }
+            }
+        } catch (IOException ignored) {
+            // Peer went away; it will reconnect when it next publishes
+        } catch (RuntimeException e) {
+            ChatUtil.log("&c[Replication] Could not apply a batch from " + socket.getRemoteSocketAddress()
+                    + " (" + e.getMessage() + "), it will be resent.");
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // A MAC keyed with the shared secret (not thread-safe, so one per reader/peer)
+    private Mac newMac() throws IOException {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("HMAC unavailable: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void publish(byte[] batch) {
+        for (Peer peer : peers) {
+            peer.send(batch);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException ignored) {}
+        for (Peer peer : peers) {
+            peer.close();
+        }
+    }
+
+    /**
+     * Outbound connection to one other server.
+     * Batches stay queued until the peer acknowledges them, and unacknowledged ones go out
+     * again on the next publish; resending is safe because receivers drop sequence numbers
+     * they've already applied. A queue that gets long (peer down for a while) is merged into
+     * one cumulative batch instead of dropping anything, except for batches the peer may
+     * already have received.
+     */
+    private final class Peer {
+        private static final int MAX_PENDING = 1_000;
+
+        private final String host;
+        private final int port;
+        private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        // How many batches at the head of 'pending' were written but not acknowledged before
+        // a connection broke, so the peer may have them; those are never merged with later ones
+        private int maybeDelivered;
+        private Mac mac;
+        private Socket socket;
+        private DataOutputStream out;
+        private DataInputStream acks;
+
+        Peer(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        synchronized void send(byte[] batch) {
+            pending.addLast(batch);
+            if (pending.size() > MAX_PENDING) {
+                coalesce();
+            }
+
+            int written = 0;
+            int acked = 0;
+            try {
+                if (socket == null || socket.isClosed()) {
+                    socket = new Socket();
+                    socket.connect(new InetSocketAddress(host, port), 2000);
+                    socket.setTcpNoDelay(true);
+                    socket.setSoTimeout(ACK_TIMEOUT_MILLIS);
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    acks = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    if (secret != null && mac == null) {
+                        mac = newMac();
+                    }
+                }
+                for (byte[] next : pending) {
+                    written++;
+                    if (mac != null) {
+                        out.writeInt(next.length + MAC_LENGTH);
+                        out.write(next);
+                        out.write(mac.doFinal(next));
+                    } else {
+                        out.writeInt(next.length);
+                        out.write(next);
+                    }
+                }
+                out.flush();
+
+                // Frames are handled in order, so each ack releases the oldest queued batch
+                while (acked < written) {
+                    if (acks.readInt() != ACK) {
+                        throw new IOException("unexpected reply");
+                    }
+                    pending.removeFirst();
+                    acked++;
+                }
+                maybeDelivered = 0;
+            } catch (IOException e) {
+                maybeDelivered = Math.max(0, Math.max(maybeDelivered, written) - acked);
+                ChatUtil.log("&c[Replication] Could not reach " + host + ":" + port + " (" + e
+                        + "), " + pending.size() + " batches queued");
+                disconnect();
+            }
+        }
+
+        // Merges every queued batch after the possibly delivered ones into one
+        private void coalesce() {
+            List<byte[]> tail = new ArrayList<>(pending);
+            List<byte[]> mergeable = tail.subList(Math.min(maybeDelivered, tail.size()), tail.size());
+            if (mergeable.size() < 2) {
+                return;
+            }
+            try {
+                byte[] merged = ReplicationManager.merge(mergeable);
+                mergeable.clear();
+                tail.add(merged);
+                pending.clear();
+                pending.addAll(tail);
+            } catch (IOException e) {
+                ChatUtil.log("&c[Replication] Could not merge queued batches for " + host + ":" + port
+                        + " (" + e.getMessage() + ")");
+            }
+        }
+
+        // Final disconnect; what the peer never acknowledged can't be sent any more
+        synchronized void close() {
+            if (!pending.isEmpty()) {
+                ChatUtil.log("&c[Replication] " + pending.size() + " batches for " + host + ":" + port
+                        + " were never acknowledged; that server's balances will differ from ours.");
+            }
+            disconnect();
+        }
+
+        synchronized void disconnect() {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException ignored) {}
+            socket = null;
+            out = null;
+            acks = null;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package me.minimize.economyplus.utils;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Incrementally maintained ranking, highest score first.
+ * Each update is O(log n) and reading the top N is O(N), so leaderboards never
+ * need to sort every account.
+ *
+ * Updates for the same key must not race each other (callers hold the account's lock);
+ * updates for different keys and reads can run concurrently.
+ *
+ * A version number goes up with every change to the ranking, so readers that poll
+ * (e.g. the leaderboard feed) can skip reading the top N when nothing moved.
+ * top() is weakly consistent: while a key is being moved it may be missing from the
+ * result. Readers that need an exact snapshot check isUnchangedSince() afterwards.
+ */
+public class Leaderboard<K extends Comparable<K>> {
+
+    private final ConcurrentSkipListSet<Entry<K>> ranking = new ConcurrentSkipListSet<>();
+    private final Map<K, Entry<K>> current = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    // Changes in progress; the version is bumped before this drops back
+    private final AtomicInteger changing = new AtomicInteger();
+
+    public void update(K key, double score) {
+        changing.incrementAndGet();
+        try {
+            Entry<K> entry = new Entry<>(key, score);
+            Entry<K> old = current.put(key, entry);
+            if (old != null) {
+                if (old.score == score) {
+                    return;
+                }
+                ranking.remove(old);
+            }
+            ranking.add(entry);
+            version.incrementAndGet();
+        } finally {
+            changing.decrementAndGet();
+        }
+    }
+
+    public void remove(K key) {
+        changing.incrementAndGet();
+        try {
+            Entry<K> old = current.remove(key);
+            if (old != null) {
+                ranking.remove(old);
+                version.incrementAndGet();
+            }
+        } finally {
+            changing.decrementAndGet();
+        }
+    }
+
+    /**
+     * Top 'limit' entries, highest first (all entries if limit <= 0).
+     * Each key appears at most once, even if it was being moved during the read.
+     */
+    public List<Map.Entry<K, Double>> top(int limit) {
+        List<Map.Entry<K, Double>> result = new ArrayList<>(limit > 0 ? limit : current.size());
+        Set<K> seen = new HashSet<>(limit > 0 ? limit * 2 : 16);
+        Iterator<Entry<K>> it = ranking.iterator();
+        while (it.hasNext() && (limit <= 0 || result.size() < limit)) {
+            Entry<K> entry = it.next();
+            // An update adds the new entry and removes the old one; we may have seen both
+            if (seen.add(entry.key)) {
+                result.add(new AbstractMap.SimpleImmutableEntry<>(entry.key, entry.score));
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return current.size();
+    }
+
+    public void clear() {
+        changing.incrementAndGet();
+        try {
+            ranking.clear();
+            current.clear();
+            version.incrementAndGet();
+        } finally {
+            changing.decrementAndGet();
+        }
+    }
+
+    /**
+     * Changes whenever the ranking changes. Read it before top() to never miss an update.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * True if nothing changed, or is changing, since getVersion() returned 'seenVersion'.
+     * Checked after top(), it means that read was an exact snapshot.
+     */
+    public boolean isUnchangedSince(long seenVersion) {
+        return changing.get() == 0 && version.get() == seenVersion;
+    }
+
+    // Ordered by score (descending), then key so equal scores stay distinct
+    private static final class Entry<K extends Comparable<K>> implements Comparable<Entry<K>> {
+        private final K key;
+        private final double score;
+
+        Entry(K key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Entry<K> other) {
+            int byScore = Double.compare(other.score, score);
+            return byScore != 0 ? byScore : key.compareTo(other.key);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean equals(Object o) {
+            return o instanceof Entry && compareTo((Entry<K>) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() * 31 + Double.hashCode(score);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package me.minimize.economyplus.utils;
+
+import java.util.Arrays;
+
+/**
+ * Streaming quantile sketch over non-negative values (log-bucketed, DDSketch style).
+ * Each value lands in a bucket whose bounds grow geometrically, so any reported
+ * quantile is within 'relativeAccuracy' of the true value while memory depends only
+ * on the range of values, not on how many were added. No sorting is ever needed.
+ *
+ * Not thread-safe; build one per computation.
+ */
+public class QuantileSketch {
+
+    private final double gamma;
+    private final double logGamma;
+
+    // counts[i] holds values in (gamma^(i-1+offset), gamma^(i+offset)]
+    private long[] counts = new long[64];
+    private double[] sums = new double[64];
+    private int offset = 0;
+    private boolean empty = true;
+
+    private long zeroCount = 0;
+    private long totalCount = 0;
+    private double totalSum = 0.0;
+
+    public QuantileSketch(double relativeAccuracy) {
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /**
+     * Adds a value. Anything <= 0 is counted in a separate "zero" bucket.
+     */
+    public void add(double value) {
+        totalCount++;
+        if (value <= 0 || Double.isNaN(value)) {
+            zeroCount++;
+            return;
+        }
+        totalSum += value;
+
+        int key = (int) Math.ceil(Math.log(value) / logGamma);
+        int i = slot(key);
+        counts[i]++;
+        sums[i] += value;
+    }
+
+    /**
+     * Estimated value at quantile q (0.0 - 1.0).
+     */
+    public double quantile(double q) {
+        if (totalCount == 0) {
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(q * totalCount);
+        if (rank <= zeroCount) {
+            return 0.0;
+        }
+
+        long seen = zeroCount;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Midpoint of the bucket bounds, which keeps the relative error symmetric
+                return 2 * Math.pow(gamma, i + offset) / (1 + gamma);
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * Gini coefficient from the bucketed Lorenz curve (0 = perfectly equal, 1 = one holder has everything).
+     */
+    public double gini() {
+        if (totalCount == 0 || totalSum <= 0) {
+            return 0.0;
+        }
+
+        // Zero-balance accounts contribute population but no wealth
+        double area = 0.0;
+        double cumulativeShare = 0.0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            double populationShare = (double) counts[i] / totalCount;
+            double nextShare = cumulativeShare + sums[i] / totalSum;
+            area += populationShare * (cumulativeShare + nextShare) / 2;
+            cumulativeShare = nextShare;
+        }
+        return Math.max(0.0, 1 - 2 * area);
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public double getSum() {
+        return totalSum;
+    }
+
+    // Maps a bucket key to an array slot, growing the arrays when needed
+    private int slot(int key) {
+        if (empty) {
+            offset = key - counts.length / 2;
+            empty = false;
+        }
+
+        int i = key - offset;
+        if (i < 0) {
+            int shift = -i;
+            counts = shifted(counts, shift);
+            sums = shifted(sums, shift);
+            offset -= shift;
+            i = 0;
+        } else if (i >= counts.length) {
+            int newLength = Math.max(counts.length * 2, i + 1);
+            counts = Arrays.copyOf(counts, newLength);
+            sums = Arrays.copyOf(sums, newLength);
+        }
+        return i;
+    }
+
+    private static long[] shifted(long[] src, int shift) {
+        long[] dst = new long[src.length + shift];
+        System.arraycopy(src, 0, dst, shift, src.length);
+        return dst;
+    }
+
+    private static double[] shifted(double[] src, int shift) {
+        double[] dst = new double[src.length + shift];
+        System.arraycopy(src, 0, dst, shift, src.length);
+        return dst;
+    }
+}
@@ -0,0 +1,66 @@
+package me.minimize.economyplus.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/**
+ * Utility class for parsing the time arguments used by admin commands.
+ */
+public class TimeUtil {
+
+    /**
+     * Parses a point in time. Accepts:
+     *  - a relative duration back from now, e.g. "30m", "12h", "7d", "2w"
+     *  - an absolute date, "yyyy-MM-dd" or "yyyy-MM-dd_HH:mm"
+     *  - raw epoch milliseconds
+     * Returns -1 if the input can't be parsed.
+     */
+    public static long parseTime(String input) {
+        long duration = parseDuration(input);
+        if (duration >= 0) {
+            return System.currentTimeMillis() - duration;
+        }
+
+        String[] formats = {"yyyy-MM-dd_HH:mm", "yyyy-MM-dd"};
+        for (String format : formats) {
+            SimpleDateFormat sdf = new SimpleDateFormat(format);
+            sdf.setLenient(false);
+            try {
+                return sdf.parse(input).getTime();
+            } catch (ParseException ignored) {}
+        }
+
+        try {
+            return Long.parseLong(input);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses a duration such as "30s", "15m", "12h", "7d" or "2w" into milliseconds.
+     * Returns -1 if the input isn't a duration.
+     */
+    public static long parseDuration(String input) {
+        if (input == null || input.length() < 2) {
+            return -1;
+        }
+
+        long unit;
+        switch (Character.toLowerCase(input.charAt(input.length() - 1))) {
+            case 's': unit = 1000L; break;
+            case 'm': unit = 60_000L; break;
+            case 'h': unit = 3_600_000L; break;
+            case 'd': unit = 86_400_000L; break;
+            case 'w': unit = 604_800_000L; break;
+            default: return -1;
+        }
+
+        try {
+            long value = Long.parseLong(input.substring(0, input.length() - 1));
+            return value < 0 ? -1 : value * unit;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
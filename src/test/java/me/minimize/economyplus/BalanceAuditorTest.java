@@ -0,0 +1,122 @@
+package me.minimize.economyplus;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BalanceAuditorTest {
+
+    private static final long BASE = 1_000_000L;
+    // Safely past the in-flight window after the baseline
+    private static final long T = BASE + BalanceAuditor.IN_FLIGHT_MILLIS + 1000L;
+
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+    private final Map<String, UUID> names = new HashMap<>();
+
+    private BalanceAuditor auditor(double aliceStart, double bobStart) {
+        names.put("Alice", alice);
+        names.put("Bob", bob);
+        Map<UUID, Double> baseline = new HashMap<>();
+        baseline.put(alice, aliceStart);
+        baseline.put(bob, bobStart);
+        BalanceAuditor auditor = new BalanceAuditor(baseline, BASE, names::get);
+        auditor.setStoredTime(T + 10_000L);
+        return auditor;
+    }
+
+    private static TransactionEntry entry(long time, String type, String from, String to, double amount) {
+        return new TransactionEntry(time, type, from, to, amount, "MONEY");
+    }
+
+    private static Map<UUID, Double> balances(UUID a, double aBalance, UUID b, double bBalance) {
+        Map<UUID, Double> stored = new HashMap<>();
+        stored.put(a, aBalance);
+        stored.put(b, bBalance);
+        return stored;
+    }
+
+    @Test
+    public void replayedLogMatchesStoredBalances() {
+        BalanceAuditor auditor = auditor(100.0, 50.0);
+        auditor.accept(entry(T, "PAY", "Alice", "Bob", 30.0));
+        auditor.accept(entry(T + 1, "DEPOSIT", null, "Bob", 5.0));
+        auditor.accept(entry(T + 2, "WITHDRAW", "Alice", null, 10.0));
+        auditor.accept(entry(T + 3, "ADMIN_SET", "Console", "Alice", 70.0));
+
+        BalanceAuditor.Report report = auditor.compare(balances(alice, 70.0, bob, 85.0),
+                (account, expected, stored) -> {
+                    throw new AssertionError("unexpected mismatch for " + account);
+                });
+
+        assertTrue(report.isClean());
+        assertEquals(4, report.getReplayed());
+        assertEquals(2, report.getChecked());
+        // +5 deposit, -10 withdraw, +10 from setting Alice's 60 to 70
+        assertEquals(5.0, report.getExternalNet(), 1e-9);
+    }
+
+    @Test
+    public void reportsUnexplainedBalances() {
+        BalanceAuditor auditor = auditor(100.0, 50.0);
+        auditor.accept(entry(T, "PAY", "Alice", "Bob", 30.0));
+
+        List<UUID> mismatched = new ArrayList<>();
+        BalanceAuditor.Report report = auditor.compare(balances(alice, 70.0, bob, 90.0),
+                (account, expected, stored) -> mismatched.add(account));
+
+        assertFalse(report.isClean());
+        assertEquals(1, report.getMismatches());
+        assertEquals(bob, mismatched.get(0));
+    }
+
+    @Test
+    public void entriesNearTheBaselineOrAfterTheSnapshotAreInFlight() {
+        BalanceAuditor auditor = auditor(100.0, 50.0);
+        auditor.setStoredTime(T);
+        // May or may not be in the baseline already
+        auditor.accept(entry(BASE + 1, "PAY", "Alice", "Bob", 30.0));
+        // After the snapshot: not in the stored balances yet
+        auditor.accept(entry(T + 1, "DEPOSIT", null, "Bob", 1.0));
+
+        BalanceAuditor.Report report = auditor.compare(balances(alice, 0.0, bob, 0.0),
+                (account, expected, stored) -> {
+                    throw new AssertionError("in-flight account was judged");
+                });
+
+        assertEquals(0, report.getReplayed());
+        assertEquals(2, report.getInFlight());
+        assertEquals(0, report.getChecked());
+    }
+
+    @Test
+    public void globalEntriesAndUnknownNamesMakeTheAuditUnreliable() {
+        BalanceAuditor global = auditor(100.0, 50.0);
+        global.accept(entry(T, "POLICY_RUN", "Policy", "*", 12.0));
+        assertTrue(global.compare(balances(alice, 100.0, bob, 50.0), (a, e, s) -> {}).isGlobalInWindow());
+
+        BalanceAuditor unknown = auditor(100.0, 50.0);
+        unknown.accept(entry(T, "DEPOSIT", null, "Nobody", 5.0));
+        BalanceAuditor.Report report = unknown.compare(balances(alice, 100.0, bob, 50.0), (a, e, s) -> {});
+        assertEquals(1, report.getUnresolved());
+        assertFalse(report.isClean());
+    }
+
+    @Test
+    public void otherCurrenciesAreIgnored() {
+        BalanceAuditor auditor = auditor(100.0, 50.0);
+        auditor.accept(new TransactionEntry(T, "ADMIN_GIVE", "Console", "Alice", 7.0, "FACTION_POINTS"));
+
+        BalanceAuditor.Report report = auditor.compare(balances(alice, 100.0, bob, 50.0), (a, e, s) -> {});
+        assertTrue(report.isClean());
+        assertEquals(1, report.getOtherCurrency());
+    }
+}
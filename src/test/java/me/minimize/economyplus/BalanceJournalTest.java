@@ -0,0 +1,107 @@
+package me.minimize.economyplus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BalanceJournalTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private BalanceJournal journal;
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+
+    @Before
+    public void open() throws Exception {
+        File folder = temp.newFolder("rollback");
+        journal = new BalanceJournal(folder, 24L * 60 * 60 * 1000);
+    }
+
+    @After
+    public void close() {
+        journal.close();
+    }
+
+    // Starts a segment with a checkpoint, the way DataManager does
+    private long checkpoint(Map<UUID, Double> balances) throws Exception {
+        long time = System.currentTimeMillis();
+        journal.rotate(time);
+        journal.writeCheckpoint(time, balances);
+        return time;
+    }
+
+    @Test
+    public void rebuildsBalancesFromCheckpointAndJournal() throws Exception {
+        Map<UUID, Double> start = new HashMap<>();
+        start.put(alice, 100.0);
+        long base = checkpoint(start);
+
+        Thread.sleep(5);
+        journal.record(alice, 80.0);
+        journal.record(bob, 20.0);
+        Thread.sleep(5);
+        long middle = System.currentTimeMillis();
+        Thread.sleep(5);
+        journal.record(alice, 60.0);
+
+        assertEquals(100.0, journal.reconstruct(alice, base), 0.0);
+        assertEquals(80.0, journal.reconstruct(alice, middle), 0.0);
+        assertEquals(20.0, journal.reconstruct(bob, middle), 0.0);
+        assertEquals(60.0, journal.reconstruct(alice, System.currentTimeMillis()), 0.0);
+
+        Map<UUID, Double> all = journal.reconstructAll(middle);
+        assertEquals(2, all.size());
+        assertEquals(80.0, all.get(alice), 0.0);
+    }
+
+    @Test
+    public void accountsCreatedLaterAreAbsent() throws Exception {
+        Map<UUID, Double> start = new HashMap<>();
+        start.put(alice, 100.0);
+        long base = checkpoint(start);
+        Thread.sleep(5);
+        journal.record(bob, 5.0);
+
+        assertTrue(Double.isNaN(journal.reconstruct(bob, base)));
+        assertFalse(journal.reconstructAll(base).containsKey(bob));
+    }
+
+    @Test
+    public void laterCheckpointsStartFromTheirOwnSnapshot() throws Exception {
+        Map<UUID, Double> start = new HashMap<>();
+        start.put(alice, 100.0);
+        long first = checkpoint(start);
+        Thread.sleep(5);
+        journal.record(alice, 90.0);
+
+        Thread.sleep(5);
+        Map<UUID, Double> later = new HashMap<>();
+        later.put(alice, 90.0);
+        long second = checkpoint(later);
+        Thread.sleep(5);
+        journal.record(alice, 10.0);
+
+        assertEquals(first, journal.getOldestRecoverableTime());
+        assertEquals(90.0, journal.reconstruct(alice, second), 0.0);
+        assertEquals(10.0, journal.reconstruct(alice, System.currentTimeMillis()), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timesBeforeTheOldestCheckpointAreRefused() throws Exception {
+        long base = checkpoint(new HashMap<>());
+        journal.reconstruct(alice, base - 1);
+    }
+}
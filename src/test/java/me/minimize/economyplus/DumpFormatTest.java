@@ -0,0 +1,134 @@
+package me.minimize.economyplus;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class DumpFormatTest {
+
+    // Writes one frame per encoder, then reads the file back frame by frame
+    private static List<DumpFormat.Frame> roundTrip(long createdAt, DumpFormat.Frame... frames) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        DumpFormat.writeHeader(out, createdAt);
+        for (DumpFormat.Frame frame : frames) {
+            DumpFormat.writeFrame(out, frame);
+        }
+        out.writeByte(DumpFormat.END);
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(createdAt, DumpFormat.readHeader(in));
+        DumpFormat.Frame[] read = new DumpFormat.Frame[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            read[i] = DumpFormat.readFrame(in);
+            assertEquals(frames[i].section, read[i].section);
+        }
+        assertNull(DumpFormat.readFrame(in));
+        return Arrays.asList(read);
+    }
+
+    @Test
+    public void everySectionSurvivesARoundTrip() throws IOException {
+        Map<UUID, Double> accounts = new LinkedHashMap<>();
+        accounts.put(UUID.randomUUID(), 12.34);
+        accounts.put(UUID.randomUUID(), -5.0);
+        accounts.put(UUID.randomUUID(), 1.0 / 3.0); // not whole cents, stored raw
+        DumpFormat.Encoder accountBlock = new DumpFormat.Encoder();
+        for (Map.Entry<UUID, Double> entry : accounts.entrySet()) {
+            DumpFormat.encodeAccount(accountBlock, entry.getKey(), entry.getValue());
+        }
+
+        Map<String, Integer> factions = new LinkedHashMap<>();
+        factions.put("Wolves", 40);
+        factions.put("Bears", -3);
+        DumpFormat.Encoder factionBlock = new DumpFormat.Encoder();
+        for (Map.Entry<String, Integer> entry : factions.entrySet()) {
+            DumpFormat.encodeFaction(factionBlock, entry.getKey(), entry.getValue());
+        }
+
+        UUID holder = UUID.randomUUID();
+        DumpFormat.Encoder currencyBlock = new DumpFormat.Encoder();
+        DumpFormat.encodeCurrencyHeader(currencyBlock, "GEMS", 3);
+        DumpFormat.encodeCurrencyAccount(currencyBlock, holder, 12_345L);
+
+        List<TransactionEntry> entries = Arrays.asList(
+                new TransactionEntry(1_000L, "PAY", "Alice", "Bob", 2.5, "MONEY", "req-1"),
+                new TransactionEntry(1_500L, "PAY", "Bob", "Alice", 0.01, "MONEY"),
+                new TransactionEntry(1_200L, "ADMIN_GIVE", "Console", "Wolves", 7.0, "FACTION_POINTS"));
+        DumpFormat.Encoder transactionBlock = new DumpFormat.Encoder();
+        DumpFormat.TransactionWriter writer = new DumpFormat.TransactionWriter(transactionBlock);
+        for (TransactionEntry entry : entries) {
+            writer.write(entry);
+        }
+
+        List<DumpFormat.Frame> frames = roundTrip(42L,
+                DumpFormat.compress(DumpFormat.ACCOUNTS, accounts.size(), accountBlock, Deflater.BEST_SPEED),
+                DumpFormat.compress(DumpFormat.FACTIONS, factions.size(), factionBlock, Deflater.BEST_SPEED),
+                DumpFormat.compress(DumpFormat.CURRENCY, 1, currencyBlock, Deflater.BEST_SPEED),
+                DumpFormat.compress(DumpFormat.TRANSACTIONS, entries.size(), transactionBlock, Deflater.BEST_SPEED));
+
+        assertEquals(accounts, DumpFormat.decodeAccounts(DumpFormat.decompress(frames.get(0)), frames.get(0).records));
+        assertEquals(factions, DumpFormat.decodeFactions(DumpFormat.decompress(frames.get(1)), frames.get(1).records));
+
+        DumpFormat.CurrencyBlock currency = DumpFormat.decodeCurrency(DumpFormat.decompress(frames.get(2)), frames.get(2).records);
+        assertEquals("GEMS", currency.currency);
+        assertEquals(3, currency.decimalPlaces);
+        assertEquals(Long.valueOf(12_345L), currency.balances.get(holder));
+
+        List<TransactionEntry> decoded = DumpFormat.decodeTransactions(DumpFormat.decompress(frames.get(3)), frames.get(3).records);
+        assertEquals(entries.size(), decoded.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).toMap(), decoded.get(i).toMap());
+        }
+    }
+
+    @Test
+    public void corruptBlocksAreRejected() throws IOException {
+        DumpFormat.Encoder block = new DumpFormat.Encoder();
+        DumpFormat.encodeFaction(block, "Wolves", 1);
+        DumpFormat.Frame frame = DumpFormat.compress(DumpFormat.FACTIONS, 1, block, Deflater.BEST_SPEED);
+
+        DumpFormat.Frame badCrc = new DumpFormat.Frame(frame.section, frame.records, frame.rawLength,
+                frame.crc ^ 1, frame.stored);
+        try {
+            DumpFormat.decompress(badCrc);
+            fail("checksum mismatch not detected");
+        } catch (IOException expected) {
+        }
+
+        DumpFormat.Frame badLength = new DumpFormat.Frame(frame.section, frame.records, frame.rawLength + 1,
+                frame.crc, frame.stored);
+        try {
+            DumpFormat.decompress(badLength);
+            fail("wrong length not detected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void aDumpWithoutEndMarkerIsTruncated() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        DumpFormat.writeHeader(out, 1L);
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        DumpFormat.readHeader(in);
+        DumpFormat.readFrame(in);
+    }
+}
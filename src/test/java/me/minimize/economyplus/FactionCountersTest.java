@@ -0,0 +1,90 @@
+package me.minimize.economyplus;
+
+import me.minimize.economyplus.utils.Leaderboard;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FactionCountersTest {
+
+    @Test
+    public void namesAreCaseInsensitiveAndCreatedOnce() {
+        List<String> created = new ArrayList<>();
+        FactionCounters counters = new FactionCounters(counter -> created.add(counter.getKey()));
+
+        assertNull(counters.find("Wolves"));
+        FactionCounters.Counter wolves = counters.getOrCreate("Wolves");
+        assertSame(wolves, counters.getOrCreate("WOLVES"));
+        assertSame(wolves, counters.find("wolves"));
+        assertEquals("wolves", wolves.getKey());
+        assertEquals(1, counters.size());
+        assertEquals(1, created.size());
+    }
+
+    @Test
+    public void concurrentIncrementsAreExact() throws Exception {
+        FactionCounters counters = new FactionCounters(counter -> {});
+        FactionCounters.Counter counter = counters.getOrCreate("Wolves");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    counters.addLocal(counter, 1);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(80_000L, counter.sum());
+    }
+
+    @Test
+    public void onlyLocalChangesAreReplicatedAndEachOnlyOnce() {
+        FactionCounters counters = new FactionCounters(counter -> {});
+        FactionCounters.Counter wolves = counters.getOrCreate("Wolves");
+        counters.addLocal(wolves, 5);
+        counters.addRemote(wolves, 100);
+        counters.addLocal(wolves, -2);
+
+        Map<String, Integer> batch = new HashMap<>();
+        counters.collectUnreplicated(batch);
+        assertEquals(Integer.valueOf(3), batch.get("wolves"));
+        assertEquals(103L, wolves.sum());
+
+        batch.clear();
+        counters.collectUnreplicated(batch);
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void refreshRankingFoldsSumsIntoTheLeaderboard() {
+        FactionCounters counters = new FactionCounters(counter -> {});
+        counters.addLocal(counters.getOrCreate("Wolves"), 10);
+        counters.addLocal(counters.getOrCreate("Bears"), 20);
+        Leaderboard<String> leaderboard = new Leaderboard<>();
+
+        counters.refreshRanking(leaderboard);
+        assertEquals("bears", leaderboard.top(1).get(0).getKey());
+
+        // Unchanged sums don't touch the ranking
+        long version = leaderboard.getVersion();
+        counters.refreshRanking(leaderboard);
+        assertEquals(version, leaderboard.getVersion());
+
+        counters.addLocal(counters.find("wolves"), 15);
+        counters.refreshRanking(leaderboard);
+        assertEquals("wolves", leaderboard.top(1).get(0).getKey());
+        assertEquals(25.0, leaderboard.top(1).get(0).getValue(), 0.0);
+    }
+}
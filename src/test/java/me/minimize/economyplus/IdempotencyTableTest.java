@@ -0,0 +1,145 @@
+package me.minimize.economyplus;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IdempotencyTableTest {
+
+    @Test
+    public void repeatedRequestReturnsTheFirstResultWithoutRunningAgain() {
+        IdempotencyTable table = new IdempotencyTable(100, 60_000L);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertTrue(table.execute("req-1", "TRANSFER a b 5", () -> runs.incrementAndGet() == 1));
+        assertTrue(table.execute("req-1", "TRANSFER a b 5", () -> runs.incrementAndGet() == 1));
+        assertEquals(1, runs.get());
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void withoutRequestIdEveryCallRuns() {
+        IdempotencyTable table = new IdempotencyTable(100, 60_000L);
+        AtomicInteger runs = new AtomicInteger();
+
+        table.execute(null, "DEPOSIT a 1", () -> runs.incrementAndGet() > 0);
+        table.execute(null, "DEPOSIT a 1", () -> runs.incrementAndGet() > 0);
+        assertEquals(2, runs.get());
+        assertEquals(0, table.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reusingAnIdForAnotherOperationIsRejected() {
+        IdempotencyTable table = new IdempotencyTable(100, 60_000L);
+        table.execute("req-1", "DEPOSIT a 1", () -> true);
+        table.execute("req-1", "DEPOSIT a 2", () -> true);
+    }
+
+    @Test
+    public void aFailedAttemptCanBeRetried() {
+        IdempotencyTable table = new IdempotencyTable(100, 60_000L);
+        try {
+            table.execute("req-1", "WITHDRAW a 1", () -> {
+                throw new IllegalStateException("storage down");
+            });
+            fail("expected the failure to propagate");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, table.size());
+        assertFalse(table.execute("req-1", "WITHDRAW a 1", () -> false));
+    }
+
+    @Test
+    public void oldestKeysAreEvictedOverCapacity() {
+        // The table never goes below 16 keys
+        IdempotencyTable table = new IdempotencyTable(16, 60_000L);
+        for (int i = 0; i < 40; i++) {
+            table.execute("req-" + i, "op", () -> true);
+        }
+        assertEquals(16, table.size());
+
+        // The first key was evicted, so it runs again
+        AtomicInteger runs = new AtomicInteger();
+        table.execute("req-0", "op", () -> runs.incrementAndGet() > 0);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void aRunningOperationIsNotEvicted() throws Exception {
+        IdempotencyTable table = new IdempotencyTable(16, 60_000L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> first = pool.submit(() -> table.execute("req-slow", "op", () -> {
+                runs.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // Push the table well over capacity while the first key is still running
+            for (int i = 0; i < 40; i++) {
+                table.execute("req-" + i, "op", () -> true);
+            }
+            Future<Boolean> duplicate = pool.submit(() -> table.execute("req-slow", "op", () -> runs.incrementAndGet() < 0));
+            release.countDown();
+
+            assertTrue(first.get(10, TimeUnit.SECONDS));
+            assertTrue(duplicate.get(10, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+
+            // Once it finished, the backlog is evicted again
+            table.expire();
+            table.execute("req-last", "op", () -> true);
+            assertEquals(16, table.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void aDuplicateWaitsForTheOriginal() throws Exception {
+        IdempotencyTable table = new IdempotencyTable(100, 60_000L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> first = pool.submit(() -> table.execute("req-1", "op", () -> {
+                runs.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<Boolean> second = pool.submit(() -> table.execute("req-1", "op", () -> runs.incrementAndGet() < 0));
+            release.countDown();
+
+            assertTrue(first.get(10, TimeUnit.SECONDS));
+            assertTrue(second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package me.minimize.economyplus;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RecentTransactionsTest {
+
+    private static TransactionEntry entry(long time) {
+        return new TransactionEntry(time, "PAY", "Alice", "Bob", 1.0, "MONEY");
+    }
+
+    private static List<Long> times(List<TransactionEntry> entries) {
+        List<Long> times = new ArrayList<>();
+        for (TransactionEntry entry : entries) {
+            times.add(entry.getTimestamp());
+        }
+        return times;
+    }
+
+    @Test
+    public void keepsTheNewestEntriesNewestFirst() {
+        RecentTransactions.Ring ring = new RecentTransactions.Ring(3);
+        for (long t = 1; t <= 5; t++) {
+            ring.add(entry(t));
+        }
+        assertEquals(Arrays.asList(5L, 4L, 3L), times(ring.newest(0, 3)));
+        assertEquals(Arrays.asList(4L, 3L), times(ring.newest(1, 2)));
+    }
+
+    @Test
+    public void unseededRingDoesNotClaimOlderHistory() {
+        RecentTransactions.Ring ring = new RecentTransactions.Ring(5);
+        ring.add(entry(1));
+        ring.add(entry(2));
+        assertEquals(Arrays.asList(2L, 1L), times(ring.newest(0, 2)));
+        // There may be older entries in the log that the ring never saw
+        assertNull(ring.newest(0, 3));
+        assertNull(ring.newest(2, 1));
+    }
+
+    @Test
+    public void seededRingKnowsTheFullHistory() {
+        RecentTransactions.Ring ring = new RecentTransactions.Ring(5);
+        ring.seed(Arrays.asList(entry(1), entry(2)));
+        assertEquals(Arrays.asList(2L, 1L), times(ring.newest(0, 10)));
+        assertEquals(0, ring.newest(2, 10).size());
+    }
+
+    @Test
+    public void seedingKeepsEntriesRecordedDuringTheQuery() {
+        RecentTransactions.Ring ring = new RecentTransactions.Ring(3);
+        TransactionEntry logged = entry(2);
+        // 'logged' was recorded live and is also in the query result; 'late' came after the query
+        ring.add(logged);
+        TransactionEntry late = entry(3);
+        ring.add(late);
+        ring.seed(Arrays.asList(entry(0), entry(1), logged));
+
+        List<TransactionEntry> newest = ring.newest(0, 3);
+        assertEquals(Arrays.asList(3L, 2L, 1L), times(newest));
+        assertSame(late, newest.get(0));
+        assertSame(logged, newest.get(1));
+    }
+
+    @Test
+    public void clearDropsEveryRing() {
+        RecentTransactions recent = new RecentTransactions(null, 4, 60_000L);
+        recent.seed(java.util.UUID.randomUUID(), Arrays.asList(entry(1)));
+        assertEquals(1, recent.size());
+        recent.clear();
+        assertEquals(0, recent.size());
+    }
+}
@@ -0,0 +1,159 @@
+package me.minimize.economyplus.sim;
+
+import org.bukkit.entity.Player;
+import me.minimize.economyplus.AuditJob;
+import me.minimize.economyplus.BalanceAuditor;
+import me.minimize.economyplus.DataManager;
+import me.minimize.economyplus.commands.PayCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress test for money conservation.
+ *
+ * Boots the plugin on the simulated server, gives a few players seeded balances, then has
+ * many threads move money between random pairs of them: half through /pay (PayCommand),
+ * half through DataManager's idempotent transfer, some of those retried with the same
+ * request ID. Meanwhile a checker thread keeps summing every balance with all account
+ * locks held. Transfers only move money, so every one of those sums, and the final one,
+ * must equal the starting total. Afterwards AuditJob replays the transaction log, which
+ * must explain every balance.
+ *
+ * Few players and many threads means lots of contention on the same accounts, which is
+ * the point.
+ */
+public class ConservationStressTest {
+
+    private static final int PLAYERS = 20;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS = 500; // per thread
+    private static final long SEED = 7L;
+
+    private File dataFolder;
+    private SimulatedServer server;
+    private SimulatedPlugin plugin;
+
+    @Before
+    public void start() throws Exception {
+        dataFolder = Files.createTempDirectory("economyplus-stress").toFile();
+        server = new SimulatedServer(false, perm -> !perm.startsWith("economyplus.admin"));
+        server.addPlayers(PLAYERS);
+        plugin = SimulatedPlugin.start(server, dataFolder, Collections.<String, Object>emptyMap());
+    }
+
+    @After
+    public void stop() throws Exception {
+        try {
+            plugin.stop(server);
+        } finally {
+            LoadSimulator.deleteRecursively(dataFolder.toPath());
+        }
+    }
+
+    @Test
+    public void transfersConserveMoneyAndTheLogExplainsEveryBalance() throws Exception {
+        DataManager data = plugin.getDataManager();
+        List<Player> accounts = server.getPlayers();
+        Random random = new Random(SEED);
+        for (Player player : accounts) {
+            data.setBalance(player.getUniqueId(), LoadSimulator.cents(random, 500.0));
+        }
+        final double startTotal = total(data);
+
+        // The audit window starts here. Log entries stamped within IN_FLIGHT_MILLIS of
+        // it can't be placed exactly, so wait that out before generating traffic.
+        long auditFrom = System.currentTimeMillis();
+        Thread.sleep(BalanceAuditor.IN_FLIGHT_MILLIS + 100L);
+
+        // Checker: every consistent total seen during the run must equal the starting one
+        final AtomicReference<String> violation = new AtomicReference<>();
+        final AtomicLong checks = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        Thread checker = new Thread(() -> {
+            while (done.getCount() > 0) {
+                double total = total(data);
+                checks.incrementAndGet();
+                if (Math.abs(total - startTotal) > BalanceAuditor.TOLERANCE) {
+                    violation.compareAndSet(null, String.format("total was $%.2f mid-run, expected $%.2f", total, startTotal));
+                }
+                // Holding every lock stops all transfers, so leave them room to run
+                LockSupport.parkNanos(200_000L);
+            }
+        }, "Stress-Checker");
+        checker.start();
+
+        PayCommand pay = new PayCommand(plugin);
+        CountDownLatch go = new CountDownLatch(1);
+        for (int t = 0; t < THREADS; t++) {
+            final int index = t;
+            final Random own = new Random(SEED * 1000003L + t);
+            new Thread(() -> {
+                try {
+                    go.await();
+                    for (int n = 0; n < TRANSFERS; n++) {
+                        int fromIndex = own.nextInt(accounts.size());
+                        Player from = accounts.get(fromIndex);
+                        Player to = accounts.get((fromIndex + 1 + own.nextInt(accounts.size() - 1)) % accounts.size());
+                        double amount = LoadSimulator.cents(own, 40.0) + 0.01;
+                        if (own.nextBoolean()) {
+                            pay.onCommand(from, null, "pay", new String[]{to.getName(), String.valueOf(amount)});
+                            continue;
+                        }
+                        String id = "stress-" + index + "-" + n;
+                        if (data.transfer(from.getUniqueId(), to.getUniqueId(), amount, id) && own.nextInt(10) == 0) {
+                            // A caller retrying after a timeout: must return the first result and move nothing
+                            data.transfer(from.getUniqueId(), to.getUniqueId(), amount, id);
+                        }
+                    }
+                } catch (InterruptedException ignored) {
+                } catch (RuntimeException e) {
+                    violation.compareAndSet(null, "transfer threw " + e);
+                } finally {
+                    done.countDown();
+                }
+            }, "Stress-Worker-" + t).start();
+        }
+        go.countDown();
+        assertTrue("workers didn't finish", done.await(2, TimeUnit.MINUTES));
+        checker.join();
+
+        assertNull(violation.get());
+        assertTrue("the checker never ran", checks.get() > 0);
+        assertEquals(startTotal, total(data), BalanceAuditor.TOLERANCE);
+
+        // The log must explain every balance
+        AuditJob.Result audit = new AuditJob(plugin, server.getConsole(), auditFrom).audit();
+        BalanceAuditor.Report report = audit.getReport();
+        assertTrue("audit found problems: " + audit.getListed(), report.isClean());
+        assertTrue("audit replayed nothing", report.getReplayed() > 0);
+    }
+
+    // Sum of every balance, read with all account locks held so no transfer is half-applied
+    private static double total(DataManager data) {
+        final double[] sum = new double[1];
+        data.getAccountLocks().withAllLocked(() -> {
+            for (double balance : data.getBalanceValues()) {
+                if (!Double.isNaN(balance)) {
+                    sum[0] += balance;
+                }
+            }
+        });
+        return sum[0];
+    }
+}
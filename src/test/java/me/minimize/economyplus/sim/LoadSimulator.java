@@ -0,0 +1,559 @@
+package me.minimize.economyplus.sim;
+
+import org.bukkit.entity.Player;
+import me.minimize.economyplus.DataManager;
+import me.minimize.economyplus.TickScheduler;
+import me.minimize.economyplus.TransactionQuery;
+import me.minimize.economyplus.api.EconomyService;
+import me.minimize.economyplus.commands.BalanceCommand;
+import me.minimize.economyplus.commands.BaltopCommand;
+import me.minimize.economyplus.commands.PayCommand;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * Headless load test for EconomyPlus.
+ *
+ * Boots the real plugin against a simulated server (no Minecraft needed), creates N
+ * players with seeded starting balances, then has T worker threads replay a seeded,
+ * weighted mix of traffic through the same code a live server runs: PayCommand,
+ * BalanceCommand and BaltopCommand are executed for simulated players, deposits,
+ * withdrawals and history lookups go through the async EconomyService, and saves call
+ * DataManager.saveAllData(). Afterwards it reports p50/p99/p99.9 latency per operation,
+ * throughput and GC pauses.
+ *
+ * The traffic is deterministic: each worker draws from its own Random derived from
+ * --seed, so two runs with the same options issue the same operations with the same
+ * arguments (the "fingerprint" in the report proves it). Thread interleaving still
+ * varies between runs, as it would on a server. Note that commands are called from the
+ * worker threads directly, which pushes harder on the account locks than a server,
+ * where commands arrive one at a time on the main thread.
+ *
+ * It lives with the tests and is not part of the plugin jar. Build the test classes
+ * ('mvn test-compile'), then run it with the Bukkit API and its libraries on the classpath:
+ *   java -cp target/classes:target/test-classes:bukkit-1.8.8-R0.1-SNAPSHOT.jar:<bukkit libs> \
+ *        me.minimize.economyplus.sim.LoadSimulator --players 500 --threads 8 --ops 5000 --seed 42
+ */
+public final class LoadSimulator {
+
+    private static final String USAGE = String.join("\n",
+            "Usage: LoadSimulator [options]",
+            "  --players N        simulated players (default 200)",
+            "  --threads N        worker threads (default 4)",
+            "  --ops N            measured operations per thread (default 2000)",
+            "  --warmup N         unmeasured operations per thread first (default 500)",
+            "  --seed N           workload seed (default 1)",
+            "  --mix SPEC         weighted operations (default " + Workload.DEFAULT_MIX + ")",
+            "  --start-balance N  starting balances are drawn from 0..N (default 1000)",
+            "  --rate-limit       apply the /pay rate limiter (players bypass it by default)",
+            "  --set key=value    override a config.yml setting (repeatable)",
+            "  --data DIR         plugin data folder (default: a temporary folder, deleted afterwards)",
+            "  --verbose          print chat and console output");
+
+    // -----------------
+    // OPTIONS
+    // -----------------
+
+    static final class Options {
+        int players = 200;
+        int threads = 4;
+        int ops = 2000;
+        int warmup = 500;
+        long seed = 1L;
+        Workload mix = Workload.parse(Workload.DEFAULT_MIX);
+        double startBalance = 1000.0;
+        boolean rateLimit;
+        boolean verbose;
+        File data;
+        final Map<String, Object> overrides = new LinkedHashMap<>();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--rate-limit":
+                        options.rateLimit = true;
+                        continue;
+                    case "--verbose":
+                        options.verbose = true;
+                        continue;
+                    default:
+                        break;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                try {
+                    switch (arg) {
+                        case "--players":
+                            options.players = Math.max(2, Integer.parseInt(value));
+                            break;
+                        case "--threads":
+                            options.threads = Math.max(1, Integer.parseInt(value));
+                            break;
+                        case "--ops":
+                            options.ops = Math.max(1, Integer.parseInt(value));
+                            break;
+                        case "--warmup":
+                            options.warmup = Math.max(0, Integer.parseInt(value));
+                            break;
+                        case "--seed":
+                            options.seed = Long.parseLong(value);
+                            break;
+                        case "--mix":
+                            options.mix = Workload.parse(value);
+                            break;
+                        case "--start-balance":
+                            options.startBalance = Math.max(0.0, Double.parseDouble(value));
+                            break;
+                        case "--data":
+                            options.data = new File(value);
+                            break;
+                        case "--set":
+                            int eq = value.indexOf('=');
+                            if (eq <= 0) {
+                                throw new IllegalArgumentException("Expected key=value after --set, got '" + value + "'");
+                            }
+                            options.overrides.put(value.substring(0, eq), parseValue(value.substring(eq + 1)));
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad number for " + arg + ": " + value);
+                }
+            }
+            return options;
+        }
+
+        // Config values keep their YAML type: booleans, whole numbers, decimals, else strings
+        private static Object parseValue(String raw) {
+            if (raw.equalsIgnoreCase("true") || raw.equalsIgnoreCase("false")) {
+                return Boolean.parseBoolean(raw);
+            }
+            try {
+                return Long.parseLong(raw);
+            } catch (NumberFormatException ignored) {}
+            try {
+                return Double.parseDouble(raw);
+            } catch (NumberFormatException ignored) {}
+            return raw;
+        }
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            new LoadSimulator(options).run();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        // Plugin and API threads are stopped by now; this just skips waiting on stragglers
+        System.exit(0);
+    }
+
+    // -----------------
+    // SIMULATION
+    // -----------------
+
+    private final Options options;
+    private SimulatedServer server;
+    private SimulatedPlugin plugin;
+    private List<Player> players;
+
+    // Commands are stateless, so every worker shares one of each
+    private PayCommand payCommand;
+    private BalanceCommand balanceCommand;
+    private BaltopCommand baltopCommand;
+
+    LoadSimulator(Options options) {
+        this.options = options;
+    }
+
+    void run() throws Exception {
+        boolean tempData = options.data == null;
+        File dataFolder = tempData ? Files.createTempDirectory("economyplus-sim").toFile() : options.data;
+        if (!dataFolder.exists() && !dataFolder.mkdirs()) {
+            throw new IOException("Could not create " + dataFolder);
+        }
+
+        server = new SimulatedServer(options.verbose, perm -> !perm.startsWith("economyplus.admin")
+                && (!options.rateLimit || !perm.startsWith("economyplus.bypass.")));
+        server.addPlayers(options.players);
+        players = server.getPlayers();
+        plugin = SimulatedPlugin.start(server, dataFolder, options.overrides);
+
+        try {
+            payCommand = new PayCommand(plugin);
+            balanceCommand = new BalanceCommand(plugin);
+            baltopCommand = new BaltopCommand(plugin);
+            seedBalances();
+
+            System.out.println("EconomyPlus load simulation");
+            System.out.println("  players " + options.players + ", threads " + options.threads + ", ops/thread "
+                    + options.ops + " (+" + options.warmup + " warmup), seed " + options.seed);
+            System.out.println("  mix " + options.mix + ", storage " + plugin.getConfigManager().getStorageType()
+                    + (options.overrides.isEmpty() ? "" : ", overrides " + options.overrides));
+            System.out.println("  data " + dataFolder.getAbsolutePath());
+
+            if (options.warmup > 0) {
+                runWorkers(options.warmup, false);
+            }
+
+            GcMonitor gc = new GcMonitor();
+            gc.start();
+            long start = System.nanoTime();
+            Worker[] workers = runWorkers(options.ops, true);
+            long elapsed = System.nanoTime() - start;
+            gc.stop();
+
+            long drainMillis = awaitMainThread();
+            report(workers, elapsed, gc, drainMillis);
+        } finally {
+            plugin.stop(server);
+            if (tempData) {
+                deleteRecursively(dataFolder.toPath());
+            }
+        }
+    }
+
+    private void seedBalances() {
+        Random random = new Random(options.seed);
+        DataManager data = plugin.getDataManager();
+        for (Player player : players) {
+            data.setBalance(player.getUniqueId(), cents(random, options.startBalance));
+        }
+    }
+
+    /**
+     * Runs every worker to completion and returns them. The warmup round (record = false)
+     * uses a different sequence and records nothing.
+     */
+    private Worker[] runWorkers(int count, boolean record) throws InterruptedException {
+        long seed = record ? options.seed : ~options.seed;
+        Worker[] workers = new Worker[options.threads];
+        Thread[] threads = new Thread[options.threads];
+        CountDownLatch go = new CountDownLatch(1);
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i, new Random(seed * 1000003L + i), count, record, go);
+            threads[i] = new Thread(workers[i], "Sim-Worker-" + i);
+            threads[i].start();
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return workers;
+    }
+
+    // Waits (up to 30s) for messages queued by the run to go out on the server thread
+    private long awaitMainThread() throws InterruptedException {
+        TickScheduler scheduler = plugin.getTickScheduler();
+        long start = System.currentTimeMillis();
+        while (scheduler.getBacklog() > 0 && System.currentTimeMillis() - start < 30_000L) {
+            Thread.sleep(10L);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * One load-generating thread. Every choice (operation, actor, target, amount) comes from
+     * its own Random, and is folded into a fingerprint of the traffic it produced.
+     */
+    private final class Worker implements Runnable {
+        private final int index;
+        private final Random random;
+        private final int count;
+        private final boolean record;
+        private final CountDownLatch go;
+
+        // Latencies in nanoseconds, per operation type
+        private final long[][] latencies = new long[Workload.Op.values().length][];
+        private final int[] sizes = new int[Workload.Op.values().length];
+        private final int[] failures = new int[Workload.Op.values().length];
+        private long fingerprint = 1125899906842597L;
+        private Throwable firstError;
+
+        Worker(int index, Random random, int count, boolean record, CountDownLatch go) {
+            this.index = index;
+            this.random = random;
+            this.count = count;
+            this.record = record;
+            this.go = go;
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new long[record ? 64 : 0];
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                go.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            EconomyService service = plugin.getEconomyService();
+            for (int n = 0; n < count; n++) {
+                Workload.Op op = options.mix.next(random);
+                int actorIndex = random.nextInt(players.size());
+                // Never pay yourself: shift the target past the actor
+                int targetIndex = (actorIndex + 1 + random.nextInt(players.size() - 1)) % players.size();
+                double amount = cents(random, 50.0) + 0.01;
+                Player actor = players.get(actorIndex);
+                Player target = players.get(targetIndex);
+                fingerprint = 31 * (31 * (31 * (31 * fingerprint + op.ordinal()) + actorIndex) + targetIndex)
+                        + Math.round(amount * 100);
+
+                long start = System.nanoTime();
+                boolean ok = true;
+                try {
+                    switch (op) {
+                        case PAY:
+                            payCommand.onCommand(actor, null, "pay",
+                                    new String[]{target.getName(), String.valueOf(amount)});
+                            break;
+                        case BALANCE:
+                            balanceCommand.onCommand(actor, null, "balance", new String[0]);
+                            break;
+                        case BALTOP:
+                            baltopCommand.onCommand(actor, null, "baltop", new String[0]);
+                            break;
+                        case DEPOSIT:
+                            ok = service.deposit(actor.getUniqueId(), amount, "sim-" + index + "-" + n).join();
+                            break;
+                        case WITHDRAW:
+                            ok = service.withdraw(actor.getUniqueId(), amount, "sim-" + index + "-" + n).join();
+                            break;
+                        case HISTORY:
+                            service.getHistory(new TransactionQuery().involving(actor.getName())).join();
+                            break;
+                        case SAVE:
+                            plugin.getDataManager().saveAllData();
+                            break;
+                    }
+                } catch (RuntimeException e) {
+                    ok = false;
+                    if (firstError == null) {
+                        firstError = e;
+                    }
+                }
+                long took = System.nanoTime() - start;
+
+                if (record) {
+                    int i = op.ordinal();
+                    if (sizes[i] == latencies[i].length) {
+                        latencies[i] = Arrays.copyOf(latencies[i], latencies[i].length * 2);
+                    }
+                    latencies[i][sizes[i]++] = took;
+                    if (!ok) {
+                        failures[i]++;
+                    }
+                }
+            }
+        }
+    }
+
+    // A random amount between 0 and max, in whole cents
+    static double cents(Random random, double max) {
+        return Math.round(random.nextDouble() * max * 100) / 100.0;
+    }
+
+    // -----------------
+    // REPORT
+    // -----------------
+
+    private void report(Worker[] workers, long elapsedNanos, GcMonitor gc, long drainMillis) {
+        System.out.println();
+        System.out.println(String.format("%-10s %9s %7s %10s %10s %10s %10s",
+                "operation", "count", "failed", "p50 us", "p99 us", "p99.9 us", "max us"));
+
+        long[] all = new long[0];
+        int allFailed = 0;
+        for (Workload.Op op : Workload.Op.values()) {
+            int i = op.ordinal();
+            long[] merged = new long[0];
+            int failed = 0;
+            for (Worker worker : workers) {
+                merged = concat(merged, worker.latencies[i], worker.sizes[i]);
+                failed += worker.failures[i];
+            }
+            if (merged.length == 0) {
+                continue;
+            }
+            printRow(op.name().toLowerCase(), merged, failed);
+            all = concat(all, merged, merged.length);
+            allFailed += failed;
+        }
+        if (all.length > 0) {
+            printRow("all", all, allFailed);
+        }
+
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.println(String.format("throughput   %.1f ops/s (%d ops in %.2f s)", all.length / seconds, all.length, seconds));
+        for (String line : gc.describe()) {
+            System.out.println("gc           " + line);
+        }
+
+        TickScheduler scheduler = plugin.getTickScheduler();
+        System.out.println(String.format("main thread  backlog drained %d ms after the run, peak backlog %d, %d ticks over budget",
+                drainMillis, scheduler.getPeakBacklog(), scheduler.getDeferredTicks()));
+        System.out.println("output       " + server.getChatMessages() + " chat messages, "
+                + server.getConsoleLines() + " console lines");
+
+        long fingerprint = 17L;
+        for (Worker worker : workers) {
+            fingerprint = 31 * fingerprint + worker.fingerprint;
+        }
+        System.out.println(String.format("fingerprint  %016x (same options => same traffic)", fingerprint));
+
+        for (Worker worker : workers) {
+            if (worker.firstError != null) {
+                System.out.println();
+                System.out.println("First error on worker " + worker.index + ":");
+                worker.firstError.printStackTrace(System.out);
+            }
+        }
+    }
+
+    private static void printRow(String name, long[] nanos, int failed) {
+        Arrays.sort(nanos);
+        System.out.println(String.format("%-10s %9d %7d %10.1f %10.1f %10.1f %10.1f", name, nanos.length, failed,
+                percentile(nanos, 0.50) / 1e3, percentile(nanos, 0.99) / 1e3,
+                percentile(nanos, 0.999) / 1e3, nanos[nanos.length - 1] / 1e3));
+    }
+
+    // Nearest-rank percentile of a sorted array
+    private static long percentile(long[] sorted, double q) {
+        int rank = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+
+    private static long[] concat(long[] a, long[] b, int bLength) {
+        long[] result = Arrays.copyOf(a, a.length + bLength);
+        System.arraycopy(b, 0, result, a.length, bLength);
+        return result;
+    }
+
+    static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Collection counts and times from the GC beans, plus individual pause lengths from
+     * HotSpot's GC notifications where the JVM provides them.
+     */
+    private static final class GcMonitor implements NotificationListener {
+        private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+        private final List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+        private final long[] startCounts = new long[beans.size()];
+        private final long[] startTimes = new long[beans.size()];
+        private final long[] counts = new long[beans.size()];
+        private final long[] times = new long[beans.size()];
+        private final List<Long> pauses = Collections.synchronizedList(new ArrayList<>());
+        private boolean notifications;
+
+        void start() {
+            for (int i = 0; i < beans.size(); i++) {
+                startCounts[i] = beans.get(i).getCollectionCount();
+                startTimes[i] = beans.get(i).getCollectionTime();
+                if (beans.get(i) instanceof NotificationEmitter) {
+                    ((NotificationEmitter) beans.get(i)).addNotificationListener(this, null, null);
+                    notifications = true;
+                }
+            }
+        }
+
+        void stop() {
+            for (int i = 0; i < beans.size(); i++) {
+                counts[i] = beans.get(i).getCollectionCount() - startCounts[i];
+                times[i] = beans.get(i).getCollectionTime() - startTimes[i];
+                if (beans.get(i) instanceof NotificationEmitter) {
+                    try {
+                        ((NotificationEmitter) beans.get(i)).removeNotificationListener(this);
+                    } catch (ListenerNotFoundException ignored) {}
+                }
+            }
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!GC_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            CompositeData info = (CompositeData) notification.getUserData();
+            String name = String.valueOf(info.get("gcName"));
+            String action = String.valueOf(info.get("gcAction"));
+            // Concurrent cycles run alongside the application; only stop-the-world work is a pause
+            if (name.contains("Concurrent") || name.contains("Cycles") || action.contains("concurrent")) {
+                return;
+            }
+            CompositeData gcInfo = (CompositeData) info.get("gcInfo");
+            pauses.add((Long) gcInfo.get("duration"));
+        }
+
+        List<String> describe() {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < beans.size(); i++) {
+                lines.add(String.format("%s: %d collections, %d ms", beans.get(i).getName(), counts[i], times[i]));
+            }
+            List<Long> sorted;
+            synchronized (pauses) {
+                sorted = new ArrayList<>(pauses);
+            }
+            if (!notifications) {
+                lines.add("pause detail unavailable on this JVM");
+            } else if (sorted.isEmpty()) {
+                lines.add("no pauses");
+            } else {
+                Collections.sort(sorted);
+                long total = 0;
+                for (long pause : sorted) {
+                    total += pause;
+                }
+                long[] array = new long[sorted.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = sorted.get(i);
+                }
+                lines.add(String.format("pauses: %d, total %d ms, p99 %d ms, max %d ms",
+                        array.length, total, percentile(array, 0.99), array[array.length - 1]));
+            }
+            return lines;
+        }
+    }
+}
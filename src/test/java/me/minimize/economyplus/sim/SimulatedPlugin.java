@@ -0,0 +1,62 @@
+package me.minimize.economyplus.sim;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import me.minimize.economyplus.EconomyPlus;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * EconomyPlus loaded through Bukkit's stand-alone constructor, so the simulator can
+ * enable and disable the real plugin without a server jar.
+ */
+class SimulatedPlugin extends EconomyPlus {
+
+    SimulatedPlugin(Server server, File dataFolder) {
+        super(new JavaPluginLoader(server),
+                new PluginDescriptionFile("EconomyPlus", "sim", EconomyPlus.class.getName()),
+                dataFolder, new File(dataFolder, "EconomyPlus.jar"));
+    }
+
+    /**
+     * Installs the server, writes config overrides (e.g. "storage-type" -> "mapped") into
+     * config.yml and enables the plugin on the server thread.
+     */
+    static SimulatedPlugin start(SimulatedServer server, File dataFolder, Map<String, Object> overrides) throws Exception {
+        Bukkit.setServer(server.getServer());
+        SimulatedPlugin plugin = new SimulatedPlugin(server.getServer(), dataFolder);
+        if (!overrides.isEmpty()) {
+            plugin.saveDefaultConfig();
+            plugin.reloadConfig();
+            FileConfiguration config = plugin.getConfig();
+            for (Map.Entry<String, Object> entry : overrides.entrySet()) {
+                config.set(entry.getKey(), entry.getValue());
+            }
+            plugin.saveConfig();
+        }
+        // setEnabled is what the plugin manager calls, so onEnable runs exactly as on a server
+        server.callOnMainThread(() -> {
+            plugin.setEnabled(true);
+            return null;
+        });
+        return plugin;
+    }
+
+    /**
+     * Disables the plugin on the server thread, then stops the server's scheduler.
+     */
+    void stop(SimulatedServer server) throws Exception {
+        try {
+            server.callOnMainThread(() -> {
+                setEnabled(false);
+                return null;
+            });
+        } finally {
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package me.minimize.economyplus.sim;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.ServicesManager;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A stand-in Bukkit server for running EconomyPlus without Minecraft.
+ *
+ * Server, scheduler, players and the other Bukkit interfaces are dynamic proxies: the
+ * methods EconomyPlus actually calls are answered here, everything else returns an empty
+ * default (false, 0, "", an empty collection or null).
+ *
+ * Sync tasks run on a single "Server thread" at 20 ticks per second and async tasks on a
+ * small pool, so TickScheduler, the save timer and the other repeating tasks behave as
+ * they do on a real server. Players are fixed before the server is installed.
+ */
+class SimulatedServer implements InvocationHandler {
+
+    private static final long TICK_MILLIS = 50L;
+
+    private final Logger logger = Logger.getLogger("EconomyPlusSim");
+    private final boolean echo;                 // print chat and console output
+    private final Predicate<String> permissions;
+
+    private final Server server;
+    private final BukkitScheduler scheduler;
+    private final PluginManager pluginManager;
+    private final ServicesManager servicesManager;
+    private final ConsoleCommandSender console;
+
+    private final ScheduledExecutorService mainThread;
+    private final ScheduledExecutorService asyncPool;
+    private volatile Thread primaryThread;
+
+    private final Map<Integer, Future<?>> tasks = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTaskId = new AtomicInteger(1);
+
+    private final Map<UUID, Player> players = new HashMap<>();
+    private final Map<String, Player> playersByName = new HashMap<>();
+    private final List<Player> playerList = new ArrayList<>();
+    private final Map<Class<?>, Object> services = new ConcurrentHashMap<>();
+
+    // Output counters, for the report
+    private final AtomicLong chatMessages = new AtomicLong();
+    private final AtomicLong consoleLines = new AtomicLong();
+
+    /**
+     * @param permissions which permission nodes simulated players have
+     */
+    SimulatedServer(boolean echo, Predicate<String> permissions) {
+        this.echo = echo;
+        this.permissions = permissions;
+
+        this.server = proxy(Server.class, this);
+        this.scheduler = proxy(BukkitScheduler.class, this::invokeScheduler);
+        this.pluginManager = proxy(PluginManager.class, (p, m, a) -> defaultValue(p, m, a));
+        this.servicesManager = proxy(ServicesManager.class, this::invokeServices);
+        this.console = proxy(ConsoleCommandSender.class, this::invokeConsole);
+
+        this.mainThread = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Server thread");
+            t.setDaemon(true);
+            primaryThread = t;
+            return t;
+        });
+        AtomicInteger asyncId = new AtomicInteger();
+        this.asyncPool = Executors.newScheduledThreadPool(4, r -> {
+            Thread t = new Thread(r, "Craft Scheduler Thread - " + asyncId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // -----------------
+    // SETUP
+    // -----------------
+
+    /**
+     * Adds an online player. Call before the server is handed to Bukkit.
+     */
+    Player addPlayer(UUID uuid, String name) {
+        Player player = proxy(Player.class, new PlayerHandler(uuid, name));
+        players.put(uuid, player);
+        playersByName.put(name.toLowerCase(), player);
+        playerList.add(player);
+        return player;
+    }
+
+    /**
+     * Adds players named Sim0, Sim1, ... with name-based UUIDs, so every run has the same accounts.
+     */
+    void addPlayers(int count) {
+        for (int i = playerList.size(), end = i + count; i < end; i++) {
+            addPlayer(UUID.nameUUIDFromBytes(("sim-player-" + i).getBytes(StandardCharsets.UTF_8)), "Sim" + i);
+        }
+    }
+
+    List<Player> getPlayers() {
+        return Collections.unmodifiableList(playerList);
+    }
+
+    Server getServer() {
+        return server;
+    }
+
+    ConsoleCommandSender getConsole() {
+        return console;
+    }
+
+    long getChatMessages() {
+        return chatMessages.get();
+    }
+
+    long getConsoleLines() {
+        return consoleLines.get();
+    }
+
+    /**
+     * Runs work on the server thread and waits for it, like a plugin enable/disable.
+     */
+    <T> T callOnMainThread(Callable<T> work) throws Exception {
+        return mainThread.submit(work).get();
+    }
+
+    /**
+     * Cancels every task and stops the scheduler threads.
+     */
+    void shutdown() {
+        for (Future<?> future : tasks.values()) {
+            future.cancel(false);
+        }
+        tasks.clear();
+        mainThread.shutdown();
+        asyncPool.shutdown();
+        try {
+            mainThread.awaitTermination(5, TimeUnit.SECONDS);
+            asyncPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -----------------
+    // SERVER
+    // -----------------
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getScheduler":
+                return scheduler;
+            case "getPluginManager":
+                return pluginManager;
+            case "getServicesManager":
+                return servicesManager;
+            case "getConsoleSender":
+                return console;
+            case "getLogger":
+                return logger;
+            case "getName":
+                return "EconomyPlusSim";
+            case "getVersion":
+            case "getBukkitVersion":
+                return "1.8.8-R0.1-SNAPSHOT";
+            case "isPrimaryThread":
+                return Thread.currentThread() == primaryThread;
+            case "getOnlinePlayers":
+                return Collections.unmodifiableList(playerList);
+            case "getOfflinePlayers":
+                return playerList.toArray(new OfflinePlayer[0]);
+            case "getPlayer":
+            case "getPlayerExact":
+                if (args[0] instanceof UUID) {
+                    return players.get(args[0]);
+                }
+                return playersByName.get(((String) args[0]).toLowerCase());
+            case "getOfflinePlayer":
+                if (args[0] instanceof UUID) {
+                    Player known = players.get(args[0]);
+                    // Bukkit never returns null here; unknown accounts get a nameless player
+                    return known != null ? known : proxy(Player.class, new PlayerHandler((UUID) args[0], null));
+                }
+                return playersByName.get(((String) args[0]).toLowerCase());
+            default:
+                return defaultValue(proxy, method, args);
+        }
+    }
+
+    // -----------------
+    // SCHEDULER
+    // -----------------
+
+    private Object invokeScheduler(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "runTask":
+                return schedule((Runnable) args[1], 0L, 0L, true);
+            case "runTaskAsynchronously":
+                return schedule((Runnable) args[1], 0L, 0L, false);
+            case "runTaskLater":
+                return schedule((Runnable) args[1], (Long) args[2], 0L, true);
+            case "runTaskLaterAsynchronously":
+                return schedule((Runnable) args[1], (Long) args[2], 0L, false);
+            case "runTaskTimer":
+                return schedule((Runnable) args[1], (Long) args[2], (Long) args[3], true);
+            case "runTaskTimerAsynchronously":
+                return schedule((Runnable) args[1], (Long) args[2], (Long) args[3], false);
+            case "cancelTask":
+                cancel((Integer) args[0]);
+                return null;
+            case "cancelTasks":
+            case "cancelAllTasks":
+                for (Integer id : new ArrayList<>(tasks.keySet())) {
+                    cancel(id);
+                }
+                return null;
+            case "callSyncMethod":
+                return mainThread.submit((Callable<?>) args[1]);
+            default:
+                return defaultValue(proxy, method, args);
+        }
+    }
+
+    private BukkitTask schedule(Runnable task, long delayTicks, long periodTicks, boolean sync) {
+        int id = nextTaskId.getAndIncrement();
+        ScheduledExecutorService executor = sync ? mainThread : asyncPool;
+        long delay = Math.max(0L, delayTicks) * TICK_MILLIS;
+
+        // A throwing task is logged, and a repeating one keeps running, as on CraftScheduler
+        Runnable guarded = () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "Task #" + id + " generated an exception", t);
+            }
+        };
+
+        Future<?> future;
+        if (periodTicks > 0) {
+            future = executor.scheduleAtFixedRate(guarded, delay, periodTicks * TICK_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            future = executor.schedule(() -> {
+                tasks.remove(id);
+                guarded.run();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        tasks.put(id, future);
+        if (future.isDone()) {
+            tasks.remove(id);
+        }
+
+        return proxy(BukkitTask.class, (p, m, a) -> {
+            switch (m.getName()) {
+                case "getTaskId":
+                    return id;
+                case "isSync":
+                    return sync;
+                case "cancel":
+                    cancel(id);
+                    return null;
+                default:
+                    return defaultValue(p, m, a);
+            }
+        });
+    }
+
+    private void cancel(int id) {
+        Future<?> future = tasks.remove(id);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    // -----------------
+    // SERVICES AND SENDERS
+    // -----------------
+
+    private Object invokeServices(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "register":
+                services.put((Class<?>) args[0], args[1]);
+                return null;
+            case "load":
+                return services.get(args[0]);
+            case "unregisterAll":
+                services.clear();
+                return null;
+            default:
+                return defaultValue(proxy, method, args);
+        }
+    }
+
+    private Object invokeConsole(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "sendMessage":
+                consoleLines.incrementAndGet();
+                print("[console] ", args[0]);
+                return null;
+            case "getName":
+                return "CONSOLE";
+            case "hasPermission":
+            case "isPermissionSet":
+            case "isOp":
+                return true;
+            default:
+                return defaultValue(proxy, method, args);
+        }
+    }
+
+    private final class PlayerHandler implements InvocationHandler {
+        private final UUID uuid;
+        private final String name;
+
+        PlayerHandler(UUID uuid, String name) {
+            this.uuid = uuid;
+            this.name = name;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getUniqueId":
+                    return uuid;
+                case "getName":
+                case "getDisplayName":
+                case "getPlayerListName":
+                    return name;
+                case "hasPermission":
+                case "isPermissionSet":
+                    return args[0] instanceof String && permissions.test((String) args[0]);
+                case "isOnline":
+                case "hasPlayedBefore":
+                    return name != null && players.containsKey(uuid);
+                case "getPlayer":
+                    return players.get(uuid);
+                case "sendMessage":
+                    chatMessages.incrementAndGet();
+                    print("[" + name + "] ", args[0]);
+                    return null;
+                // Bukkit players are equal when their UUIDs are
+                case "equals":
+                    return args[0] instanceof OfflinePlayer && uuid.equals(((OfflinePlayer) args[0]).getUniqueId());
+                case "hashCode":
+                    return uuid.hashCode();
+                case "toString":
+                    return "SimPlayer{name=" + name + "}";
+                default:
+                    return defaultValue(proxy, method, args);
+            }
+        }
+    }
+
+    private void print(String prefix, Object message) {
+        if (!echo) {
+            return;
+        }
+        if (message instanceof String[]) {
+            for (String line : (String[]) message) {
+                System.out.println(prefix + line);
+            }
+        } else {
+            System.out.println(prefix + message);
+        }
+    }
+
+    // -----------------
+    // PROXY HELPERS
+    // -----------------
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(SimulatedServer.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    // What an unimplemented method returns: identity semantics for Object methods, empty values otherwise
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return proxy.getClass().getInterfaces()[0].getSimpleName() + "@sim";
+            default:
+                break;
+        }
+
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == String.class) {
+            return "";
+        } else if (type.isArray()) {
+            return Array.newInstance(type.getComponentType(), 0);
+        } else if (type == Set.class) {
+            return Collections.emptySet();
+        } else if (type == Map.class) {
+            return Collections.emptyMap();
+        } else if (type == List.class || type == Collection.class) {
+            return Collections.emptyList();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,97 @@
+package me.minimize.economyplus.sim;
+
+import java.util.Random;
+
+/**
+ * A weighted mix of simulated operations, written like "pay=60,balance=25,baltop=5".
+ * Weights are relative; operations left out never run.
+ */
+final class Workload {
+
+    enum Op {
+        PAY,        // /pay through PayCommand
+        BALANCE,    // /balance through BalanceCommand
+        BALTOP,     // /baltop through BaltopCommand
+        DEPOSIT,    // EconomyService.deposit (what a shop plugin does)
+        WITHDRAW,   // EconomyService.withdraw
+        HISTORY,    // EconomyService.getHistory for one player
+        SAVE        // DataManager.saveAllData, as the autosave timer does
+    }
+
+    static final String DEFAULT_MIX = "pay=55,balance=20,baltop=3,deposit=9,withdraw=9,history=3,save=1";
+
+    private final int[] weights = new int[Op.values().length];
+    private final int total;
+
+    private Workload(int[] weights) {
+        System.arraycopy(weights, 0, this.weights, 0, weights.length);
+        int sum = 0;
+        for (int weight : weights) {
+            sum += weight;
+        }
+        this.total = sum;
+    }
+
+    /**
+     * Parses a mix; throws IllegalArgumentException for unknown operations or bad weights.
+     */
+    static Workload parse(String spec) {
+        int[] weights = new int[Op.values().length];
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected op=weight, got '" + part + "'");
+            }
+            Op op;
+            try {
+                op = Op.valueOf(kv[0].trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown operation '" + kv[0] + "'");
+            }
+            int weight;
+            try {
+                weight = Integer.parseInt(kv[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad weight '" + kv[1] + "' for " + kv[0]);
+            }
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + kv[0]);
+            }
+            weights[op.ordinal()] = weight;
+        }
+        Workload workload = new Workload(weights);
+        if (workload.total == 0) {
+            throw new IllegalArgumentException("The mix has no operations");
+        }
+        return workload;
+    }
+
+    /**
+     * Draws the next operation. Uses exactly one random number, so the sequence only
+     * depends on the seed.
+     */
+    Op next(Random random) {
+        int pick = random.nextInt(total);
+        for (Op op : Op.values()) {
+            pick -= weights[op.ordinal()];
+            if (pick < 0) {
+                return op;
+            }
+        }
+        throw new IllegalStateException("unreachable");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Op op : Op.values()) {
+            if (weights[op.ordinal()] > 0) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(op.name().toLowerCase()).append('=').append(weights[op.ordinal()]);
+            }
+        }
+        return sb.toString();
+    }
+}